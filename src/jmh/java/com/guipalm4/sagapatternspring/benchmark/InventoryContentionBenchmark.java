@@ -0,0 +1,144 @@
+package com.guipalm4.sagapatternspring.benchmark;
+
+import com.guipalm4.sagapatternspring.service.InventoryStock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reserva + liberação de estoque sob contenção: contadores atômicos por SKU ({@link InventoryStock})
+ * contra o lock global anterior (synchronized no mapa inteiro).
+ * Varredura de 1 a 64 threads:
+ * ./mvnw -Pbenchmark integration-test -Djmh.main=com.guipalm4.sagapatternspring.benchmark.InventoryContentionBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryContentionBenchmark {
+
+    private static final int SKU_COUNT = 1024;
+    private static final int HOT_SKU_COUNT = 8;
+    private static final int INITIAL_STOCK = 1_000_000;
+
+    @Param({"per-sku", "global-lock"})
+    public String strategy;
+
+    // skewed: 90% das reservas em 8 SKUs (flash sale); uniform: todos os SKUs com a mesma chance
+    @Param({"uniform", "skewed"})
+    public String distribution;
+
+    private String[] skus;
+    private InventoryStock perSkuStock;
+    private GlobalLockStock globalLockStock;
+    private boolean skewed;
+    private boolean perSku;
+
+    @Setup
+    public void setUp() {
+        skus = new String[SKU_COUNT];
+        perSkuStock = new InventoryStock();
+        globalLockStock = new GlobalLockStock();
+        for (int i = 0; i < SKU_COUNT; i++) {
+            skus[i] = "product-" + i;
+            perSkuStock.set(skus[i], INITIAL_STOCK);
+            globalLockStock.set(skus[i], INITIAL_STOCK);
+        }
+        skewed = "skewed".equals(distribution);
+        perSku = "per-sku".equals(strategy);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public int reserveAndRelease(ThreadState state) {
+        String sku = skus[nextSku(state.random)];
+        if (perSku) {
+            int reserved = perSkuStock.tryReserve(sku, 1);
+            perSkuStock.release(sku, 1);
+            return reserved;
+        }
+        int reserved = globalLockStock.tryReserve(sku, 1);
+        globalLockStock.release(sku, 1);
+        return reserved;
+    }
+
+    private int nextSku(SplittableRandom random) {
+        if (skewed && random.nextInt(10) < 9) {
+            return random.nextInt(HOT_SKU_COUNT);
+        }
+        return random.nextInt(SKU_COUNT);
+    }
+
+    // Implementação anterior do InventoryService, mantida aqui apenas como base de comparação
+    static class GlobalLockStock {
+        private final Map<String, Integer> inventory = new HashMap<>();
+
+        void set(String productId, int quantity) {
+            inventory.put(productId, quantity);
+        }
+
+        int tryReserve(String productId, int quantity) {
+            synchronized (inventory) {
+                int available = inventory.getOrDefault(productId, 0);
+                if (available < quantity) {
+                    return -1;
+                }
+                inventory.put(productId, available - quantity);
+                return available;
+            }
+        }
+
+        int release(String productId, int quantity) {
+            synchronized (inventory) {
+                int current = inventory.getOrDefault(productId, 0) + quantity;
+                inventory.put(productId, current);
+                return current;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        StringBuilder summary = new StringBuilder(String.format("%n%-8s %-12s %-8s %14s%n",
+                "threads", "strategy", "dist", "ops/us"));
+
+        for (int threads : new int[]{1, 2, 4, 8, 16, 32, 64}) {
+            Options options = new OptionsBuilder()
+                    .include(InventoryContentionBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+
+            for (RunResult result : new Runner(options).run()) {
+                summary.append(String.format("%-8d %-12s %-8s %14.3f%n",
+                        threads,
+                        result.getParams().getParam("strategy"),
+                        result.getParams().getParam("distribution"),
+                        result.getPrimaryResult().getScore()));
+            }
+        }
+
+        System.out.println(summary);
+    }
+}
@@ -0,0 +1,120 @@
+package com.guipalm4.sagapatternspring.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.guipalm4.sagapatternspring.config.SqsListenerExecution;
+import com.guipalm4.sagapatternspring.messaging.request.InventoryRequest;
+import com.guipalm4.sagapatternspring.repository.ProcessedMessageRepository;
+import com.guipalm4.sagapatternspring.service.InventoryService;
+import com.guipalm4.sagapatternspring.service.ProcessedMessageRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reserva + liberação pelo InventoryService completo (conversão e envio da resposta e do
+ * evento por um SqsTemplate sobre {@link StubSqsAsyncClient}), sob contenção nos três
+ * produtos do estoque inicial. Complementa o {@link InventoryContentionBenchmark}, que mede
+ * só o contador por SKU. A deduplicação roda com o cache real e um repositório sem banco, então
+ * entra no custo medido só a parte em memória. Logs da aplicação em WARN.
+ * ./mvnw -Pbenchmark integration-test -Djmh.main=com.guipalm4.sagapatternspring.benchmark.InventoryServiceBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryServiceBenchmark {
+
+    private static final String[] PRODUCTS = {"product-456", "product-789", "product-123"};
+
+    private final AtomicLong sent = new AtomicLong();
+    private InventoryService inventoryService;
+
+    @Setup
+    public void setUp() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        inventoryService = new InventoryService(StubSqsAsyncClient.template(sent), inMemoryRegistry(),
+                new SqsListenerExecution(Runnable::run, "platform"));
+    }
+
+    // save() aceita toda chave: cada (sagaId, operação) do benchmark é uma mensagem nova;
+    // o gerenciador de transações não faz nada, o repositório não tem banco
+    private static ProcessedMessageRegistry inMemoryRegistry() {
+        ProcessedMessageRepository repository = (ProcessedMessageRepository) Proxy.newProxyInstance(
+                ProcessedMessageRepository.class.getClassLoader(),
+                new Class<?>[]{ProcessedMessageRepository.class},
+                (proxy, method, args) -> "save".equals(method.getName()) ? args[0] : null);
+        PlatformTransactionManager transactionManager = (PlatformTransactionManager) Proxy.newProxyInstance(
+                PlatformTransactionManager.class.getClassLoader(),
+                new Class<?>[]{PlatformTransactionManager.class},
+                (proxy, method, args) -> "getTransaction".equals(method.getName()) ? new SimpleTransactionStatus() : null);
+        return new ProcessedMessageRegistry(repository, transactionManager, new SimpleMeterRegistry(), 100_000, 24);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public void reserveAndRelease(ThreadState state) {
+        String productId = PRODUCTS[state.random.nextInt(PRODUCTS.length)];
+        String sagaId = "saga-" + state.random.nextLong();
+
+        inventoryService.processInventoryRequest(request(sagaId, productId, "RESERVE"));
+        inventoryService.processInventoryRequest(request(sagaId, productId, "RELEASE"));
+    }
+
+    private static InventoryRequest request(String sagaId, String productId, String operation) {
+        return InventoryRequest.builder()
+                .sagaId(sagaId)
+                .orderId(1L)
+                .productId(productId)
+                .quantity(1)
+                .operation(operation)
+                .requestedAt(LocalDateTime.now())
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        StringBuilder summary = new StringBuilder(String.format("%n%-8s %14s%n", "threads", "ops/s"));
+
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            Options options = new OptionsBuilder()
+                    .include(InventoryServiceBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build();
+
+            for (RunResult result : new Runner(options).run()) {
+                summary.append(String.format("%-8d %14.1f%n", threads, result.getPrimaryResult().getScore()));
+            }
+        }
+
+        System.out.println(summary);
+    }
+}
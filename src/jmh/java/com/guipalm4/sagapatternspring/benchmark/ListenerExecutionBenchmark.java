@@ -0,0 +1,103 @@
+package com.guipalm4.sagapatternspring.benchmark;
+
+import com.guipalm4.sagapatternspring.config.SagaConfig;
+import com.guipalm4.sagapatternspring.config.SqsListenerExecution;
+import io.awspring.cloud.sqs.MessageExecutionThreadFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mensagens/s com 1000 sagas em andamento, cada mensagem bloqueando como o PaymentService
+ * (Thread.sleep, em escala reduzida), pelo mesmo caminho do container @SqsListener. No modo
+ * platform o handler roda no executor que o awspring cria para o container (uma
+ * MessageExecutionThread por mensagem em andamento); no modo virtual o executor do container
+ * é o pool de despacho do SagaConfig e o handler roda numa virtual thread do sagaTaskExecutor,
+ * via SqsListenerExecution.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListenerExecutionBenchmark {
+
+    private static final int IN_FLIGHT_SAGAS = 1000;
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    // 1000ms do PaymentService em escala 1:100
+    @Param({"10"})
+    public long handlerMillis;
+
+    private ThreadPoolTaskExecutor containerExecutor;
+    private Executor sagaTaskExecutor;
+    private SqsListenerExecution listenerExecution;
+
+    @Setup
+    public void setUp() {
+        sagaTaskExecutor = new SagaConfig().sagaTaskExecutor(mode, IN_FLIGHT_SAGAS);
+        listenerExecution = new SqsListenerExecution(sagaTaskExecutor, mode);
+        containerExecutor = SagaConfig.isVirtualMode(mode)
+                ? SagaConfig.listenerDispatchExecutor(4)
+                : awspringContainerExecutor(IN_FLIGHT_SAGAS);
+    }
+
+    // Mesmo dimensionamento do AbstractPipelineMessageListenerContainer.createTaskExecutor
+    private static ThreadPoolTaskExecutor awspringContainerExecutor(int maxConcurrentMessages) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxConcurrentMessages);
+        executor.setMaxPoolSize(maxConcurrentMessages);
+        executor.setQueueCapacity(maxConcurrentMessages);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadFactory(new MessageExecutionThreadFactory());
+        executor.initialize();
+        return executor;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        containerExecutor.shutdown();
+        if (sagaTaskExecutor instanceof AutoCloseable closeable) {
+            closeable.close();
+        } else if (sagaTaskExecutor instanceof ThreadPoolTaskExecutor pool) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IN_FLIGHT_SAGAS)
+    public void processInFlightMessages() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(IN_FLIGHT_SAGAS);
+        for (int i = 0; i < IN_FLIGHT_SAGAS; i++) {
+            containerExecutor.execute(() -> listenerExecution.run(this::handle)
+                    .whenComplete((result, error) -> done.countDown()));
+        }
+        done.await();
+    }
+
+    private void handle() {
+        try {
+            Thread.sleep(handlerMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
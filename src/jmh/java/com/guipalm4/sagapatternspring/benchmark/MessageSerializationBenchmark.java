@@ -0,0 +1,140 @@
+package com.guipalm4.sagapatternspring.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.guipalm4.sagapatternspring.messaging.SagaContext;
+import com.guipalm4.sagapatternspring.messaging.request.InventoryRequest;
+import com.guipalm4.sagapatternspring.messaging.request.PaymentRequest;
+import com.guipalm4.sagapatternspring.messaging.request.ShippingRequest;
+import com.guipalm4.sagapatternspring.messaging.response.InventoryResponse;
+import com.guipalm4.sagapatternspring.messaging.response.PaymentResponse;
+import com.guipalm4.sagapatternspring.messaging.response.ShippingResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * (De)serialização JSON das mensagens de etapa, com um ObjectMapper configurado como o do
+ * Spring Boot (o mesmo usado pelo outbox e pelo conversor do SqsTemplate).
+ * ./mvnw -Pbenchmark integration-test -Djmh.main=com.guipalm4.sagapatternspring.benchmark.MessageSerializationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageSerializationBenchmark {
+
+    @Param({"payment", "inventory", "shipping"})
+    public String step;
+
+    private ObjectMapper objectMapper;
+    private Object request;
+    private Object response;
+    private Class<?> requestType;
+    private Class<?> responseType;
+    private byte[] requestJson;
+    private byte[] responseJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        String sagaId = "5f0c3c4e-8a4b-4d55-9a43-1f2d3c4b5a69";
+        Long orderId = 123456L;
+        SagaContext context = SagaContext.builder()
+                .orderId(orderId)
+                .customerId("customer-123")
+                .productId("product-456")
+                .quantity(2)
+                .amount(new BigDecimal("199.80"))
+                .orderVersion(3L)
+                .build();
+        LocalDateTime now = LocalDateTime.now();
+
+        switch (step) {
+            case "payment" -> {
+                request = PaymentRequest.builder()
+                        .sagaId(sagaId).orderId(orderId).customerId(context.getCustomerId())
+                        .amount(context.getAmount()).paymentMethod("CREDIT_CARD")
+                        .requestedAt(now).sagaContext(context).build();
+                response = PaymentResponse.builder()
+                        .sagaId(sagaId).orderId(orderId).transactionId("txn-123456").successful(true)
+                        .processedAmount(context.getAmount()).processedAt(now).sagaContext(context).build();
+            }
+            case "inventory" -> {
+                request = InventoryRequest.builder()
+                        .sagaId(sagaId).orderId(orderId).productId(context.getProductId())
+                        .quantity(context.getQuantity()).operation("RESERVE")
+                        .requestedAt(now).sagaContext(context).build();
+                response = InventoryResponse.builder()
+                        .sagaId(sagaId).orderId(orderId).productId(context.getProductId())
+                        .requestedQuantity(2).reservedQuantity(2).successful(true)
+                        .reservationId("0b7f3d5e-1c2a-4e8f-9d6b-3a5c7e9f1b2d").processedAt(now)
+                        .sagaContext(context).build();
+            }
+            case "shipping" -> {
+                request = ShippingRequest.builder()
+                        .sagaId(sagaId).orderId(orderId).customerId(context.getCustomerId())
+                        .shippingAddress("Endereço padrão").shippingMethod("STANDARD")
+                        .requestedAt(now).sagaContext(context).build();
+                response = ShippingResponse.builder()
+                        .sagaId(sagaId).orderId(orderId).trackingNumber("TRK123456789").successful(true)
+                        .shippingProvider("Correios").scheduledDelivery(now.plusDays(5)).processedAt(now)
+                        .sagaContext(context).build();
+            }
+            default -> throw new IllegalArgumentException(step);
+        }
+
+        requestType = request.getClass();
+        responseType = response.getClass();
+        requestJson = objectMapper.writeValueAsBytes(request);
+        responseJson = objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] serializeRequest() throws IOException {
+        return objectMapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public Object deserializeRequest() throws IOException {
+        return objectMapper.readValue(requestJson, requestType);
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() throws IOException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public Object deserializeResponse() throws IOException {
+        return objectMapper.readValue(responseJson, responseType);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(MessageSerializationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,269 @@
+package com.guipalm4.sagapatternspring.benchmark;
+
+import com.guipalm4.sagapatternspring.domain.Order;
+import com.guipalm4.sagapatternspring.domain.Payment;
+import com.guipalm4.sagapatternspring.domain.SagaTransaction;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latência (p50/p99) das consultas dos repositórios sobre 1M de linhas por tabela em H2,
+ * sem índices e com os @Index declarados nas entidades. O SQL é o que o Hibernate gera para
+ * cada método do repositório; os índices são lidos das próprias anotações das entidades.
+ * ./mvnw -Pbenchmark integration-test -Djmh.main=com.guipalm4.sagapatternspring.benchmark.RepositoryQueryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx3g"})
+public class RepositoryQueryBenchmark {
+
+    private static final int CUSTOMERS = 100_000;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private Connection connection;
+    private LocalDateTime sweepThreshold;
+
+    private PreparedStatement stuckSagas;
+    private PreparedStatement sagasByStatusIn;
+    private PreparedStatement sagasByOrderId;
+    private PreparedStatement ordersByCustomerId;
+    private PreparedStatement ordersByStatus;
+    private PreparedStatement paymentsByOrderId;
+    private PreparedStatement paymentByTransactionId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        // Sem reaproveitar o resultado anterior: consultas sem parâmetros seriam servidas do cache do H2
+        connection = DriverManager.getConnection("jdbc:h2:mem:query-bench;MODE=MYSQL;OPTIMIZE_REUSE_RESULTS=FALSE", "sa", "");
+        createSchema();
+        seed();
+        if (indexed) {
+            createIndexes(SagaTransaction.class, Order.class, Payment.class);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ANALYZE");
+        }
+
+        sweepThreshold = LocalDateTime.now().minusMinutes(5);
+
+        stuckSagas = connection.prepareStatement(
+                "SELECT * FROM saga_transactions WHERE shard = ? AND status = 'IN_PROGRESS' " +
+                        "AND updated_at < ? AND saga_id > ? ORDER BY saga_id LIMIT 200");
+        sagasByStatusIn = connection.prepareStatement(
+                "SELECT * FROM saga_transactions WHERE status IN ('STARTED', 'IN_PROGRESS', 'COMPENSATING') " +
+                        "ORDER BY created_at DESC");
+        sagasByOrderId = connection.prepareStatement("SELECT * FROM saga_transactions WHERE order_id = ?");
+        ordersByCustomerId = connection.prepareStatement("SELECT * FROM orders WHERE customer_id = ?");
+        ordersByStatus = connection.prepareStatement("SELECT * FROM orders WHERE status = 'PENDING'");
+        paymentsByOrderId = connection.prepareStatement("SELECT * FROM payment WHERE order_id = ?");
+        paymentByTransactionId = connection.prepareStatement("SELECT * FROM payment WHERE transaction_id = ?");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public int findStuckSagas(ThreadState state) throws SQLException {
+        stuckSagas.setInt(1, state.random.nextInt(SagaTransaction.SWEEP_SHARDS));
+        stuckSagas.setTimestamp(2, Timestamp.valueOf(sweepThreshold));
+        stuckSagas.setString(3, "");
+        return drain(stuckSagas);
+    }
+
+    @Benchmark
+    public int findSagasByStatusIn() throws SQLException {
+        return drain(sagasByStatusIn);
+    }
+
+    @Benchmark
+    public int findSagasByOrderId(ThreadState state) throws SQLException {
+        sagasByOrderId.setLong(1, 1 + state.random.nextInt(rows));
+        return drain(sagasByOrderId);
+    }
+
+    @Benchmark
+    public int findOrdersByCustomerId(ThreadState state) throws SQLException {
+        ordersByCustomerId.setString(1, "customer-" + state.random.nextInt(CUSTOMERS));
+        return drain(ordersByCustomerId);
+    }
+
+    @Benchmark
+    public int findOrdersByStatus() throws SQLException {
+        return drain(ordersByStatus);
+    }
+
+    @Benchmark
+    public int findPaymentsByOrderId(ThreadState state) throws SQLException {
+        paymentsByOrderId.setLong(1, 1 + state.random.nextInt(rows));
+        return drain(paymentsByOrderId);
+    }
+
+    @Benchmark
+    public int findPaymentByTransactionId(ThreadState state) throws SQLException {
+        paymentByTransactionId.setString(1, "txn-" + (1 + state.random.nextInt(rows)));
+        return drain(paymentByTransactionId);
+    }
+
+    private static int drain(PreparedStatement statement) throws SQLException {
+        int count = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Mesmas colunas que o Hibernate gera para as entidades
+    private void createSchema() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE saga_transactions (
+                        saga_id VARCHAR(100) PRIMARY KEY,
+                        order_id BIGINT NOT NULL,
+                        shard INT NOT NULL,
+                        order_version BIGINT,
+                        status VARCHAR(20) NOT NULL,
+                        current_step VARCHAR(30) NOT NULL,
+                        compensation_step VARCHAR(30),
+                        error_message TEXT,
+                        retry_count INT NOT NULL,
+                        created_at TIMESTAMP NOT NULL,
+                        updated_at TIMESTAMP NOT NULL,
+                        completed_at TIMESTAMP)""");
+            statement.execute("""
+                    CREATE TABLE orders (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        customer_id VARCHAR(100) NOT NULL,
+                        product_id VARCHAR(100) NOT NULL,
+                        quantity INT NOT NULL,
+                        amount DECIMAL(10, 2) NOT NULL,
+                        status VARCHAR(20) NOT NULL,
+                        version BIGINT,
+                        created_at TIMESTAMP NOT NULL,
+                        updated_at TIMESTAMP NOT NULL)""");
+            statement.execute("""
+                    CREATE TABLE payment (
+                        id BIGINT AUTO_INCREMENT PRIMARY KEY,
+                        transaction_id VARCHAR(255),
+                        order_id BIGINT,
+                        customer_id VARCHAR(255),
+                        amount DECIMAL(38, 2),
+                        status VARCHAR(255),
+                        payment_method VARCHAR(255),
+                        gateway_response VARCHAR(255),
+                        processed_at TIMESTAMP,
+                        created_at TIMESTAMP,
+                        updated_at TIMESTAMP)""");
+        }
+    }
+
+    // Perfil de produção: ~98% das sagas concluídas, poucas em andamento ou pendentes
+    private void seed() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    INSERT INTO orders (id, customer_id, product_id, quantity, amount, status, version, created_at, updated_at)
+                    SELECT X, CONCAT('customer-', MOD(X, %d)), CONCAT('product-', MOD(X, 1024)), 1, 99.90,
+                           CASE WHEN MOD(X, 100) = 0 THEN 'PENDING' ELSE 'SHIPPED' END, 0,
+                           DATEADD('SECOND', -X, CURRENT_TIMESTAMP), DATEADD('SECOND', -X, CURRENT_TIMESTAMP)
+                    FROM SYSTEM_RANGE(1, %d)""".formatted(CUSTOMERS, rows));
+            statement.execute("""
+                    INSERT INTO saga_transactions (saga_id, order_id, shard, order_version, status, current_step,
+                                                   retry_count, created_at, updated_at)
+                    SELECT CONCAT('saga-', X), X, MOD(X, %d), 0,
+                           CASE WHEN MOD(X, 100) = 0 THEN 'IN_PROGRESS'
+                                WHEN MOD(X, 100) = 1 THEN 'COMPENSATED' ELSE 'COMPLETED' END,
+                           'SHIPPING_ARRANGED', 0,
+                           DATEADD('SECOND', -X, CURRENT_TIMESTAMP), DATEADD('SECOND', -X, CURRENT_TIMESTAMP)
+                    FROM SYSTEM_RANGE(1, %d)""".formatted(SagaTransaction.SWEEP_SHARDS, rows));
+            statement.execute("""
+                    INSERT INTO payment (transaction_id, order_id, customer_id, amount, status, payment_method,
+                                         processed_at, created_at, updated_at)
+                    SELECT CONCAT('txn-', X), X, CONCAT('customer-', MOD(X, %d)), 99.90, 'COMPLETED', 'CREDIT_CARD',
+                           CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP
+                    FROM SYSTEM_RANGE(1, %d)""".formatted(CUSTOMERS, rows));
+        }
+    }
+
+    private void createIndexes(Class<?>... entities) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (Class<?> entity : entities) {
+                Table table = entity.getAnnotation(Table.class);
+                String tableName = table.name().isEmpty() ? entity.getSimpleName().toLowerCase() : table.name();
+                for (Index index : table.indexes()) {
+                    statement.execute("CREATE INDEX %s ON %s (%s)".formatted(index.name(), tableName, index.columnList()));
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(RepositoryQueryBenchmark.class.getSimpleName())
+                .build();
+
+        StringBuilder summary = new StringBuilder(String.format("%n%-28s %-8s %14s %14s%n",
+                "query", "indexed", "p50 (us)", "p99 (us)"));
+
+        List<RunResult> results = List.copyOf(new Runner(options).run());
+        for (RunResult result : results) {
+            Statistics statistics = result.getPrimaryResult().getStatistics();
+            String label = result.getParams().getBenchmark();
+            summary.append(String.format("%-28s %-8s %14.1f %14.1f%n",
+                    label.substring(label.lastIndexOf('.') + 1),
+                    result.getParams().getParam("indexed"),
+                    statistics.getPercentile(50),
+                    statistics.getPercentile(99)));
+        }
+
+        System.out.println(summary);
+    }
+}
@@ -0,0 +1,151 @@
+package com.guipalm4.sagapatternspring.benchmark;
+
+import com.guipalm4.sagapatternspring.SagaPatternSpringApplication;
+import com.guipalm4.sagapatternspring.domain.Order;
+import com.guipalm4.sagapatternspring.messaging.SagaContext;
+import com.guipalm4.sagapatternspring.messaging.response.InventoryResponse;
+import com.guipalm4.sagapatternspring.messaging.response.PaymentResponse;
+import com.guipalm4.sagapatternspring.messaging.response.ShippingResponse;
+import com.guipalm4.sagapatternspring.service.OrderService;
+import com.guipalm4.sagapatternspring.service.SagaOrchestrator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sagas/s do SagaOrchestrator com a aplicação inteira em H2 e um SqsTemplate sobre
+ * {@link StubSqsAsyncClient}: caminho feliz (pagamento e estoque em paralelo → envio → conclusão)
+ * e caminho de compensação (estoque recusado → estorno do pagamento e cancelamento). As respostas
+ * dos participantes são entregues direto aos handlers; o outbox relay envia de verdade ao stub.
+ * ./mvnw -Pbenchmark integration-test -Djmh.main=com.guipalm4.sagapatternspring.benchmark.SagaOrchestrationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class SagaOrchestrationBenchmark {
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private ConfigurableApplicationContext context;
+    private OrderService orderService;
+    private SagaOrchestrator orchestrator;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(SagaPatternSpringApplication.class)
+                .web(WebApplicationType.NONE)
+                .initializers(ctx -> ctx.getBeanFactory().registerSingleton("sqsTemplate", StubSqsAsyncClient.template(sent)))
+                // Argumentos de linha de comando: precedem o application.yml, ao contrário de properties()
+                .run(
+                        "--spring.main.banner-mode=off",
+                        // Sem listeners @SqsListener: as respostas são entregues pelo benchmark
+                        "--spring.cloud.aws.sqs.enabled=false",
+                        "--spring.datasource.url=jdbc:h2:mem:orchestration-bench;DB_CLOSE_DELAY=-1;MODE=MYSQL",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.guipalm4.sagapatternspring=WARN");
+        orderService = context.getBean(OrderService.class);
+        orchestrator = context.getBean(SagaOrchestrator.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String happyPath() {
+        Order order = newOrder();
+        String sagaId = orchestrator.startOrderSaga(order);
+        SagaContext sagaContext = SagaContext.from(order);
+
+        orchestrator.handlePaymentResponse(PaymentResponse.builder()
+                .sagaId(sagaId)
+                .orderId(order.getId())
+                .successful(true)
+                .processedAmount(order.getAmount())
+                .sagaContext(sagaContext)
+                .build());
+        orchestrator.handleInventoryResponse(InventoryResponse.builder()
+                .sagaId(sagaId)
+                .orderId(order.getId())
+                .productId(order.getProductId())
+                .requestedQuantity(order.getQuantity())
+                .reservedQuantity(order.getQuantity())
+                .successful(true)
+                .sagaContext(sagaContext)
+                .build());
+        orchestrator.handleShippingResponse(ShippingResponse.builder()
+                .sagaId(sagaId)
+                .orderId(order.getId())
+                .successful(true)
+                .sagaContext(sagaContext)
+                .build());
+        return sagaId;
+    }
+
+    @Benchmark
+    public String compensationPath() {
+        Order order = newOrder();
+        String sagaId = orchestrator.startOrderSaga(order);
+        SagaContext sagaContext = SagaContext.from(order);
+
+        orchestrator.handlePaymentResponse(PaymentResponse.builder()
+                .sagaId(sagaId)
+                .orderId(order.getId())
+                .successful(true)
+                .processedAmount(order.getAmount())
+                .sagaContext(sagaContext)
+                .build());
+        orchestrator.handleInventoryResponse(InventoryResponse.builder()
+                .sagaId(sagaId)
+                .orderId(order.getId())
+                .productId(order.getProductId())
+                .requestedQuantity(order.getQuantity())
+                .reservedQuantity(0)
+                .successful(false)
+                .errorMessage("Estoque insuficiente")
+                .sagaContext(sagaContext)
+                .build());
+        return sagaId;
+    }
+
+    private Order newOrder() {
+        return orderService.createOrder(Order.builder()
+                .customerId("customer-123")
+                .productId("product-456")
+                .quantity(1)
+                .amount(new BigDecimal("99.90"))
+                .build());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(SagaOrchestrationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,268 @@
+package com.guipalm4.sagapatternspring.benchmark;
+
+import com.guipalm4.sagapatternspring.SagaPatternSpringApplication;
+import com.guipalm4.sagapatternspring.domain.Order;
+import com.guipalm4.sagapatternspring.messaging.SagaContext;
+import com.guipalm4.sagapatternspring.messaging.response.InventoryResponse;
+import com.guipalm4.sagapatternspring.messaging.response.PaymentResponse;
+import com.guipalm4.sagapatternspring.messaging.response.ShippingResponse;
+import com.guipalm4.sagapatternspring.service.OrderService;
+import com.guipalm4.sagapatternspring.service.SagaOrchestrator;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statements JDBC por saga, sem e com o cache de pedidos (saga.order-cache.max-size = 0 e
+ * 100000), no mesmo cenário do {@link SagaOrchestrationBenchmark}. A contagem é feita no
+ * DataSource, então pega tanto o Hibernate quanto o JdbcTemplate (UPDATEs condicionais da
+ * saga, outbox); é impressa ao fim de cada iteração como statements/saga (comandos, cada
+ * item de lote conta) e idas ao banco/saga (execute e executeBatch), ao lado das cargas de
+ * Order por saga. Inclui o polling do outbox relay, que é igual nas duas configurações.
+ * ./mvnw -Pbenchmark integration-test -Djmh.main=com.guipalm4.sagapatternspring.benchmark.SagaStatementsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class SagaStatementsBenchmark {
+
+    @Param({"0", "100000"})
+    public int orderCacheSize;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong sagas = new AtomicLong();
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong roundTrips = new AtomicLong();
+
+    private ConfigurableApplicationContext context;
+    private OrderService orderService;
+    private SagaOrchestrator orchestrator;
+    private Statistics statistics;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(SagaPatternSpringApplication.class)
+                .web(WebApplicationType.NONE)
+                .initializers(ctx -> {
+                    ctx.getBeanFactory().registerSingleton("sqsTemplate", StubSqsAsyncClient.template(sent));
+                    ctx.getBeanFactory().addBeanPostProcessor(new BeanPostProcessor() {
+                        @Override
+                        public Object postProcessAfterInitialization(Object bean, String beanName) {
+                            return bean instanceof DataSource dataSource
+                                    ? new CountingDataSource(dataSource, statements, roundTrips)
+                                    : bean;
+                        }
+                    });
+                })
+                .run(
+                        "--spring.main.banner-mode=off",
+                        "--spring.cloud.aws.sqs.enabled=false",
+                        "--spring.datasource.url=jdbc:h2:mem:statements-bench;DB_CLOSE_DELAY=-1;MODE=MYSQL",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.jpa.properties.hibernate.generate_statistics=true",
+                        "--saga.order-cache.max-size=" + orderCacheSize,
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.guipalm4.sagapatternspring=WARN");
+        orderService = context.getBean(OrderService.class);
+        orchestrator = context.getBean(SagaOrchestrator.class);
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetStatistics() {
+        statistics.clear();
+        statements.set(0);
+        roundTrips.set(0);
+        sagas.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportStatistics() {
+        long count = Math.max(1, sagas.get());
+        System.out.printf("%n  statements/saga: %.2f, idas ao banco/saga: %.2f, Order carregados/saga: %.2f (%d sagas)%n",
+                (double) statements.get() / count,
+                (double) roundTrips.get() / count,
+                (double) statistics.getEntityStatistics(Order.class.getName()).getLoadCount() / count,
+                sagas.get());
+    }
+
+    @Benchmark
+    public String happyPath() {
+        Order order = newOrder();
+        String sagaId = orchestrator.startOrderSaga(order);
+        SagaContext sagaContext = SagaContext.from(order);
+
+        orchestrator.handlePaymentResponse(PaymentResponse.builder()
+                .sagaId(sagaId)
+                .orderId(order.getId())
+                .successful(true)
+                .processedAmount(order.getAmount())
+                .sagaContext(sagaContext)
+                .build());
+        orchestrator.handleInventoryResponse(InventoryResponse.builder()
+                .sagaId(sagaId)
+                .orderId(order.getId())
+                .productId(order.getProductId())
+                .requestedQuantity(order.getQuantity())
+                .reservedQuantity(order.getQuantity())
+                .successful(true)
+                .sagaContext(sagaContext)
+                .build());
+        orchestrator.handleShippingResponse(ShippingResponse.builder()
+                .sagaId(sagaId)
+                .orderId(order.getId())
+                .successful(true)
+                .sagaContext(sagaContext)
+                .build());
+        sagas.incrementAndGet();
+        return sagaId;
+    }
+
+    @Benchmark
+    public String compensationPath() {
+        Order order = newOrder();
+        String sagaId = orchestrator.startOrderSaga(order);
+        SagaContext sagaContext = SagaContext.from(order);
+
+        orchestrator.handlePaymentResponse(PaymentResponse.builder()
+                .sagaId(sagaId)
+                .orderId(order.getId())
+                .successful(true)
+                .processedAmount(order.getAmount())
+                .sagaContext(sagaContext)
+                .build());
+        orchestrator.handleInventoryResponse(InventoryResponse.builder()
+                .sagaId(sagaId)
+                .orderId(order.getId())
+                .productId(order.getProductId())
+                .requestedQuantity(order.getQuantity())
+                .reservedQuantity(0)
+                .successful(false)
+                .errorMessage("Estoque insuficiente")
+                .sagaContext(sagaContext)
+                .build());
+        sagas.incrementAndGet();
+        return sagaId;
+    }
+
+    private Order newOrder() {
+        return orderService.createOrder(Order.builder()
+                .customerId("customer-123")
+                .productId("product-456")
+                .quantity(1)
+                .amount(new BigDecimal("99.90"))
+                .build());
+    }
+
+    // Conta os comandos no nível JDBC: Statement, PreparedStatement e CallableStatement são
+    // embrulhados por proxies que contam execute* e addBatch (comandos) e execute*/executeBatch
+    // (idas ao banco)
+    static final class CountingDataSource extends DelegatingDataSource {
+
+        private static final Set<String> EXECUTIONS = Set.of(
+                "execute", "executeQuery", "executeUpdate", "executeLargeUpdate");
+        private static final Set<String> BATCH_EXECUTIONS = Set.of("executeBatch", "executeLargeBatch");
+
+        private final AtomicLong statements;
+        private final AtomicLong roundTrips;
+
+        CountingDataSource(DataSource target, AtomicLong statements, AtomicLong roundTrips) {
+            super(target);
+            this.statements = statements;
+            this.roundTrips = roundTrips;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return connection(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return connection(super.getConnection(username, password));
+        }
+
+        private Connection connection(Connection target) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(target, method, args);
+                        if (result instanceof Statement statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                            return statement(statement, method.getReturnType());
+                        }
+                        return result;
+                    });
+        }
+
+        private Object statement(Statement target, Class<?> type) {
+            return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        String name = method.getName();
+                        if (EXECUTIONS.contains(name)) {
+                            statements.incrementAndGet();
+                            roundTrips.incrementAndGet();
+                        } else if (name.equals("addBatch")) {
+                            statements.incrementAndGet();
+                        } else if (BATCH_EXECUTIONS.contains(name)) {
+                            roundTrips.incrementAndGet();
+                        }
+                        return invoke(target, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(SagaStatementsBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,71 @@
+package com.guipalm4.sagapatternspring.benchmark;
+
+import io.awspring.cloud.sqs.operations.SqsTemplate;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SqsAsyncClient que aceita e descarta os envios, para medir o caminho da aplicação sem
+ * LocalStack. O SqsTemplate construído sobre ele faz a conversão real das mensagens.
+ */
+final class StubSqsAsyncClient {
+
+    private static final String QUEUE_URL_PREFIX = "https://sqs.us-east-1.amazonaws.com/000000000000/";
+
+    private StubSqsAsyncClient() {
+    }
+
+    static SqsTemplate template(AtomicLong sent) {
+        return SqsTemplate.builder()
+                .sqsAsyncClient(client(sent))
+                // Mesmo ObjectMapper do Spring Boot (com JavaTimeModule) que a aplicação usa
+                .configureDefaultConverter(converter -> converter.setObjectMapper(Jackson2ObjectMapperBuilder.json().build()))
+                .build();
+    }
+
+    static SqsAsyncClient client(AtomicLong sent) {
+        return (SqsAsyncClient) Proxy.newProxyInstance(
+                SqsAsyncClient.class.getClassLoader(),
+                new Class<?>[]{SqsAsyncClient.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getQueueUrl" -> CompletableFuture.completedFuture(GetQueueUrlResponse.builder()
+                            .queueUrl(QUEUE_URL_PREFIX + ((GetQueueUrlRequest) args[0]).queueName())
+                            .build());
+                    case "sendMessage" -> {
+                        sent.incrementAndGet();
+                        yield CompletableFuture.completedFuture(SendMessageResponse.builder()
+                                .messageId(UUID.randomUUID().toString())
+                                .build());
+                    }
+                    case "sendMessageBatch" -> {
+                        SendMessageBatchRequest request = (SendMessageBatchRequest) args[0];
+                        sent.addAndGet(request.entries().size());
+                        yield CompletableFuture.completedFuture(SendMessageBatchResponse.builder()
+                                .successful(request.entries().stream()
+                                        .map(entry -> SendMessageBatchResultEntry.builder()
+                                                .id(entry.id())
+                                                .messageId(UUID.randomUUID().toString())
+                                                .build())
+                                        .toList())
+                                .build());
+                    }
+                    case "serviceName" -> SqsAsyncClient.SERVICE_NAME;
+                    case "close" -> null;
+                    case "toString" -> "StubSqsAsyncClient";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -1,60 +1,104 @@
 package com.guipalm4.sagapatternspring.api.controller;
 
+import com.guipalm4.sagapatternspring.config.SagaAdmissionLimiter;
 import com.guipalm4.sagapatternspring.config.SagaMetricsCollector;
 import com.guipalm4.sagapatternspring.domain.SagaMetrics;
 import com.guipalm4.sagapatternspring.domain.enums.OrderStatus;
 import com.guipalm4.sagapatternspring.service.SagaOrchestrator;
 import com.guipalm4.sagapatternspring.api.request.CreateOrderRequest;
+import com.guipalm4.sagapatternspring.api.response.BatchOrderResponse;
 import com.guipalm4.sagapatternspring.api.response.OrderResponse;
+import com.guipalm4.sagapatternspring.api.response.SagaPageResponse;
 import com.guipalm4.sagapatternspring.api.response.SagaStatusResponse;
 import com.guipalm4.sagapatternspring.domain.Order;
-import com.guipalm4.sagapatternspring.domain.SagaTransaction;
-import com.guipalm4.sagapatternspring.repository.SagaTransactionRepository;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStatus;
 import com.guipalm4.sagapatternspring.service.OrderService;
+import com.guipalm4.sagapatternspring.service.SagaCompletionRegistry;
+import com.guipalm4.sagapatternspring.service.SagaIntakePipeline;
+import com.guipalm4.sagapatternspring.service.SagaQueryService;
+import com.guipalm4.sagapatternspring.service.SagaStateStore;
+import com.guipalm4.sagapatternspring.service.SagaStatusCache;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api")
 @Slf4j
 public class OrderController {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final Duration MAX_WAIT = Duration.ofSeconds(60);
+    private static final Duration SSE_TIMEOUT = Duration.ofMinutes(10);
+
     private final OrderService orderService;
     private final SagaOrchestrator sagaOrchestrator;
-    private final SagaTransactionRepository sagaRepository;
+    private final SagaQueryService sagaQueryService;
+    private final SagaStateStore sagaStateStore;
+    private final SagaStatusCache sagaStatusCache;
+    private final SagaCompletionRegistry sagaCompletionRegistry;
     private final SagaMetricsCollector sagaMetricsCollector;
+    private final SagaIntakePipeline sagaIntakePipeline;
+    private final SagaAdmissionLimiter sagaAdmissionLimiter;
+    private final int batchMaxOrders;
+    private final int batchChunkSize;
 
     public OrderController(
             final OrderService orderService,
             final SagaOrchestrator sagaOrchestrator,
-            final SagaTransactionRepository sagaRepository,
-            final SagaMetricsCollector sagaMetricsCollector
+            final SagaQueryService sagaQueryService,
+            final SagaStateStore sagaStateStore,
+            final SagaStatusCache sagaStatusCache,
+            final SagaCompletionRegistry sagaCompletionRegistry,
+            final SagaMetricsCollector sagaMetricsCollector,
+            final SagaIntakePipeline sagaIntakePipeline,
+            final SagaAdmissionLimiter sagaAdmissionLimiter,
+            @Value("${saga.batch.max-orders:50000}") final int batchMaxOrders,
+            @Value("${saga.batch.chunk-size:1000}") final int batchChunkSize
     ) {
         this.orderService = orderService;
         this.sagaOrchestrator = sagaOrchestrator;
-        this.sagaRepository = sagaRepository;
+        this.sagaQueryService = sagaQueryService;
+        this.sagaStateStore = sagaStateStore;
+        this.sagaStatusCache = sagaStatusCache;
+        this.sagaCompletionRegistry = sagaCompletionRegistry;
         this.sagaMetricsCollector = sagaMetricsCollector;
+        this.sagaIntakePipeline = sagaIntakePipeline;
+        this.sagaAdmissionLimiter = sagaAdmissionLimiter;
+        this.batchMaxOrders = batchMaxOrders;
+        this.batchChunkSize = batchChunkSize;
     }
 
     @PostMapping("/orders")
     public ResponseEntity<OrderResponse> createOrder(@RequestBody CreateOrderRequest request) {
+        if (!sagaOrchestrator.tryAdmit(1)) {
+            return overloaded();
+        }
+        boolean started = false;
         try {
             log.info("Criando novo pedido: {}", request);
 
-            Order order = Order.builder()
-                    .customerId(request.getCustomerId())
-                    .productId(request.getProductId())
-                    .quantity(request.getQuantity())
-                    .amount(request.getAmount())
-                    .build();
-
-            Order createdOrder = orderService.createOrder(order);
+            Order createdOrder = orderService.createOrder(toOrder(request));
             String sagaId = sagaOrchestrator.startOrderSaga(createdOrder);
+            started = true;
 
             OrderResponse response = OrderResponse.builder()
                     .orderId(createdOrder.getId())
@@ -67,13 +111,263 @@ public class OrderController {
 
         } catch (Exception e) {
             log.error("Erro ao criar pedido", e);
+            if (!started) {
+                sagaOrchestrator.releaseAdmission(1);
+            }
+
+            OrderResponse errorResponse = OrderResponse.builder()
+                    .message("Erro ao criar pedido: " + e.getMessage())
+                    .build();
+
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+
+    // Accept-and-queue: grava pedido e saga e responde 202; o primeiro passo da saga é
+    // despachado pelo pipeline de entrada. Pipeline cheio responde 429 antes de gravar
+    @PostMapping(value = "/orders", params = "mode=accept")
+    public ResponseEntity<OrderResponse> acceptOrder(@RequestBody CreateOrderRequest request) {
+        if (!sagaOrchestrator.tryAdmit(1)) {
+            return overloaded();
+        }
+        if (!sagaIntakePipeline.tryReserve()) {
+            log.warn("Pipeline de entrada cheio, pedido recusado");
+            sagaOrchestrator.releaseAdmission(1);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(OrderResponse.builder()
+                            .message("Muitos pedidos em processamento, tente novamente em instantes")
+                            .build());
+        }
+
+        boolean accepted = false;
+        boolean queued = false;
+        try {
+            log.info("Aceitando novo pedido: {}", request);
+
+            // Pedido e saga gravados numa única transação
+            Order createdOrder = toOrder(request);
+            String sagaId = sagaOrchestrator.acceptOrderSaga(createdOrder);
+            accepted = true;
+            sagaIntakePipeline.enqueue(sagaId, createdOrder.getId());
+            queued = true;
+
+            OrderResponse response = OrderResponse.builder()
+                    .orderId(createdOrder.getId())
+                    .sagaId(sagaId)
+                    .status(createdOrder.getStatus().name())
+                    .sagaStatus(SagaStatus.STARTED.name())
+                    .message("Pedido aceito; a saga será iniciada em instantes")
+                    .build();
+
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+
+        } catch (Exception e) {
+            log.error("Erro ao aceitar pedido", e);
 
             OrderResponse errorResponse = OrderResponse.builder()
                     .message("Erro ao criar pedido: " + e.getMessage())
                     .build();
 
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        } finally {
+            if (!accepted) {
+                sagaOrchestrator.releaseAdmission(1);
+            }
+            if (!queued) {
+                sagaIntakePipeline.release();
+            }
+        }
+    }
+
+    // Cria o pedido e responde com o resultado final da saga; passado o prazo, 202 com o sagaId.
+    // A espera é um DeferredResult completado pelo hook do orquestrador, sem thread bloqueada
+    @PostMapping(value = "/orders", params = "await")
+    public DeferredResult<ResponseEntity<OrderResponse>> createOrderAndAwait(
+            @RequestBody CreateOrderRequest request,
+            @RequestParam("await") String await
+    ) {
+        DeferredResult<ResponseEntity<OrderResponse>> result = new DeferredResult<>();
+        Duration wait;
+        try {
+            wait = DurationStyle.detectAndParse(await);
+        } catch (IllegalArgumentException e) {
+            result.setResult(ResponseEntity.badRequest().build());
+            return result;
+        }
+        // Prazo zero ou negativo deixaria a requisição presa sem timeout
+        if (wait.isZero() || wait.isNegative()) {
+            result.setResult(ResponseEntity.badRequest().build());
+            return result;
+        }
+
+        if (!sagaOrchestrator.tryAdmit(1)) {
+            result.setResult(overloaded());
+            return result;
+        }
+
+        Order createdOrder;
+        String sagaId;
+        CompletableFuture<SagaStatusResponse> completion;
+        boolean started = false;
+        try {
+            log.info("Criando novo pedido (aguardando até {}): {}", wait, request);
+
+            createdOrder = orderService.createOrder(toOrder(request));
+            sagaId = sagaOrchestrator.startOrderSaga(createdOrder);
+            started = true;
+            completion = sagaOrchestrator.awaitCompletion(sagaId);
+
+        } catch (Exception e) {
+            log.error("Erro ao criar pedido", e);
+            if (!started) {
+                sagaOrchestrator.releaseAdmission(1);
+            }
+            result.setResult(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(OrderResponse.builder()
+                    .message("Erro ao criar pedido: " + e.getMessage())
+                    .build()));
+            return result;
+        }
+
+        DeferredResult<ResponseEntity<OrderResponse>> deferred =
+                new DeferredResult<>(min(wait, MAX_WAIT).toMillis());
+        completion.thenAccept(saga -> deferred.setResult(ResponseEntity.ok(OrderResponse.builder()
+                .orderId(createdOrder.getId())
+                .sagaId(sagaId)
+                .status(createdOrder.getStatus().name())
+                .sagaStatus(saga.getStatus())
+                .message("Saga finalizada: " + saga.getStatus())
+                .build())));
+        deferred.onTimeout(() -> deferred.setResult(ResponseEntity.status(HttpStatus.ACCEPTED).body(OrderResponse.builder()
+                .orderId(createdOrder.getId())
+                .sagaId(sagaId)
+                .status(createdOrder.getStatus().name())
+                .message("Saga em andamento; acompanhe pelo sagaId")
+                .build())));
+        deferred.onCompletion(() -> completion.cancel(false));
+        return deferred;
+    }
+
+    // Importação em lote: cada bloco de pedidos é uma transação com INSERTs em batch, e as
+    // sagas do bloco são iniciadas juntas; itens inválidos são rejeitados sem afetar os demais
+    @PostMapping("/orders/batch")
+    public ResponseEntity<BatchOrderResponse> createOrders(@RequestBody List<CreateOrderRequest> requests) {
+        if (requests == null || requests.isEmpty() || requests.size() > batchMaxOrders) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.info("Criando lote de {} pedidos", requests.size());
+
+        OrderResponse[] results = new OrderResponse[requests.size()];
+        List<Integer> valid = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            String error = validate(requests.get(i));
+            if (error != null) {
+                results[i] = OrderResponse.builder().message("Pedido inválido: " + error).build();
+            } else {
+                valid.add(i);
+            }
+        }
+
+        for (int from = 0; from < valid.size(); from += batchChunkSize) {
+            List<Integer> chunk = valid.subList(from, Math.min(from + batchChunkSize, valid.size()));
+            if (!sagaOrchestrator.tryAdmit(chunk.size())) {
+                if (from == 0) {
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .header(HttpHeaders.RETRY_AFTER, retryAfter())
+                            .build();
+                }
+                // Blocos seguintes ficam de fora: o cliente reenvia só os itens recusados
+                for (Integer index : chunk) {
+                    results[index] = OrderResponse.builder()
+                            .message("Capacidade de sagas esgotada, reenvie o pedido")
+                            .build();
+                }
+                continue;
+            }
+            int started = 0;
+            try {
+                List<Order> orders = orderService.createOrders(chunk.stream()
+                        .map(index -> toOrder(requests.get(index)))
+                        .toList());
+                List<String> sagaIds = sagaOrchestrator.startOrderSagas(orders);
+                started = (int) sagaIds.stream().filter(Objects::nonNull).count();
+
+                for (int i = 0; i < chunk.size(); i++) {
+                    Order order = orders.get(i);
+                    String sagaId = sagaIds.get(i);
+                    results[chunk.get(i)] = OrderResponse.builder()
+                            .orderId(order.getId())
+                            .sagaId(sagaId)
+                            .status(order.getStatus().name())
+                            .message(sagaId != null
+                                    ? "Pedido criado e saga iniciada com sucesso"
+                                    : "Pedido criado, mas a saga não pôde ser iniciada")
+                            .build();
+                }
+            } catch (Exception e) {
+                log.error("Erro ao criar bloco de {} pedidos", chunk.size(), e);
+                for (Integer index : chunk) {
+                    results[index] = OrderResponse.builder()
+                            .message("Erro ao criar pedido: " + e.getMessage())
+                            .build();
+                }
+            } finally {
+                // Vagas dos pedidos cuja saga não foi iniciada
+                sagaOrchestrator.releaseAdmission(chunk.size() - started);
+            }
         }
+
+        List<OrderResponse> resultList = Arrays.asList(results);
+        int accepted = (int) resultList.stream().filter(result -> result.getSagaId() != null).count();
+
+        return ResponseEntity.ok(BatchOrderResponse.builder()
+                .accepted(accepted)
+                .rejected(results.length - accepted)
+                .results(resultList)
+                .build());
+    }
+
+    // Limite de sagas em andamento atingido: o cliente deve tentar de novo depois
+    private ResponseEntity<OrderResponse> overloaded() {
+        log.warn("Limite de sagas em andamento atingido ({} em andamento), pedido recusado",
+                sagaOrchestrator.inFlightCount());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, retryAfter())
+                .body(OrderResponse.builder()
+                        .message("Sistema sobrecarregado, tente novamente em instantes")
+                        .build());
+    }
+
+    private String retryAfter() {
+        return String.valueOf(sagaAdmissionLimiter.getRetryAfterSeconds());
+    }
+
+    private String validate(CreateOrderRequest request) {
+        if (request == null) {
+            return "item vazio";
+        }
+        if (request.getCustomerId() == null || request.getCustomerId().isBlank()) {
+            return "customerId obrigatório";
+        }
+        if (request.getProductId() == null || request.getProductId().isBlank()) {
+            return "productId obrigatório";
+        }
+        if (request.getQuantity() == null || request.getQuantity() <= 0) {
+            return "quantity deve ser positiva";
+        }
+        if (request.getAmount() == null || request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+            return "amount deve ser positivo";
+        }
+        return null;
+    }
+
+    private Order toOrder(CreateOrderRequest request) {
+        return Order.builder()
+                .customerId(request.getCustomerId())
+                .productId(request.getProductId())
+                .quantity(request.getQuantity())
+                .amount(request.getAmount())
+                .build();
     }
 
     @GetMapping("/orders/{orderId}")
@@ -105,30 +399,129 @@ public class OrderController {
 
     @GetMapping("/sagas/{sagaId}/status")
     public ResponseEntity<SagaStatusResponse> getSagaStatus(@PathVariable String sagaId) {
-        Optional<SagaTransaction> saga = sagaRepository.findById(sagaId);
+        // Sagas recentes vêm do cache, atualizado a cada transição; o restante é lido e guardado
+        Optional<SagaStatusResponse> response = currentStatus(sagaId);
 
-        if (saga.isPresent()) {
-            SagaTransaction transaction = saga.get();
+        return response.map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 
-            SagaStatusResponse response = SagaStatusResponse.builder()
-                    .sagaId(sagaId)
-                    .orderId(transaction.getOrderId())
-                    .status(transaction.getStatus().name())
-                    .currentStep(transaction.getCurrentStep().name())
-                    .createdAt(transaction.getCreatedAt())
-                    .updatedAt(transaction.getUpdatedAt())
-                    .build();
+    // Long-poll: responde quando a saga chega a um estado terminal ou, no timeout, com o estado atual.
+    // A espera não ocupa thread do servlet (DeferredResult)
+    @GetMapping(value = "/sagas/{sagaId}/status", params = "waitFor")
+    public DeferredResult<ResponseEntity<SagaStatusResponse>> awaitSagaStatus(
+            @PathVariable String sagaId,
+            @RequestParam String waitFor,
+            @RequestParam(defaultValue = "10s") String timeout
+    ) {
+        DeferredResult<ResponseEntity<SagaStatusResponse>> result = new DeferredResult<>();
+        Duration wait;
+        try {
+            wait = DurationStyle.detectAndParse(timeout);
+        } catch (IllegalArgumentException e) {
+            result.setResult(ResponseEntity.badRequest().build());
+            return result;
+        }
+        if (!"TERMINAL".equalsIgnoreCase(waitFor) || wait.isZero() || wait.isNegative()) {
+            result.setResult(ResponseEntity.badRequest().build());
+            return result;
+        }
 
-            return ResponseEntity.ok(response);
-        } else {
+        CompletableFuture<SagaStatusResponse> terminal;
+        try {
+            terminal = sagaOrchestrator.awaitCompletion(sagaId);
+        } catch (RuntimeException e) {
+            result.setResult(ResponseEntity.notFound().build());
+            return result;
+        }
+
+        DeferredResult<ResponseEntity<SagaStatusResponse>> deferred =
+                new DeferredResult<>(min(wait, MAX_WAIT).toMillis());
+        terminal.thenAccept(response -> deferred.setResult(ResponseEntity.ok(response)));
+        deferred.onTimeout(() -> deferred.setResult(currentStatus(sagaId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build())));
+        deferred.onCompletion(() -> terminal.cancel(false));
+        return deferred;
+    }
+
+    // Uma mensagem SSE por transição de etapa; o stream termina no estado terminal
+    @GetMapping(value = "/sagas/{sagaId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamSagaEvents(@PathVariable String sagaId) {
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT.toMillis());
+
+        Runnable unsubscribe = sagaCompletionRegistry.subscribe(sagaId, response -> sendEvent(emitter, response));
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(error -> unsubscribe.run());
+
+        Optional<SagaStatusResponse> current = currentStatus(sagaId);
+        if (current.isEmpty()) {
+            unsubscribe.run();
             return ResponseEntity.notFound().build();
         }
+        sendEvent(emitter, current.get());
+        return ResponseEntity.ok(emitter);
+    }
+
+    private void sendEvent(SseEmitter emitter, SagaStatusResponse response) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("transition")
+                    .id(response.getSagaId() + ":" + response.getStatus() + ":" + response.getCurrentStep())
+                    .data(response));
+            if (SagaCompletionRegistry.isTerminal(response)) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Cliente desconectado ou emitter já concluído
+            emitter.completeWithError(e);
+        }
+    }
+
+    private Optional<SagaStatusResponse> currentStatus(String sagaId) {
+        return sagaStatusCache.get(sagaId, id -> sagaStateStore.find(id).map(SagaStatusResponse::from));
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
     }
 
     @GetMapping("/sagas")
-    public ResponseEntity<List<SagaTransaction>> getAllSagas() {
-        List<SagaTransaction> sagas = sagaRepository.findAll();
-        return ResponseEntity.ok(sagas);
+    public ResponseEntity<SagaPageResponse> getSagas(
+            @RequestParam(required = false) List<String> status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit
+    ) {
+        try {
+            int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+            return ResponseEntity.ok(sagaQueryService.findPage(parseStatuses(status), cursor, pageSize));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // Exportação completa em NDJSON, escrita conforme as linhas são lidas do banco
+    @GetMapping(value = "/sagas/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSagas(@RequestParam(required = false) List<String> status) {
+        try {
+            List<SagaStatus> statuses = parseStatuses(status);
+            StreamingResponseBody body = output -> sagaQueryService.streamNdjson(statuses, output);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    private List<SagaStatus> parseStatuses(List<String> status) {
+        if (status == null || status.isEmpty()) {
+            return Arrays.asList(SagaStatus.values());
+        }
+        return status.stream()
+                .map(value -> SagaStatus.valueOf(value.trim().toUpperCase()))
+                .toList();
     }
 
     @PostMapping("/orders/{orderId}/cancel")
@@ -0,0 +1,19 @@
+package com.guipalm4.sagapatternspring.api.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchOrderResponse {
+    private int accepted;
+    private int rejected;
+    // Um resultado por item, na mesma ordem do array recebido
+    private List<OrderResponse> results;
+}
@@ -13,5 +13,7 @@ public class OrderResponse {
     private Long orderId;
     private String sagaId;
     private String status;
+    // Preenchido apenas em POST /api/orders?await=... quando a saga termina dentro do prazo
+    private String sagaStatus;
     private String message;
 }
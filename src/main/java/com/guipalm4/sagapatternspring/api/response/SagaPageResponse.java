@@ -0,0 +1,19 @@
+package com.guipalm4.sagapatternspring.api.response;
+
+import com.guipalm4.sagapatternspring.domain.SagaTransaction;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SagaPageResponse {
+    private List<SagaTransaction> items;
+    // Cursor opaco para a próxima página; null quando não há mais resultados
+    private String nextCursor;
+}
@@ -1,5 +1,6 @@
 package com.guipalm4.sagapatternspring.api.response;
 
+import com.guipalm4.sagapatternspring.domain.SagaTransaction;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -16,6 +17,19 @@ public class SagaStatusResponse {
     private Long orderId;
     private String status;
     private String currentStep;
+    private String completedSteps;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+
+    public static SagaStatusResponse from(SagaTransaction saga) {
+        return SagaStatusResponse.builder()
+                .sagaId(saga.getSagaId())
+                .orderId(saga.getOrderId())
+                .status(saga.getStatus().name())
+                .currentStep(saga.getCurrentStep().name())
+                .completedSteps(saga.getCompletedSteps())
+                .createdAt(saga.getCreatedAt())
+                .updatedAt(saga.getUpdatedAt())
+                .build();
+    }
 }
@@ -4,6 +4,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
 import org.springframework.statemachine.config.common.annotation.EnableAnnotationConfiguration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
@@ -24,8 +25,10 @@ public class AWSConfig {
     @Value("${aws.region:us-east-1}")
     private String region;
 
+    // No perfil inmemory-sqs o cliente vem de InMemorySqsConfig
     @Bean
     @Primary
+    @Profile("!" + InMemorySqsConfig.PROFILE)
     public SqsAsyncClient sqsAsyncClient() {
         return SqsAsyncClient.builder()
                 .endpointOverride(URI.create(localstackEndpoint))
@@ -0,0 +1,176 @@
+package com.guipalm4.sagapatternspring.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Timing wheel hierárquico: agendar e cancelar são O(1) e o avanço do relógio só visita o
+ * bucket do tick atual. Prazos além do intervalo de um nível ficam no nível seguinte
+ * (tick = intervalo do nível anterior) e descem em cascata conforme o relógio se aproxima.
+ * Cada bucket é uma lista duplamente encadeada dos próprios Timeouts, então cancelar tira o
+ * prazo do bucket na hora, sem esperar o tick passar por ele.
+ * Não é thread-safe por si só: quem usa serializa o acesso (inclusive o cancel).
+ */
+public class HierarchicalTimingWheel {
+
+    private final Level root;
+    private long currentTimeMs;
+
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.currentTimeMs = startMs - (startMs % tickMs);
+        this.root = new Level(tickMs, wheelSize, currentTimeMs);
+    }
+
+    public static final class Timeout {
+        private final long expirationMs;
+        private final Runnable task;
+        private boolean cancelled;
+
+        // Posição no bucket atual; null fora de qualquer bucket
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(long expirationMs, Runnable task) {
+            this.expirationMs = expirationMs;
+            this.task = task;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            if (bucket != null) {
+                bucket.remove(this);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public long getExpirationMs() {
+            return expirationMs;
+        }
+    }
+
+    // Retorna o Timeout agendado; se o prazo já passou, a tarefa vai para expired imediatamente
+    public Timeout schedule(long expirationMs, Runnable task, List<Runnable> expired) {
+        Timeout timeout = new Timeout(expirationMs, task);
+        if (!root.add(timeout)) {
+            expired.add(task);
+        }
+        return timeout;
+    }
+
+    // Avança o relógio tick a tick até nowMs e devolve as tarefas vencidas
+    public List<Runnable> advanceTo(long nowMs) {
+        List<Runnable> expired = new ArrayList<>();
+        while (currentTimeMs + root.tickMs <= nowMs) {
+            currentTimeMs += root.tickMs;
+            root.advance(currentTimeMs, expired);
+        }
+        return expired;
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.previous = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.previous == null) {
+                head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        // Esvazia o bucket e devolve o primeiro da lista antiga, ainda encadeada por next
+        private Timeout drain() {
+            Timeout first = head;
+            head = null;
+            tail = null;
+            return first;
+        }
+    }
+
+    private final class Level {
+        private final long tickMs;
+        private final int wheelSize;
+        private final long intervalMs;
+        private final Bucket[] buckets;
+        private long currentTimeMs;
+        private Level overflow;
+
+        private Level(long tickMs, int wheelSize, long startMs) {
+            this.tickMs = tickMs;
+            this.wheelSize = wheelSize;
+            this.intervalMs = tickMs * wheelSize;
+            this.currentTimeMs = startMs - (startMs % tickMs);
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+        }
+
+        private boolean add(Timeout timeout) {
+            if (timeout.cancelled) {
+                return true;
+            }
+            if (timeout.expirationMs < currentTimeMs + tickMs) {
+                // Só acontece no nível 0: prazo dentro do tick atual, já vencido
+                return false;
+            }
+            if (timeout.expirationMs < currentTimeMs + intervalMs) {
+                buckets[(int) ((timeout.expirationMs / tickMs) % wheelSize)].add(timeout);
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level(intervalMs, wheelSize, currentTimeMs);
+            }
+            return overflow.add(timeout);
+        }
+
+        private void advance(long timeMs, List<Runnable> expired) {
+            if (timeMs < currentTimeMs + tickMs) {
+                return;
+            }
+            currentTimeMs = timeMs - (timeMs % tickMs);
+
+            // Níveis superiores descem primeiro, para que os prazos redistribuídos caiam neste nível
+            if (overflow != null) {
+                overflow.advance(currentTimeMs, expired);
+            }
+
+            Timeout timeout = buckets[(int) ((currentTimeMs / tickMs) % wheelSize)].drain();
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.bucket = null;
+                timeout.previous = null;
+                timeout.next = null;
+                if (!root.add(timeout)) {
+                    expired.add(timeout.task);
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.guipalm4.sagapatternspring.config;
+
+import com.guipalm4.sagapatternspring.messaging.sqs.InMemorySqsAsyncClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+
+import java.util.Map;
+
+/**
+ * SQS em memória para testes de carga e ponta a ponta sem LocalStack:
+ * ./mvnw spring-boot:run -Dspring-boot.run.profiles=inmemory-sqs
+ * Cria as filas do LocalStackInitializer, cada uma com uma DLQ "<fila>-dlq" para onde vão
+ * as mensagens recebidas max-receive-count vezes sem serem apagadas.
+ */
+@Configuration
+@Profile(InMemorySqsConfig.PROFILE)
+@Slf4j
+public class InMemorySqsConfig {
+
+    public static final String PROFILE = "inmemory-sqs";
+    private static final String DLQ_SUFFIX = "-dlq";
+
+    @Bean
+    @Primary
+    public SqsAsyncClient sqsAsyncClient(
+            @Value("${saga.sqs.in-memory.visibility-timeout-seconds:30}") int visibilityTimeoutSeconds,
+            @Value("${saga.sqs.in-memory.max-receive-count:5}") int maxReceiveCount
+    ) {
+        InMemorySqsAsyncClient client = new InMemorySqsAsyncClient(visibilityTimeoutSeconds);
+
+        LocalStackInitializer.SQS_QUEUES.forEach(queueName -> {
+            if (maxReceiveCount <= 0) {
+                client.createQueue(CreateQueueRequest.builder().queueName(queueName).build()).join();
+                return;
+            }
+            String dlqUrl = client.createQueue(CreateQueueRequest.builder()
+                    .queueName(queueName + DLQ_SUFFIX)
+                    .build()).join().queueUrl();
+            String dlqArn = client.getQueueAttributes(GetQueueAttributesRequest.builder()
+                    .queueUrl(dlqUrl)
+                    .attributeNames(QueueAttributeName.QUEUE_ARN)
+                    .build()).join().attributes().get(QueueAttributeName.QUEUE_ARN);
+
+            client.createQueue(CreateQueueRequest.builder()
+                    .queueName(queueName)
+                    .attributes(Map.of(QueueAttributeName.REDRIVE_POLICY,
+                            "{\"deadLetterTargetArn\":\"" + dlqArn + "\",\"maxReceiveCount\":\"" + maxReceiveCount + "\"}"))
+                    .build()).join();
+        });
+
+        log.info("SQS em memória ativo: {} filas, visibilidade {}s, DLQ após {} recebimentos",
+                LocalStackInitializer.SQS_QUEUES.size(), visibilityTimeoutSeconds, maxReceiveCount);
+        return client;
+    }
+}
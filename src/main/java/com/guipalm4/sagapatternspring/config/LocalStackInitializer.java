@@ -18,7 +18,6 @@ import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
 import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
 
-import java.util.Arrays;
 import java.util.List;
 
 @Component
@@ -27,6 +26,19 @@ import java.util.List;
 @RequiredArgsConstructor
 public class LocalStackInitializer implements ApplicationRunner {
 
+    // Também criadas pelo SQS em memória do perfil inmemory-sqs
+    public static final List<String> SQS_QUEUES = List.of(
+            "payment-queue",
+            "payment-response-queue",
+            "inventory-queue",
+            "inventory-response-queue",
+            "shipping-queue",
+            "shipping-response-queue",
+            "payment-compensation-queue",
+            "inventory-compensation-queue",
+            "shipping-compensation-queue"
+    );
+
     private final SqsAsyncClient sqsClient;
     private final S3Client s3Client;
     private final DynamoDbClient dynamoDbClient;
@@ -39,19 +51,7 @@ public class LocalStackInitializer implements ApplicationRunner {
     }
 
     private void initializeSqsQueues() {
-        List<String> queues = Arrays.asList(
-                "payment-queue",
-                "payment-response-queue",
-                "inventory-queue",
-                "inventory-response-queue",
-                "shipping-queue",
-                "shipping-response-queue",
-                "payment-compensation-queue",
-                "inventory-compensation-queue",
-                "shipping-compensation-queue"
-        );
-
-        queues.forEach(queueName -> {
+        SQS_QUEUES.forEach(queueName -> {
             try {
                 sqsClient.createQueue(CreateQueueRequest.builder()
                         .queueName(queueName)
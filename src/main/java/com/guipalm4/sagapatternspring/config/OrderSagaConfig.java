@@ -0,0 +1,113 @@
+package com.guipalm4.sagapatternspring.config;
+
+import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
+import com.guipalm4.sagapatternspring.messaging.request.CompensationRequest;
+import com.guipalm4.sagapatternspring.messaging.request.InventoryRequest;
+import com.guipalm4.sagapatternspring.messaging.request.PaymentRequest;
+import com.guipalm4.sagapatternspring.messaging.request.ShippingRequest;
+import com.guipalm4.sagapatternspring.messaging.response.InventoryResponse;
+import com.guipalm4.sagapatternspring.messaging.response.PaymentResponse;
+import com.guipalm4.sagapatternspring.messaging.response.ShippingResponse;
+import com.guipalm4.sagapatternspring.service.OrderService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Saga do pedido: pagamento e reserva de estoque em paralelo → envio. As duas primeiras
+ * etapas não dependem uma da outra, então o envio espera só pela mais lenta. Para incluir
+ * uma etapa, declare-a aqui, adicione o valor em SagaStep e um @SqsListener da fila de
+ * resposta no SagaOrchestrator que delegue para handleStepResponse.
+ */
+@Configuration
+public class OrderSagaConfig {
+
+    @Bean
+    public SagaDefinition orderSagaDefinition(OrderService orderService) {
+        return SagaDefinition.builder("order-saga")
+                .parallel(SagaStepDefinition.builder()
+                        .step(SagaStep.PAYMENT_PROCESSED)
+                        .requestQueue("payment-queue")
+                        .request((sagaId, orderId, context) -> PaymentRequest.builder()
+                                .sagaId(sagaId)
+                                .orderId(orderId)
+                                .customerId(context.getCustomerId())
+                                .amount(context.getAmount())
+                                .paymentMethod("CREDIT_CARD") // Valor padrão
+                                .requestedAt(LocalDateTime.now())
+                                .sagaContext(context)
+                                .build())
+                        .responseQueue("payment-response-queue")
+                        .responseType(PaymentResponse.class)
+                        .compensationQueue("payment-compensation-queue")
+                        .compensation((sagaId, orderId, context) -> compensation(sagaId, orderId, "PAYMENT_REFUND",
+                                "customerId", context.getCustomerId(),
+                                "amount", context.getAmount(),
+                                "action", "REFUND_PAYMENT"))
+                        .build(),
+                        SagaStepDefinition.builder()
+                        .step(SagaStep.INVENTORY_RESERVED)
+                        .requestQueue("inventory-queue")
+                        .request((sagaId, orderId, context) -> InventoryRequest.builder()
+                                .sagaId(sagaId)
+                                .orderId(orderId)
+                                .productId(context.getProductId())
+                                .quantity(context.getQuantity())
+                                .operation("RESERVE")
+                                .requestedAt(LocalDateTime.now())
+                                .sagaContext(context)
+                                .build())
+                        .responseQueue("inventory-response-queue")
+                        .responseType(InventoryResponse.class)
+                        .compensationQueue("inventory-compensation-queue")
+                        .compensation((sagaId, orderId, context) -> compensation(sagaId, orderId, "INVENTORY_RELEASE",
+                                "productId", context.getProductId(),
+                                "quantity", context.getQuantity(),
+                                "action", "RELEASE_INVENTORY"))
+                        .build())
+                .step(SagaStepDefinition.builder()
+                        .step(SagaStep.SHIPPING_ARRANGED)
+                        .requestQueue("shipping-queue")
+                        .request((sagaId, orderId, context) -> ShippingRequest.builder()
+                                .sagaId(sagaId)
+                                .orderId(orderId)
+                                .customerId(context.getCustomerId())
+                                .shippingAddress("Endereço padrão") // Você pode pegar do pedido
+                                .shippingMethod("STANDARD")
+                                .requestedAt(LocalDateTime.now())
+                                .sagaContext(context)
+                                .build())
+                        .responseQueue("shipping-response-queue")
+                        .responseType(ShippingResponse.class)
+                        .compensationQueue("shipping-compensation-queue")
+                        .compensation((sagaId, orderId, context) -> compensation(sagaId, orderId, "SHIPPING_CANCELLATION",
+                                "action", "CANCEL_SHIPPING"))
+                        .timeout(Duration.ofMinutes(10))
+                        .build())
+                .onCompleted(orderService::shipOrder)
+                .onAborted(orderService::cancelOrder)
+                .build();
+    }
+
+    // keyValues: pares chave/valor dos dados da compensação, além do orderId
+    private static CompensationRequest compensation(String sagaId, Long orderId, String type, Object... keyValues) {
+        Map<String, Object> compensationData = new HashMap<>();
+        compensationData.put("orderId", orderId);
+        for (int i = 0; i < keyValues.length; i += 2) {
+            compensationData.put((String) keyValues[i], keyValues[i + 1]);
+        }
+
+        return CompensationRequest.builder()
+                .sagaId(sagaId)
+                .orderId(orderId)
+                .compensationType(type)
+                .compensationData(compensationData)
+                .requestedAt(LocalDateTime.now())
+                .reason("Saga compensation required")
+                .build();
+    }
+}
@@ -0,0 +1,151 @@
+package com.guipalm4.sagapatternspring.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limite adaptativo (AIMD) de sagas em andamento. Cada resposta de participante é uma
+ * amostra de latência da etapa: abaixo do alvo, com o limite em uso, o limite cresce 1/limit,
+ * cerca de 1 por janela de latência; acima do alvo ou com prazo vencido, o limite é
+ * multiplicado por backoff-ratio.
+ * A admissão reserva vagas por compare-and-set num contador único (sagas em andamento mais
+ * vagas reservadas ainda não iniciadas), então requisições simultâneas nunca passam do limite.
+ * Quem reservou devolve, com {@link #cancel}, as vagas que não viraram saga iniciada.
+ */
+@Component
+@Slf4j
+public class SagaAdmissionLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final double backoffRatio;
+    private final long retryAfterSeconds;
+
+    private volatile double limit;
+
+    // Vagas ocupadas: sagas em andamento + reservas ainda não iniciadas
+    private final AtomicInteger inUse = new AtomicInteger();
+    // Reservas ainda não iniciadas; negativo por instantes se um início sem reserva usar a de outro
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    private final Counter rejectedCounter;
+    private final Counter decreaseCounter;
+
+    public SagaAdmissionLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${saga.admission.initial-limit:1000}") int initialLimit,
+            @Value("${saga.admission.min-limit:20}") int minLimit,
+            @Value("${saga.admission.max-limit:10000}") int maxLimit,
+            @Value("${saga.admission.latency-target-ms:5000}") long latencyTargetMs,
+            @Value("${saga.admission.backoff-ratio:0.9}") double backoffRatio,
+            @Value("${saga.admission.retry-after-seconds:1}") long retryAfterSeconds
+    ) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyTargetNanos = Duration.ofMillis(latencyTargetMs).toNanos();
+        this.backoffRatio = backoffRatio;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.limit = Math.clamp(initialLimit, this.minLimit, this.maxLimit);
+
+        Gauge.builder("saga_admission_limit", this, SagaAdmissionLimiter::getLimit)
+                .description("Current adaptive limit of in-flight sagas")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        this.rejectedCounter = Counter.builder("saga_admission_rejected_total")
+                .description("Total number of saga starts rejected by the admission limiter")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        this.decreaseCounter = Counter.builder("saga_admission_limit_decreases_total")
+                .description("Total number of multiplicative decreases of the admission limit")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        log.info("Limite de admissão de sagas: inicial={} mínimo={} máximo={} alvo={}ms",
+                (int) limit, this.minLimit, this.maxLimit, latencyTargetMs);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    // Reserva as vagas de uma vez ou nenhuma
+    public boolean tryAdmit(int requested) {
+        while (true) {
+            int current = inUse.get();
+            if (current + requested > limit) {
+                rejectedCounter.increment(requested);
+                return false;
+            }
+            if (inUse.compareAndSet(current, current + requested)) {
+                reserved.addAndGet(requested);
+                return true;
+            }
+        }
+    }
+
+    // Reservas que não viraram saga (pedido não criado, saga não iniciada)
+    public void cancel(int admitted) {
+        reserved.addAndGet(-admitted);
+        inUse.addAndGet(-admitted);
+    }
+
+    // Saga entrou em andamento: consome uma reserva ou, se iniciada sem reserva (recuperação
+    // após restart, chamada direta), ocupa uma vaga mesmo acima do limite
+    public void onStarted() {
+        if (reserved.getAndUpdate(r -> r > 0 ? r - 1 : r) <= 0) {
+            inUse.incrementAndGet();
+        }
+    }
+
+    // Saga iniciada que falhou antes de seguir: a vaga volta a ser uma reserva de quem a pediu
+    public void onAbandoned() {
+        reserved.incrementAndGet();
+    }
+
+    // Saga chegou a estado terminal
+    public void onFinished() {
+        inUse.decrementAndGet();
+    }
+
+    public synchronized void onSample(long latencyNanos, int inFlight) {
+        if (latencyNanos > latencyTargetNanos) {
+            decrease();
+        } else if (inFlight * 2 >= limit) {
+            // Só cresce quando o limite está de fato sendo usado. Há cerca de uma amostra por
+            // vaga a cada janela de latência, então 1/limit por amostra soma 1 por janela
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    // Prazo da etapa vencido sem resposta do participante
+    public synchronized void onDrop() {
+        decrease();
+    }
+
+    private void decrease() {
+        double previous = limit;
+        limit = Math.max(minLimit, limit * backoffRatio);
+        if ((int) previous != (int) limit) {
+            decreaseCounter.increment();
+            log.debug("Limite de admissão reduzido: {} -> {}", (int) previous, (int) limit);
+        }
+    }
+}
@@ -1,8 +1,18 @@
 package com.guipalm4.sagapatternspring.config;
 
-import io.micrometer.core.instrument.MeterRegistry;
+import io.awspring.cloud.sqs.MessageExecutionThreadFactory;
+import io.awspring.cloud.sqs.config.SqsMessageListenerContainerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -14,10 +24,37 @@ import java.util.concurrent.Executor;
 @EnableAsync
 @EnableScheduling
 @EnableTransactionManagement
+@Slf4j
 public class SagaConfig {
 
+    public static final String VIRTUAL_MODE = "virtual";
+
+    // Mesma comparação para o executor e para os listeners: "Virtual" ativa os dois ou nenhum
+    public static boolean isVirtualMode(String mode) {
+        return VIRTUAL_MODE.equalsIgnoreCase(mode != null ? mode.trim() : null);
+    }
+
+    static class VirtualModeCondition implements Condition {
+
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return isVirtualMode(context.getEnvironment().getProperty("saga.execution.mode"));
+        }
+    }
+
     @Bean(name = "sagaTaskExecutor")
-    public Executor sagaTaskExecutor() {
+    public Executor sagaTaskExecutor(
+            @Value("${saga.execution.mode:platform}") String mode,
+            @Value("${saga.execution.max-concurrency:1000}") int maxConcurrency
+    ) {
+        if (isVirtualMode(mode)) {
+            // Uma virtual thread por tarefa; o limite de concorrência substitui o tamanho do pool
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("Saga-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(maxConcurrency);
+            return executor;
+        }
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(5);
         executor.setMaxPoolSize(10);
@@ -29,4 +66,63 @@ public class SagaConfig {
         return executor;
     }
 
+    // Pool limitado para a varredura de timeouts: CallerRuns segura a paginação quando a fila enche
+    @Bean(name = "sagaSweepExecutor")
+    public Executor sagaSweepExecutor(@Value("${saga.timeout.sweep-parallelism:4}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setQueueCapacity(parallelism * 50);
+        executor.setThreadNamePrefix("Saga-Sweep-");
+        executor.setRejectedExecutionHandler(
+                new java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    // Pool próprio para os prazos vencidos: fila sem limite e sem CallerRuns, então a thread do
+    // timing wheel só enfileira e nunca executa uma compensação no lugar do tick
+    @Bean(name = "sagaDeadlineExecutor")
+    public Executor sagaDeadlineExecutor(@Value("${saga.timeout.wheel.expiry-parallelism:4}") int parallelism) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(parallelism);
+        executor.setMaxPoolSize(parallelism);
+        executor.setThreadNamePrefix("Saga-Deadline-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Modo virtual: os handlers @SqsListener rodam em virtual threads do sagaTaskExecutor (ver
+    // SqsListenerExecution). O awspring exige MessageExecutionThread no executor do container,
+    // que não pode ser virtual, então o container recebe um pool pequeno dessas threads que só
+    // despacham, em vez de uma thread de plataforma por mensagem em andamento. A concorrência de
+    // cada fila continua limitada pelo maxConcurrentMessages declarado no listener
+    @Bean
+    @Conditional(VirtualModeCondition.class)
+    public static BeanPostProcessor virtualThreadSqsListenerCustomizer(Environment environment) {
+        int threads = environment.getProperty("saga.execution.listener-dispatch-threads", Integer.class, 4);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof SqsMessageListenerContainerFactory<?> factory) {
+                    ThreadPoolTaskExecutor executor = listenerDispatchExecutor(threads);
+                    factory.configure(options -> options.componentsTaskExecutor(executor));
+                    log.info("Listeners SQS com {} threads de despacho e handlers em virtual threads: {}",
+                            threads, beanName);
+                }
+                return bean;
+            }
+        };
+    }
+
+    // Fila sem limite: o back-pressure do container já segura as mensagens em andamento
+    public static ThreadPoolTaskExecutor listenerDispatchExecutor(int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadFactory(new MessageExecutionThreadFactory("sqs-listener-"));
+        executor.initialize();
+        return executor;
+    }
+
 }
@@ -0,0 +1,135 @@
+package com.guipalm4.sagapatternspring.config;
+
+import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Prazos por etapa da saga em um timing wheel em memória. Cada transição arma um prazo
+ * (substituindo o anterior) e cada resposta o cancela; ao vencer, o handler registrado é
+ * executado no sagaDeadlineExecutor, separado do sagaTaskExecutor para que o tick nunca
+ * rode um handler por CallerRuns.
+ */
+@Component
+@Slf4j
+public class SagaDeadlineTracker {
+
+    private final Executor expiryExecutor;
+    private final HierarchicalTimingWheel wheel;
+    private final Map<String, HierarchicalTimingWheel.Timeout> deadlines = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService ticker;
+    private volatile BiConsumer<String, SagaStep> expiryHandler = (sagaId, step) -> { };
+
+    public SagaDeadlineTracker(
+            @Qualifier("sagaDeadlineExecutor") Executor expiryExecutor,
+            @Value("${saga.timeout.wheel.tick-ms:100}") long tickMs,
+            @Value("${saga.timeout.wheel.size:64}") int wheelSize
+    ) {
+        this.expiryExecutor = expiryExecutor;
+        this.wheel = new HierarchicalTimingWheel(tickMs, wheelSize, now());
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "saga-deadline-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void onExpiry(BiConsumer<String, SagaStep> handler) {
+        this.expiryHandler = handler;
+    }
+
+    public void arm(String sagaId, SagaStep step, Duration timeout) {
+        List<Runnable> expired = new ArrayList<>();
+        HierarchicalTimingWheel.Timeout[] holder = new HierarchicalTimingWheel.Timeout[1];
+
+        synchronized (wheel) {
+            holder[0] = wheel.schedule(now() + timeout.toMillis(), () -> expire(sagaId, step, holder[0]), expired);
+        }
+        HierarchicalTimingWheel.Timeout previous = deadlines.put(sagaId, holder[0]);
+        if (previous != null) {
+            cancel(previous);
+        }
+
+        dispatch(expired);
+        log.debug("Prazo armado para saga {} na etapa {}: {}ms", sagaId, step, timeout.toMillis());
+    }
+
+    public void cancel(String sagaId) {
+        HierarchicalTimingWheel.Timeout timeout = deadlines.remove(sagaId);
+        if (timeout != null) {
+            cancel(timeout);
+        }
+    }
+
+    public boolean isArmed(String sagaId) {
+        return deadlines.containsKey(sagaId);
+    }
+
+    public int armedCount() {
+        return deadlines.size();
+    }
+
+    private void cancel(HierarchicalTimingWheel.Timeout timeout) {
+        synchronized (wheel) {
+            timeout.cancel();
+        }
+    }
+
+    private void expire(String sagaId, SagaStep step, HierarchicalTimingWheel.Timeout timeout) {
+        // Um arm() posterior pode ter substituído este prazo
+        if (!deadlines.remove(sagaId, timeout)) {
+            return;
+        }
+        log.warn("⏰ Prazo vencido para saga: {} na etapa: {}", sagaId, step);
+        expiryHandler.accept(sagaId, step);
+    }
+
+    private void tick() {
+        try {
+            List<Runnable> expired;
+            synchronized (wheel) {
+                expired = wheel.advanceTo(now());
+            }
+            dispatch(expired);
+        } catch (Exception e) {
+            log.error("Erro ao avançar o timing wheel de prazos", e);
+        }
+    }
+
+    private void dispatch(List<Runnable> expired) {
+        for (Runnable task : expired) {
+            expiryExecutor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("Erro ao tratar prazo vencido", e);
+                }
+            });
+        }
+    }
+
+    // Relógio monotônico: o wheel não pode andar para trás com ajustes de NTP
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+}
@@ -0,0 +1,200 @@
+package com.guipalm4.sagapatternspring.config;
+
+import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
+import com.guipalm4.sagapatternspring.messaging.response.StepResponse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Fluxo de uma saga declarado uma única vez: estágios em ordem, cada um com uma etapa ou
+ * um grupo de etapas paralelas, com mensagens, filas, compensações e prazos, mais o
+ * desfecho do pedido ao concluir ou abortar. Na construção são pré-calculadas as tabelas
+ * usadas pelo SagaOrchestrator a cada mensagem (estágio por ordinal, próximo estágio,
+ * cadeia de compensação e etapa por tipo de resposta), então o caminho por mensagem é só
+ * consulta a array/mapa.
+ * A saga começa em ORDER_CREATED, que não é uma etapa declarável. O estágio é identificado
+ * pela sua primeira etapa (líder), que é o currentStep da saga enquanto o estágio corre.
+ */
+public final class SagaDefinition {
+
+    private static final int STEP_COUNT = SagaStep.values().length;
+
+    private final String name;
+    private final List<List<SagaStepDefinition>> stages;
+    private final List<SagaStepDefinition> steps;
+    private final SagaStepDefinition[] stepsByOrdinal = new SagaStepDefinition[STEP_COUNT];
+    private final List<List<SagaStepDefinition>> stagesByOrdinal = new ArrayList<>(STEP_COUNT);
+    private final List<List<SagaStepDefinition>> nextStagesByOrdinal = new ArrayList<>(STEP_COUNT);
+    private final List<List<SagaStepDefinition>> compensationsByOrdinal = new ArrayList<>(STEP_COUNT);
+    private final Map<Class<?>, SagaStepDefinition> stepsByResponseType = new HashMap<>();
+    private final Consumer<Long> onCompleted;
+    private final Consumer<Long> onAborted;
+
+    private SagaDefinition(Builder builder) {
+        this.name = builder.name;
+        this.stages = builder.stages.stream().map(List::copyOf).toList();
+        this.steps = stages.stream().flatMap(List::stream).toList();
+        this.onCompleted = Objects.requireNonNull(builder.onCompleted, "onCompleted não definido");
+        this.onAborted = Objects.requireNonNull(builder.onAborted, "onAborted não definido");
+
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("Saga " + name + " sem etapas");
+        }
+        for (int ordinal = 0; ordinal < STEP_COUNT; ordinal++) {
+            stagesByOrdinal.add(null);
+            nextStagesByOrdinal.add(null);
+            compensationsByOrdinal.add(List.of());
+        }
+
+        // Falha num estágio considera as compensações dele e dos anteriores, na ordem reversa;
+        // o orquestrador publica as das etapas concluídas e das ainda em dúvida no estágio atual
+        List<SagaStepDefinition> reversed = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            List<SagaStepDefinition> stage = stages.get(i);
+            if (stage.isEmpty()) {
+                throw new IllegalArgumentException("Estágio vazio na saga " + name);
+            }
+            List<SagaStepDefinition> next = i + 1 < stages.size() ? stages.get(i + 1) : null;
+            for (SagaStepDefinition step : stage) {
+                if (step.hasCompensation()) {
+                    reversed.add(0, step);
+                }
+            }
+            List<SagaStepDefinition> chain = List.copyOf(reversed);
+
+            for (SagaStepDefinition step : stage) {
+                validate(step);
+                int ordinal = step.getStep().ordinal();
+                if (stepsByOrdinal[ordinal] != null) {
+                    throw new IllegalArgumentException("Etapa duplicada na saga " + name + ": " + step.getStep());
+                }
+                if (stepsByResponseType.put(step.getResponseType(), step) != null) {
+                    throw new IllegalArgumentException("Tipo de resposta repetido na saga " + name + ": "
+                            + step.getResponseType().getSimpleName());
+                }
+                stepsByOrdinal[ordinal] = step;
+                stagesByOrdinal.set(ordinal, stage);
+                nextStagesByOrdinal.set(ordinal, next);
+                compensationsByOrdinal.set(ordinal, chain);
+            }
+        }
+    }
+
+    private void validate(SagaStepDefinition step) {
+        if (step.getStep() == null || step.getStep() == SagaStep.ORDER_CREATED) {
+            throw new IllegalArgumentException("Etapa inválida na saga " + name + ": " + step.getStep());
+        }
+        if (step.getRequestQueue() == null || step.getRequest() == null || step.getResponseType() == null) {
+            throw new IllegalArgumentException("Etapa " + step.getStep() + " sem fila, mensagem ou tipo de resposta");
+        }
+        if ((step.getCompensationQueue() == null) != (step.getCompensation() == null)) {
+            throw new IllegalArgumentException("Compensação da etapa " + step.getStep() + " precisa de fila e mensagem");
+        }
+    }
+
+    public static Builder builder(String name) {
+        return new Builder(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<SagaStepDefinition> getSteps() {
+        return steps;
+    }
+
+    public List<List<SagaStepDefinition>> getStages() {
+        return stages;
+    }
+
+    public List<SagaStepDefinition> firstStage() {
+        return stages.getFirst();
+    }
+
+    // Null se a etapa não pertence a esta saga (ex.: ORDER_CREATED)
+    public SagaStepDefinition step(SagaStep step) {
+        return stepsByOrdinal[step.ordinal()];
+    }
+
+    // Etapas do estágio da etapa (ela mesma, se não for paralela); null fora desta saga
+    public List<SagaStepDefinition> stage(SagaStep step) {
+        return stagesByOrdinal.get(step.ordinal());
+    }
+
+    // Etapa líder do estágio: o currentStep da saga enquanto o estágio corre
+    public SagaStep leadOf(SagaStep step) {
+        List<SagaStepDefinition> stage = stage(step);
+        return stage != null ? stage.getFirst().getStep() : step;
+    }
+
+    // Null quando o estágio da etapa é o último: a saga está concluída
+    public List<SagaStepDefinition> nextStage(SagaStep step) {
+        return nextStagesByOrdinal.get(step.ordinal());
+    }
+
+    // Compensáveis do estágio da etapa e dos anteriores, na ordem reversa de declaração
+    public List<SagaStepDefinition> compensationsFor(SagaStep failedStep) {
+        return compensationsByOrdinal.get(failedStep.ordinal());
+    }
+
+    public SagaStepDefinition stepFor(StepResponse response) {
+        SagaStepDefinition step = stepsByResponseType.get(response.getClass());
+        if (step == null) {
+            throw new IllegalArgumentException("Resposta não pertence à saga " + name + ": "
+                    + response.getClass().getSimpleName());
+        }
+        return step;
+    }
+
+    public void completed(Long orderId) {
+        onCompleted.accept(orderId);
+    }
+
+    public void aborted(Long orderId) {
+        onAborted.accept(orderId);
+    }
+
+    public static final class Builder {
+        private final String name;
+        private final List<List<SagaStepDefinition>> stages = new ArrayList<>();
+        private Consumer<Long> onCompleted;
+        private Consumer<Long> onAborted;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        public Builder step(SagaStepDefinition step) {
+            stages.add(List.of(step));
+            return this;
+        }
+
+        // Etapas enviadas juntas; o próximo estágio só começa quando todas concluírem
+        public Builder parallel(SagaStepDefinition... steps) {
+            stages.add(List.of(steps));
+            return this;
+        }
+
+        // Executado com o orderId quando a última etapa responde com sucesso
+        public Builder onCompleted(Consumer<Long> onCompleted) {
+            this.onCompleted = onCompleted;
+            return this;
+        }
+
+        // Executado com o orderId depois das compensações ou numa falha definitiva
+        public Builder onAborted(Consumer<Long> onAborted) {
+            this.onAborted = onAborted;
+            return this;
+        }
+
+        public SagaDefinition build() {
+            return new SagaDefinition(this);
+        }
+    }
+}
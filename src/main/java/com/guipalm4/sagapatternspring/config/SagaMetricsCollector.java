@@ -1,28 +1,48 @@
 package com.guipalm4.sagapatternspring.config;
 
 import com.guipalm4.sagapatternspring.domain.SagaMetrics;
+import com.guipalm4.sagapatternspring.domain.SagaWindowMetrics;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 @Component
 @Slf4j
 public class SagaMetricsCollector {
 
+    private static final long WINDOW_SLOT_SECONDS = 10;
+    private static final Map<String, Long> WINDOWS = windows();
+
+    private final MeterRegistry meterRegistry;
+
     private final Counter sagaStartedCounter;
     private final Counter sagaCompletedCounter;
     private final Counter sagaFailedCounter;
     private final Counter sagaCompensatedCounter;
     private final Timer sagaDurationTimer;
+    private final Map<SagaStep, Counter> stepRetryCounters = new EnumMap<>(SagaStep.class);
+    private final Map<SagaStep, Timer> stepDurationTimers = new EnumMap<>(SagaStep.class);
+    private final Map<SagaStep, Timer> compensationTimers = new EnumMap<>(SagaStep.class);
+    private final Map<SagaStep, AtomicInteger> activeBySteps = new EnumMap<>(SagaStep.class);
+    private final SlidingWindowHistogram sagaDurationWindow = newWindow();
+    private final Map<SagaStep, SlidingWindowHistogram> stepDurationWindows = new EnumMap<>(SagaStep.class);
 
     public SagaMetricsCollector(MeterRegistry meterRegistry) {
         log.info("🔧 Inicializando SagaMetricsCollector...");
+        this.meterRegistry = meterRegistry;
 
         this.sagaStartedCounter = Counter.builder("saga_started_total")
                 .description("Total number of sagas started")
@@ -52,9 +72,47 @@ public class SagaMetricsCollector {
                 .tag("service", "saga-orchestrator")
                 .register(meterRegistry);
 
+        for (SagaStep step : SagaStep.values()) {
+            stepRetryCounters.put(step, Counter.builder("saga_step_retries_total")
+                    .description("Total number of step messages re-sent after a deadline expired")
+                    .tag("service", "saga-orchestrator")
+                    .tag("step", step.name())
+                    .register(meterRegistry));
+
+            // Percentis, histograma e buckets de SLO vêm de management.metrics.distribution.*
+            stepDurationTimers.put(step, Timer.builder("saga_step_duration_seconds")
+                    .description("Time from sending a step request to receiving the participant response")
+                    .tag("service", "saga-orchestrator")
+                    .tag("step", step.name())
+                    .register(meterRegistry));
+
+            compensationTimers.put(step, Timer.builder("saga_compensation_duration_seconds")
+                    .description("Duration of saga compensation, by the step that failed")
+                    .tag("service", "saga-orchestrator")
+                    .tag("failed_step", step.name())
+                    .register(meterRegistry));
+
+            stepDurationWindows.put(step, newWindow());
+
+            AtomicInteger active = new AtomicInteger();
+            activeBySteps.put(step, active);
+            Gauge.builder("saga_step_active", active, AtomicInteger::get)
+                    .description("In-flight sagas currently at this step")
+                    .tag("service", "saga-orchestrator")
+                    .tag("step", step.name())
+                    .register(meterRegistry);
+        }
+
         log.info("✅ SagaMetricsCollector inicializado com sucesso");
     }
 
+    public void registerInFlightGauge(Supplier<Number> inFlight) {
+        Gauge.builder("saga_in_flight", inFlight)
+                .description("Sagas started and not yet in a terminal state")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+    }
+
     public void recordSagaStarted() {
         sagaStartedCounter.increment();
         log.debug("📊 Métrica: Saga iniciada (total: {})", sagaStartedCounter.count());
@@ -75,10 +133,38 @@ public class SagaMetricsCollector {
         log.debug("📊 Métrica: Saga compensada (total: {})", sagaCompensatedCounter.count());
     }
 
-    public void recordSagaDuration(LocalDateTime startTime, LocalDateTime endTime) {
-        Duration duration = Duration.between(startTime, endTime);
-        sagaDurationTimer.record(duration);
-        log.debug("📊 Métrica: Duração da saga: {}ms", duration.toMillis());
+    public void recordStepRetry(SagaStep step) {
+        stepRetryCounters.get(step).increment();
+        log.debug("📊 Métrica: Retentativa da etapa {} (total: {})", step, stepRetryCounters.get(step).count());
+    }
+
+    public void recordStepDuration(SagaStep step, long durationNanos) {
+        stepDurationTimers.get(step).record(durationNanos, TimeUnit.NANOSECONDS);
+        stepDurationWindows.get(step).record(durationNanos);
+        log.debug("📊 Métrica: Duração da etapa {}: {}ms", step, TimeUnit.NANOSECONDS.toMillis(durationNanos));
+    }
+
+    public void recordCompensationDuration(SagaStep failedStep, long durationNanos) {
+        compensationTimers.get(failedStep).record(durationNanos, TimeUnit.NANOSECONDS);
+        log.debug("📊 Métrica: Duração da compensação a partir de {}: {}ms",
+                failedStep, TimeUnit.NANOSECONDS.toMillis(durationNanos));
+    }
+
+    // Transição de etapa de uma saga em andamento; null em from/to quando a saga entra ou sai
+    public void recordStepTransition(SagaStep from, SagaStep to) {
+        if (from != null) {
+            activeBySteps.get(from).decrementAndGet();
+        }
+        if (to != null) {
+            activeBySteps.get(to).incrementAndGet();
+        }
+    }
+
+    // Duração medida com System.nanoTime pelo orquestrador, imune a ajustes do relógio de parede
+    public void recordSagaDuration(long durationNanos) {
+        sagaDurationTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+        sagaDurationWindow.record(durationNanos);
+        log.debug("📊 Métrica: Duração da saga: {}ms", TimeUnit.NANOSECONDS.toMillis(durationNanos));
     }
 
     public SagaMetrics getCurrentMetrics() {
@@ -87,7 +173,42 @@ public class SagaMetricsCollector {
                 .totalCompleted((long) sagaCompletedCounter.count())
                 .totalFailed((long) sagaFailedCounter.count())
                 .totalCompensated((long) sagaCompensatedCounter.count())
-                .averageDurationMs(sagaDurationTimer.mean(java.util.concurrent.TimeUnit.MILLISECONDS))
+                .averageDurationMs(sagaDurationTimer.mean(TimeUnit.MILLISECONDS))
+                .windows(windowMetrics(sagaDurationWindow))
+                .stepWindows(stepWindowMetrics())
                 .build();
     }
+
+    private Map<String, Map<String, SagaWindowMetrics>> stepWindowMetrics() {
+        Map<String, Map<String, SagaWindowMetrics>> byStep = new LinkedHashMap<>();
+        stepDurationWindows.forEach((step, window) -> byStep.put(step.name(), windowMetrics(window)));
+        return byStep;
+    }
+
+    private static Map<String, SagaWindowMetrics> windowMetrics(SlidingWindowHistogram histogram) {
+        Map<String, SagaWindowMetrics> byWindow = new LinkedHashMap<>();
+        WINDOWS.forEach((label, seconds) -> {
+            SlidingWindowHistogram.Snapshot snapshot = histogram.snapshot(seconds);
+            byWindow.put(label, SagaWindowMetrics.builder()
+                    .count(snapshot.getCount())
+                    .throughputPerSecond(snapshot.getThroughputPerSecond())
+                    .p50Ms(snapshot.percentileMillis(0.50))
+                    .p95Ms(snapshot.percentileMillis(0.95))
+                    .p99Ms(snapshot.percentileMillis(0.99))
+                    .build());
+        });
+        return byWindow;
+    }
+
+    private static SlidingWindowHistogram newWindow() {
+        return new SlidingWindowHistogram(WINDOW_SLOT_SECONDS, Collections.max(WINDOWS.values()));
+    }
+
+    private static Map<String, Long> windows() {
+        Map<String, Long> windows = new LinkedHashMap<>();
+        windows.put("1m", 60L);
+        windows.put("5m", 300L);
+        windows.put("15m", 900L);
+        return Collections.unmodifiableMap(windows);
+    }
 }
\ No newline at end of file
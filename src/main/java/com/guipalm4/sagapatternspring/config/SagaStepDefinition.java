@@ -0,0 +1,37 @@
+package com.guipalm4.sagapatternspring.config;
+
+import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
+import com.guipalm4.sagapatternspring.messaging.SagaContext;
+import com.guipalm4.sagapatternspring.messaging.response.StepResponse;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Uma etapa de uma {@link SagaDefinition}: a mensagem enviada ao participante, a fila e o
+ * tipo da resposta, a compensação (opcional) e o prazo padrão da etapa.
+ */
+@Getter
+@Builder
+public class SagaStepDefinition {
+
+    private final SagaStep step;
+    private final String requestQueue;
+    private final MessageFactory request;
+    private final String responseQueue;
+    private final Class<? extends StepResponse> responseType;
+    private final String compensationQueue;
+    private final MessageFactory compensation;
+    // Null usa saga.timeout.default-minutes; saga.steps.<etapa>.timeout-minutes tem precedência
+    private final Duration timeout;
+
+    public boolean hasCompensation() {
+        return compensation != null;
+    }
+
+    @FunctionalInterface
+    public interface MessageFactory {
+        Object create(String sagaId, Long orderId, SagaContext context);
+    }
+}
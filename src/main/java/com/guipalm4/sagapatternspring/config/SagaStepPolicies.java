@@ -0,0 +1,108 @@
+package com.guipalm4.sagapatternspring.config;
+
+import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prazo e política de retentativa de cada etapa da saga. Os valores padrão vêm de
+ * saga.timeout.default-minutes e saga.retry.*, ou do prazo declarado na {@link SagaDefinition};
+ * cada etapa pode sobrescrevê-los em saga.steps.&lt;etapa&gt; (ex.: saga.steps.shipping-arranged.timeout-minutes).
+ * O prazo de um estágio paralelo é o maior entre as suas etapas.
+ */
+@Component
+@Slf4j
+public class SagaStepPolicies {
+
+    // Limite do DelaySeconds do SQS
+    static final Duration MAX_SQS_DELAY = Duration.ofMinutes(15);
+
+    private final Map<SagaStep, StepPolicy> policies = new EnumMap<>(SagaStep.class);
+    private final Map<SagaStep, Duration> stageTimeouts = new EnumMap<>(SagaStep.class);
+
+    public SagaStepPolicies(
+            Environment environment,
+            SagaDefinition sagaDefinition,
+            @Value("${saga.timeout.default-minutes:5}") long defaultTimeoutMinutes,
+            @Value("${saga.retry.max-attempts:3}") int defaultMaxAttempts,
+            @Value("${saga.retry.backoff-delay:1000}") long defaultBackoffDelayMs,
+            @Value("${saga.retry.backoff-multiplier:2.0}") double backoffMultiplier
+    ) {
+        for (SagaStep step : SagaStep.values()) {
+            String prefix = "saga.steps." + step.name().toLowerCase().replace('_', '-') + ".";
+
+            SagaStepDefinition declared = sagaDefinition.step(step);
+            Duration declaredTimeout = declared != null && declared.getTimeout() != null
+                    ? declared.getTimeout()
+                    : Duration.ofMinutes(defaultTimeoutMinutes);
+            Long timeoutMinutes = environment.getProperty(prefix + "timeout-minutes", Long.class);
+
+            StepPolicy policy = new StepPolicy(
+                    timeoutMinutes != null ? Duration.ofMinutes(timeoutMinutes) : declaredTimeout,
+                    environment.getProperty(prefix + "max-attempts", Integer.class, defaultMaxAttempts),
+                    Duration.ofMillis(environment.getProperty(prefix + "backoff-delay", Long.class, defaultBackoffDelayMs)),
+                    backoffMultiplier);
+
+            policies.put(step, policy);
+            log.info("Política da etapa {}: timeout={} retentativas={} backoff={}",
+                    step, policy.getTimeout(), policy.getMaxAttempts(), policy.getBackoffDelay());
+        }
+
+        for (SagaStep step : SagaStep.values()) {
+            List<SagaStepDefinition> stage = sagaDefinition.stage(step);
+            Duration stageTimeout = stage == null ? timeout(step) : stage.stream()
+                    .map(definition -> timeout(definition.getStep()))
+                    .max(Duration::compareTo)
+                    .orElseThrow();
+            stageTimeouts.put(step, stageTimeout);
+        }
+    }
+
+    public StepPolicy of(SagaStep step) {
+        return policies.get(step);
+    }
+
+    public Duration timeout(SagaStep step) {
+        return policies.get(step).getTimeout();
+    }
+
+    // Prazo do estágio da etapa: o que a saga tem para concluir todas as etapas paralelas
+    public Duration stageTimeout(SagaStep step) {
+        return stageTimeouts.get(step);
+    }
+
+    public Duration shortestTimeout() {
+        return policies.values().stream()
+                .map(StepPolicy::getTimeout)
+                .min(Duration::compareTo)
+                .orElseThrow();
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class StepPolicy {
+        private final Duration timeout;
+        private final int maxAttempts;
+        private final Duration backoffDelay;
+        private final double backoffMultiplier;
+
+        public boolean canRetry(int retriesSoFar) {
+            return retriesSoFar < maxAttempts;
+        }
+
+        // Backoff exponencial para a n-ésima retentativa (1, 2, 3...), limitado ao máximo do SQS
+        public Duration backoffFor(int attempt) {
+            double delayMs = backoffDelay.toMillis() * Math.pow(backoffMultiplier, attempt - 1);
+            return delayMs >= MAX_SQS_DELAY.toMillis() ? MAX_SQS_DELAY : Duration.ofMillis((long) delayMs);
+        }
+    }
+}
@@ -1,49 +1,195 @@
 package com.guipalm4.sagapatternspring.config;
 
+import com.guipalm4.sagapatternspring.domain.SagaSweepLease;
 import com.guipalm4.sagapatternspring.service.SagaOrchestrator;
 import com.guipalm4.sagapatternspring.domain.enums.SagaStatus;
 import com.guipalm4.sagapatternspring.domain.SagaTransaction;
+import com.guipalm4.sagapatternspring.repository.SagaSweepLeaseRepository;
 import com.guipalm4.sagapatternspring.repository.SagaTransactionRepository;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
 
 @Component
 @Slf4j
-@RequiredArgsConstructor
 public class SagaTimeoutManager {
 
     private final SagaTransactionRepository sagaRepository;
-
+    private final SagaSweepLeaseRepository leaseRepository;
     private final SagaOrchestrator sagaOrchestrator;
+    private final SagaDeadlineTracker deadlineTracker;
+    private final SagaStepPolicies stepPolicies;
+    private final Executor sweepExecutor;
+    private final int batchSize;
+    private final Duration leaseDuration;
 
-    @Scheduled(fixedDelay = 60000) // Executar a cada 1 minuto
-    public void checkForTimeoutSagas() {
-        LocalDateTime timeoutThreshold = LocalDateTime.now().minusMinutes(5);
+    // Identifica esta instância como dona dos leases de varredura
+    private final String instanceId = UUID.randomUUID().toString();
+
+    public SagaTimeoutManager(
+            SagaTransactionRepository sagaRepository,
+            SagaSweepLeaseRepository leaseRepository,
+            SagaOrchestrator sagaOrchestrator,
+            SagaDeadlineTracker deadlineTracker,
+            SagaStepPolicies stepPolicies,
+            @Qualifier("sagaSweepExecutor") Executor sweepExecutor,
+            @Value("${saga.timeout.sweep-batch-size:200}") int batchSize,
+            @Value("${saga.timeout.sweep-interval-ms:600000}") long sweepIntervalMs
+    ) {
+        this.sagaRepository = sagaRepository;
+        this.leaseRepository = leaseRepository;
+        this.sagaOrchestrator = sagaOrchestrator;
+        this.deadlineTracker = deadlineTracker;
+        this.stepPolicies = stepPolicies;
+        this.sweepExecutor = sweepExecutor;
+        this.batchSize = batchSize;
+        // O lease cobre duas varreduras: a dona renova a cada ciclo e só perde o shard se parar
+        this.leaseDuration = Duration.ofMillis(sweepIntervalMs * 2);
+    }
+
+    @PostConstruct
+    public void registerExpiryHandler() {
+        // Prazos vencidos no timing wheel disparam retentativa ou compensação em até um tick
+        deadlineTracker.onExpiry(sagaOrchestrator::onStepDeadline);
+    }
+
+    // Leases primeiro: os prazos só são reconstruídos para os shards desta instância, em
+    // páginas por keyset; os dos demais shards ficam com as instâncias donas
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        initializeLeases();
+        rebuildDeadlines();
+    }
+
+    public void rebuildDeadlines() {
+        int owned = 0;
+        int rebuilt = 0;
+
+        for (int shard = 0; shard < SagaTransaction.SWEEP_SHARDS; shard++) {
+            LocalDateTime now = LocalDateTime.now();
+            try {
+                if (leaseRepository.tryAcquire(shard, instanceId, now.plus(leaseDuration), now) == 0) {
+                    continue;
+                }
+                owned++;
+                rebuilt += rebuildShard(shard, now);
+
+            } catch (Exception e) {
+                log.error("Erro ao reconstruir prazos do shard: {}", shard, e);
+            }
+        }
+        log.info("Prazos de saga reconstruídos: {} em {} shards próprios", rebuilt, owned);
+    }
+
+    private int rebuildShard(int shard, LocalDateTime now) {
+        String lastSagaId = "";
+        int rebuilt = 0;
 
-        List<SagaTransaction> stuckSagas = sagaRepository.findStuckSagas(
-                SagaStatus.IN_PROGRESS, timeoutThreshold);
+        while (true) {
+            List<SagaTransaction> page = sagaRepository.findStuckSagas(
+                    shard, SagaStatus.IN_PROGRESS, now, lastSagaId, Limit.of(batchSize));
 
-        for (SagaTransaction saga : stuckSagas) {
-            log.warn("Saga com timeout detectada: {} - Iniciando compensação", saga.getSagaId());
+            for (SagaTransaction saga : page) {
+                // O prazo conta a partir da última transição; vencidos durante a parada disparam imediatamente
+                Duration remaining = Duration.between(now, saga.getUpdatedAt().plus(stepPolicies.stageTimeout(saga.getCurrentStep())));
+                deadlineTracker.arm(saga.getSagaId(), saga.getCurrentStep(),
+                        remaining.isNegative() ? Duration.ZERO : remaining);
+                rebuilt++;
+            }
+
+            if (page.size() < batchSize) {
+                return rebuilt;
+            }
+            lastSagaId = page.get(page.size() - 1).getSagaId();
+        }
+    }
 
+    public void initializeLeases() {
+        for (int shard = 0; shard < SagaTransaction.SWEEP_SHARDS; shard++) {
+            if (leaseRepository.existsById(shard)) {
+                continue;
+            }
             try {
-                // Marcar como timeout e iniciar compensação
-                saga.setStatus(SagaStatus.FAILED);
-                saga.setUpdatedAt(LocalDateTime.now());
-                sagaRepository.save(saga);
+                leaseRepository.save(SagaSweepLease.builder()
+                        .shardId(shard)
+                        .leaseUntil(LocalDateTime.now())
+                        .build());
+            } catch (DataIntegrityViolationException e) {
+                // Outra instância criou o lease ao mesmo tempo
+                log.debug("Lease do shard {} já existe", shard);
+            }
+        }
+    }
 
-                // Iniciar compensação
-                sagaOrchestrator.compensateSagaTimeout(saga.getSagaId(), saga.getCurrentStep());
+    // Rede de segurança de baixa frequência para prazos perdidos (ex.: saga alterada por outra instância).
+    // Cada shard é varrido apenas pela instância que detém o seu lease.
+    @Scheduled(fixedDelayString = "${saga.timeout.sweep-interval-ms:600000}")
+    public void checkForTimeoutSagas() {
+        int owned = 0;
+        int dispatched = 0;
+
+        for (int shard = 0; shard < SagaTransaction.SWEEP_SHARDS; shard++) {
+            LocalDateTime now = LocalDateTime.now();
+            try {
+                if (leaseRepository.tryAcquire(shard, instanceId, now.plus(leaseDuration), now) == 0) {
+                    continue;
+                }
+                owned++;
+                dispatched += sweepShard(shard, now);
 
             } catch (Exception e) {
-                log.error("Erro ao processar timeout da saga: {}", saga.getSagaId(), e);
+                log.error("Erro na varredura de timeouts do shard: {}", shard, e);
+            }
+        }
+
+        log.debug("Varredura de timeouts: {} shards próprios, {} sagas despachadas", owned, dispatched);
+    }
+
+    private int sweepShard(int shard, LocalDateTime now) {
+        LocalDateTime timeoutThreshold = now.minus(stepPolicies.shortestTimeout());
+        String lastSagaId = "";
+        int dispatched = 0;
+
+        while (true) {
+            List<SagaTransaction> page = sagaRepository.findStuckSagas(
+                    shard, SagaStatus.IN_PROGRESS, timeoutThreshold, lastSagaId, Limit.of(batchSize));
+
+            for (SagaTransaction saga : page) {
+                if (deadlineTracker.isArmed(saga.getSagaId())
+                        || saga.getUpdatedAt().plus(stepPolicies.stageTimeout(saga.getCurrentStep())).isAfter(now)) {
+                    continue;
+                }
+
+                log.warn("Saga com timeout detectada: {} - Aplicando política da etapa {}", saga.getSagaId(), saga.getCurrentStep());
+                dispatched++;
+
+                // Retentativa, timeout e compensação passam pelo estado em memória do orquestrador
+                sweepExecutor.execute(() -> {
+                    try {
+                        sagaOrchestrator.onStepDeadline(saga.getSagaId(), saga.getCurrentStep());
+                    } catch (Exception e) {
+                        log.error("Erro ao processar timeout da saga: {}", saga.getSagaId(), e);
+                    }
+                });
+            }
+
+            if (page.size() < batchSize) {
+                return dispatched;
             }
+            lastSagaId = page.get(page.size() - 1).getSagaId();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,144 @@
+package com.guipalm4.sagapatternspring.config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Histograma de durações em janela deslizante, sem locks. O tempo (monotônico) é dividido
+ * em fatias de slotSeconds; cada fatia guarda contagens em buckets log-lineares de
+ * microssegundos (8 sub-buckets por potência de 2, erro relativo até 12,5%). Uma fatia
+ * vencida é substituída por CAS; gravações concorrentes na fatia antiga no instante da
+ * virada podem se perder, o que é aceitável para métricas.
+ */
+public class SlidingWindowHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Até 2^40 µs (~12 dias); acima disso vai para o último bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long slotNanos;
+    private final int slotCount;
+    private final AtomicReferenceArray<Slot> slots;
+
+    public SlidingWindowHistogram(long slotSeconds, long maxWindowSeconds) {
+        this.slotNanos = TimeUnit.SECONDS.toNanos(slotSeconds);
+        // Uma fatia extra: a atual está sempre parcialmente preenchida
+        this.slotCount = (int) (maxWindowSeconds / slotSeconds) + 1;
+        this.slots = new AtomicReferenceArray<>(slotCount);
+    }
+
+    public void record(long durationNanos) {
+        long epoch = Math.floorDiv(System.nanoTime(), slotNanos);
+        int index = (int) Math.floorMod(epoch, (long) slotCount);
+
+        Slot slot = slots.get(index);
+        while (slot == null || slot.epoch != epoch) {
+            if (slot != null && slot.epoch > epoch) {
+                // Relógio desta thread ficou para trás de outra que já virou a fatia
+                return;
+            }
+            Slot fresh = new Slot(epoch);
+            if (slots.compareAndSet(index, slot, fresh)) {
+                slot = fresh;
+            } else {
+                slot = slots.get(index);
+            }
+        }
+        slot.counts.incrementAndGet(bucketOf(TimeUnit.NANOSECONDS.toMicros(durationNanos)));
+    }
+
+    public Snapshot snapshot(long windowSeconds) {
+        long now = System.nanoTime();
+        long currentEpoch = Math.floorDiv(now, slotNanos);
+        long windowSlots = Math.min(slotCount - 1, Math.max(1, windowSeconds * TimeUnit.SECONDS.toNanos(1) / slotNanos));
+        long oldestEpoch = currentEpoch - windowSlots;
+
+        long[] merged = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < slotCount; i++) {
+            Slot slot = slots.get(i);
+            // A fatia atual entra parcial e a mais antiga sai inteira: a janela cobre [window, window + fatia)
+            if (slot == null || slot.epoch < oldestEpoch || slot.epoch > currentEpoch) {
+                continue;
+            }
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                long count = slot.counts.get(bucket);
+                merged[bucket] += count;
+                total += count;
+            }
+        }
+        // Vazão sobre o tempo efetivamente coberto pelas fatias somadas
+        long coveredNanos = windowSlots * slotNanos + (now - currentEpoch * slotNanos);
+        return new Snapshot(coveredNanos, total, merged);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    // Limite superior do bucket em microssegundos
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket) * width) + width - 1;
+    }
+
+    private static final class Slot {
+        final long epoch;
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        Slot(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    public static final class Snapshot {
+        private final long coveredNanos;
+        private final long count;
+        private final long[] buckets;
+
+        private Snapshot(long coveredNanos, long count, long[] buckets) {
+            this.coveredNanos = coveredNanos;
+            this.count = count;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getThroughputPerSecond() {
+            return count / (coveredNanos / 1e9);
+        }
+
+        public double percentileMillis(double percentile) {
+            if (count == 0) {
+                return 0.0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                seen += buckets[bucket];
+                if (seen >= rank) {
+                    return upperBoundOf(bucket) / 1000.0;
+                }
+            }
+            return upperBoundOf(buckets.length - 1) / 1000.0;
+        }
+    }
+}
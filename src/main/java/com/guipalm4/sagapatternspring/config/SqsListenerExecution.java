@@ -0,0 +1,43 @@
+package com.guipalm4.sagapatternspring.config;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Onde roda o corpo dos handlers @SqsListener. No modo platform o handler roda na própria
+ * thread do container, como um listener síncrono. No modo virtual ele roda numa virtual
+ * thread do sagaTaskExecutor e o listener devolve o CompletableFuture: o awspring 3.4 só
+ * aceita MessageExecutionThread no executor do container, então as threads dele apenas
+ * despacham. Nos dois modos a mensagem só é confirmada quando o handler termina, e uma
+ * exceção a deixa para reentrega.
+ */
+@Component
+public class SqsListenerExecution {
+
+    private final Executor executor;
+    private final boolean virtual;
+
+    public SqsListenerExecution(
+            @Qualifier("sagaTaskExecutor") Executor executor,
+            @Value("${saga.execution.mode:platform}") String mode
+    ) {
+        this.executor = executor;
+        this.virtual = SagaConfig.isVirtualMode(mode);
+    }
+
+    public CompletableFuture<Void> run(Runnable handler) {
+        if (virtual) {
+            return CompletableFuture.runAsync(handler, executor);
+        }
+        try {
+            handler.run();
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
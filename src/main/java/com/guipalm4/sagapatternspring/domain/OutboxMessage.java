@@ -0,0 +1,59 @@
+package com.guipalm4.sagapatternspring.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "outbox_messages")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_messages_seq")
+    @SequenceGenerator(name = "outbox_messages_seq", sequenceName = "outbox_messages_seq", allocationSize = 100)
+    private Long id;
+
+    // Slot derivado do sagaId (ou orderId): define qual worker do relay envia a mensagem
+    @Column(name = "partition_id", nullable = false)
+    private Integer partitionId;
+
+    @Column(name = "partition_key", nullable = false, length = 100)
+    private String partitionKey;
+
+    @Column(name = "queue_name", nullable = false, length = 100)
+    private String queueName;
+
+    @Column(name = "payload_type", nullable = false, length = 200)
+    private String payloadType;
+
+    @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    // DelaySeconds do SQS: usado nas retentativas com backoff
+    @Column(name = "delay_seconds")
+    private Integer delaySeconds;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Preenchido quando a mensagem não pode ser desserializada: fica na tabela, fora do envio
+    @Column(name = "dead_lettered_at")
+    private LocalDateTime deadLetteredAt;
+
+    @Column(name = "dead_letter_reason", length = 500)
+    private String deadLetterReason;
+}
@@ -0,0 +1,36 @@
+package com.guipalm4.sagapatternspring.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Posse de uma partição do outbox. Só a instância dona do lease envia as mensagens da
+ * partição, o que mantém a ordem por saga entre instâncias; um lease vencido pode ser
+ * tomado por qualquer instância.
+ */
+@Entity
+@Table(name = "outbox_partition_leases")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxPartitionLease {
+
+    @Id
+    @Column(name = "partition_id")
+    private Integer partitionId;
+
+    @Column(name = "owner", length = 100)
+    private String owner;
+
+    @Column(name = "lease_until", nullable = false)
+    private LocalDateTime leaseUntil;
+}
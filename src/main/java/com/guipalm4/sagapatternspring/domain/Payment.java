@@ -7,6 +7,8 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -16,6 +18,13 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = {
+        // Atende findByOrderId e findByOrderIdAndStatus
+        @Index(name = "idx_payment_order_status", columnList = "order_id, status"),
+        @Index(name = "idx_payment_transaction_id", columnList = "transaction_id"),
+        @Index(name = "idx_payment_customer_id", columnList = "customer_id"),
+        @Index(name = "idx_payment_status", columnList = "status")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
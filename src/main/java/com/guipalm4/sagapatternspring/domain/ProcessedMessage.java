@@ -0,0 +1,52 @@
+package com.guipalm4.sagapatternspring.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Mensagem já tratada por um handler, identificada por fila, saga e tentativa. A chave
+ * primária é o que garante que uma reentrega do SQS seja tratada uma única vez, mesmo
+ * entre instâncias ou depois de um restart.
+ */
+@Entity
+@Table(name = "processed_messages", indexes = {
+        // Expurgo por idade
+        @Index(name = "idx_processed_messages_processed_at", columnList = "processed_at")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProcessedMessage implements Persistable<String> {
+
+    @Id
+    @Column(name = "message_key", length = 250)
+    private String messageKey;
+
+    @Column(name = "processed_at", nullable = false)
+    private LocalDateTime processedAt;
+
+    // Sempre um registro novo: o save() faz só o INSERT, e a chave duplicada acusa a reentrega
+    @Override
+    @JsonIgnore
+    public String getId() {
+        return messageKey;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -3,6 +3,8 @@ package com.guipalm4.sagapatternspring.domain;
 import lombok.Builder;
 import lombok.Data;
 
+import java.util.Map;
+
 @Data
 @Builder
 public class SagaMetrics {
@@ -11,6 +13,9 @@ public class SagaMetrics {
     private Long totalFailed;
     private Long totalCompensated;
     private Double averageDurationMs;
+    // Janelas deslizantes (1m, 5m, 15m): sagas finalizadas e respostas por etapa
+    private Map<String, SagaWindowMetrics> windows;
+    private Map<String, Map<String, SagaWindowMetrics>> stepWindows;
 
     public double getSuccessRate() {
         if (totalStarted == 0) return 0.0;
@@ -0,0 +1,35 @@
+package com.guipalm4.sagapatternspring.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Posse de um shard da varredura de timeouts. Só a instância dona do lease varre as sagas
+ * do shard; um lease vencido pode ser tomado por qualquer instância.
+ */
+@Entity
+@Table(name = "saga_sweep_leases")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SagaSweepLease {
+
+    @Id
+    @Column(name = "shard_id")
+    private Integer shardId;
+
+    @Column(name = "owner", length = 100)
+    private String owner;
+
+    @Column(name = "lease_until", nullable = false)
+    private LocalDateTime leaseUntil;
+}
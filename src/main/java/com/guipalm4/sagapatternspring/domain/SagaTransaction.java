@@ -2,28 +2,44 @@ package com.guipalm4.sagapatternspring.domain;
 
 import com.guipalm4.sagapatternspring.domain.enums.SagaStatus;
 import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "saga_transactions")
+@Table(name = "saga_transactions", indexes = {
+        // Varredura de timeouts: shard + status com keyset por saga_id
+        @Index(name = "idx_saga_shard_status_saga", columnList = "shard, status, saga_id"),
+        @Index(name = "idx_saga_status_updated", columnList = "status, updated_at"),
+        @Index(name = "idx_saga_status_created", columnList = "status, created_at"),
+        // Listagem paginada por keyset em (created_at, saga_id)
+        @Index(name = "idx_saga_created_saga", columnList = "created_at, saga_id"),
+        @Index(name = "idx_saga_order_id", columnList = "order_id")
+})
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
-public class SagaTransaction {
+public class SagaTransaction implements Persistable<String> {
+
+    public static final int SWEEP_SHARDS = 16;
 
     @Id
     @Column(name = "saga_id", length = 100)
@@ -32,6 +48,14 @@ public class SagaTransaction {
     @Column(name = "order_id", nullable = false)
     private Long orderId;
 
+    // Shard da varredura de timeouts, derivado do sagaId (ver SagaSweepLease)
+    @Column(name = "shard", nullable = false)
+    private Integer shard;
+
+    // Versão do pedido conhecida pela saga, comparada com a do SagaContext recebido
+    @Column(name = "order_version")
+    private Long orderVersion;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "status", nullable = false, length = 20)
     @Builder.Default
@@ -42,6 +66,11 @@ public class SagaTransaction {
     @Builder.Default
     private SagaStep currentStep = SagaStep.ORDER_CREATED;
 
+    // Etapas que já responderam com sucesso, separadas por vírgula: junção dos estágios
+    // paralelos e escolha do que compensar
+    @Column(name = "completed_steps", length = 200)
+    private String completedSteps;
+
     @Column(name = "compensation_step", length = 30)
     @Enumerated(EnumType.STRING)
     private SagaStep compensationStep;
@@ -53,6 +82,12 @@ public class SagaTransaction {
     @Builder.Default
     private Integer retryCount = 0;
 
+    // Versão otimista: cada escrita do SagaStateStore (transição ou flush) é um UPDATE condicional nela que a
+    // incrementa. Não é @Version porque a entidade nunca passa por merge
+    @Column(name = "version", nullable = false)
+    @Builder.Default
+    private Long version = 0L;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -62,11 +97,48 @@ public class SagaTransaction {
     @Column(name = "completed_at")
     private LocalDateTime completedAt;
 
+    // Posse do despacho da primeira etapa no modo accept-and-queue, tomada com UPDATE
+    // condicional (ver SagaIntakePipeline). Fica fora do UPDATE em lote do write-behind
+    @Column(name = "intake_owner", length = 36)
+    @JsonIgnore
+    private String intakeOwner;
+
+    @Column(name = "intake_claimed_until")
+    @JsonIgnore
+    private LocalDateTime intakeClaimedUntil;
+
+    // Id é atribuído pela aplicação: sem esta flag o save() faria merge (SELECT + INSERT)
+    @Transient
+    @JsonIgnore
+    @Builder.Default
+    private boolean newEntity = true;
+
+    public static int shardOf(String sagaId) {
+        return Math.floorMod(sagaId.hashCode(), SWEEP_SHARDS);
+    }
+
+    @Override
+    @JsonIgnore
+    public String getId() {
+        return sagaId;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return newEntity;
+    }
+
     @PrePersist
     protected void onCreate() {
+        // Preserva os timestamps da transição: o INSERT pode ocorrer depois (write-behind)
         LocalDateTime now = LocalDateTime.now();
-        this.createdAt = now;
-        this.updatedAt = now;
+        if (this.createdAt == null) {
+            this.createdAt = now;
+        }
+        if (this.updatedAt == null) {
+            this.updatedAt = now;
+        }
         if (this.status == null) {
             this.status = SagaStatus.STARTED;
         }
@@ -76,6 +148,12 @@ public class SagaTransaction {
         if (this.retryCount == null) {
             this.retryCount = 0;
         }
+        if (this.version == null) {
+            this.version = 0L;
+        }
+        if (this.shard == null) {
+            this.shard = shardOf(this.sagaId);
+        }
     }
 
     @PreUpdate
@@ -83,6 +161,12 @@ public class SagaTransaction {
         this.updatedAt = LocalDateTime.now();
     }
 
+    @PostLoad
+    @PostPersist
+    protected void markNotNew() {
+        this.newEntity = false;
+    }
+
     // Métodos de conveniência
     public void markAsCompleted() {
         this.status = SagaStatus.COMPLETED;
@@ -118,6 +202,28 @@ public class SagaTransaction {
         this.updatedAt = LocalDateTime.now();
     }
 
+    public boolean isStepCompleted(SagaStep step) {
+        if (completedSteps == null) {
+            return false;
+        }
+        for (String name : completedSteps.split(",")) {
+            if (name.equals(step.name())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // False se a etapa já constava como concluída (resposta duplicada)
+    public boolean markStepCompleted(SagaStep step) {
+        if (isStepCompleted(step)) {
+            return false;
+        }
+        this.completedSteps = completedSteps == null ? step.name() : completedSteps + "," + step.name();
+        this.updatedAt = LocalDateTime.now();
+        return true;
+    }
+
     public boolean isCompleted() {
         return SagaStatus.COMPLETED.equals(this.status);
     }
@@ -0,0 +1,14 @@
+package com.guipalm4.sagapatternspring.domain;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class SagaWindowMetrics {
+    private Long count;
+    private Double throughputPerSecond;
+    private Double p50Ms;
+    private Double p95Ms;
+    private Double p99Ms;
+}
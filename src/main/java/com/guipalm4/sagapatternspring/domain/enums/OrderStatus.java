@@ -1,5 +1,19 @@
 package com.guipalm4.sagapatternspring.domain.enums;
 
 public enum OrderStatus {
-    PENDING, CONFIRMED, CANCELLED, SHIPPED, DELIVERED
+    PENDING, CONFIRMED, CANCELLED, SHIPPED, DELIVERED;
+
+    // CANCELLED e DELIVERED são finais e um pedido enviado não pode mais ser cancelado;
+    // repetir o status atual é permitido (hooks da saga reentregues)
+    public boolean canTransitionTo(OrderStatus target) {
+        if (this == target) {
+            return true;
+        }
+        return switch (this) {
+            case PENDING -> target == CONFIRMED || target == CANCELLED || target == SHIPPED;
+            case CONFIRMED -> target == CANCELLED || target == SHIPPED;
+            case SHIPPED -> target == DELIVERED;
+            case CANCELLED, DELIVERED -> false;
+        };
+    }
 }
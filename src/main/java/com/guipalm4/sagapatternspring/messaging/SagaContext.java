@@ -0,0 +1,34 @@
+package com.guipalm4.sagapatternspring.messaging;
+
+import com.guipalm4.sagapatternspring.domain.Order;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+// Snapshot do pedido que acompanha as mensagens da saga e volta nas respostas dos participantes
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SagaContext {
+    private Long orderId;
+    private Long orderVersion;
+    private String customerId;
+    private String productId;
+    private Integer quantity;
+    private BigDecimal amount;
+
+    public static SagaContext from(Order order) {
+        return SagaContext.builder()
+                .orderId(order.getId())
+                .orderVersion(order.getVersion())
+                .customerId(order.getCustomerId())
+                .productId(order.getProductId())
+                .quantity(order.getQuantity())
+                .amount(order.getAmount())
+                .build();
+    }
+}
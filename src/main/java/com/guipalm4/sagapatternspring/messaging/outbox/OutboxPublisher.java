@@ -0,0 +1,97 @@
+package com.guipalm4.sagapatternspring.messaging.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.guipalm4.sagapatternspring.domain.OutboxMessage;
+import com.guipalm4.sagapatternspring.repository.OutboxMessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Grava mensagens SQS na tabela de outbox dentro da transação corrente.
+ * O envio fica a cargo do {@link OutboxRelay}, depois do commit.
+ */
+@Component
+@Slf4j
+public class OutboxPublisher {
+
+    private final OutboxMessageRepository outboxRepository;
+    private final OutboxRelay outboxRelay;
+    private final ObjectMapper objectMapper;
+
+    public OutboxPublisher(
+            OutboxMessageRepository outboxRepository,
+            OutboxRelay outboxRelay,
+            ObjectMapper objectMapper
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.outboxRelay = outboxRelay;
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional
+    public void publish(String queueName, String partitionKey, Object payload) {
+        publish(queueName, partitionKey, payload, Duration.ZERO);
+    }
+
+    // A mensagem só fica visível na fila depois do delay (máximo de 15 minutos no SQS)
+    @Transactional
+    public void publish(String queueName, String partitionKey, Object payload, Duration delay) {
+        int partitionId = OutboxRelay.partitionOf(partitionKey);
+
+        OutboxMessage message = OutboxMessage.builder()
+                .partitionId(partitionId)
+                .partitionKey(partitionKey)
+                .queueName(queueName)
+                .payloadType(payload.getClass().getName())
+                .payload(serialize(payload))
+                .delaySeconds(delay.isZero() ? null : (int) delay.toSeconds())
+                .createdAt(LocalDateTime.now())
+                .build();
+
+        outboxRepository.save(message);
+        wakeUpAfterCommit(partitionId);
+
+        log.debug("Mensagem registrada no outbox: fila={} chave={}", queueName, partitionKey);
+    }
+
+    // Acorda os workers responsáveis assim que a transação confirmar: uma única sincronização
+    // por transação, mesmo quando um lote grava milhares de mensagens
+    @SuppressWarnings("unchecked")
+    private void wakeUpAfterCommit(int partitionId) {
+        Set<Integer> partitions = (Set<Integer>) TransactionSynchronizationManager.getResource(this);
+        if (partitions == null) {
+            Set<Integer> pending = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pending.forEach(outboxRelay::wakeUp);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(OutboxPublisher.this);
+                }
+            });
+            partitions = pending;
+        }
+        partitions.add(partitionId);
+    }
+
+    private String serialize(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Falha ao serializar mensagem do outbox", e);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.guipalm4.sagapatternspring.messaging.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.guipalm4.sagapatternspring.domain.OutboxMessage;
+import com.guipalm4.sagapatternspring.domain.OutboxPartitionLease;
+import com.guipalm4.sagapatternspring.repository.OutboxMessageRepository;
+import com.guipalm4.sagapatternspring.repository.OutboxPartitionLeaseRepository;
+import io.awspring.cloud.sqs.listener.SqsHeaders;
+import io.awspring.cloud.sqs.operations.SendBatchOperationFailedException;
+import io.awspring.cloud.sqs.operations.SendResult;
+import io.awspring.cloud.sqs.operations.SqsTemplate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drena a tabela de outbox enviando lotes SQS de até 10 mensagens.
+ * Cada worker é dono de um conjunto fixo de partições, então as mensagens de uma
+ * mesma saga são sempre enviadas pelo mesmo worker, na ordem em que foram gravadas.
+ * Entre instâncias, cada partição é drenada só pela dona do seu lease em
+ * outbox_partition_leases, tomado com UPDATE condicional como os shards da varredura.
+ * Mensagens que não podem ser desserializadas vão para dead letter na própria tabela.
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    static final int PARTITIONS = 64;
+    private static final int SQS_MAX_BATCH_SIZE = 10;
+
+    private final OutboxMessageRepository outboxRepository;
+    private final OutboxPartitionLeaseRepository leaseRepository;
+    private final SqsTemplate sqsTemplate;
+    private final ObjectMapper objectMapper;
+    private final int workers;
+    private final int fetchSize;
+    private final long pollIntervalMs;
+    private final Duration leaseDuration;
+
+    private final Timer relayLagTimer;
+    private final DistributionSummary batchFillSummary;
+    private final Counter sendFailureCounter;
+    private final Counter deadLetterCounter;
+
+    // Identifica esta instância como dona dos leases de partição
+    private final String instanceId = UUID.randomUUID().toString();
+    // Fim do lease de cada partição; cada posição só é lida e escrita pelo worker da partição
+    private final long[] leasedUntilMillis = new long[PARTITIONS];
+
+    private final Semaphore[] signals;
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private final Map<String, Class<?>> payloadTypes = new ConcurrentHashMap<>();
+    private volatile boolean running;
+
+    public OutboxRelay(
+            OutboxMessageRepository outboxRepository,
+            OutboxPartitionLeaseRepository leaseRepository,
+            SqsTemplate sqsTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${saga.outbox.relay-workers:4}") int workers,
+            @Value("${saga.outbox.fetch-size:100}") int fetchSize,
+            @Value("${saga.outbox.poll-interval-ms:500}") long pollIntervalMs,
+            @Value("${saga.outbox.lease-ms:10000}") long leaseMs
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.leaseRepository = leaseRepository;
+        this.sqsTemplate = sqsTemplate;
+        this.objectMapper = objectMapper;
+        this.workers = Math.max(1, Math.min(workers, PARTITIONS));
+        this.fetchSize = fetchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.leaseDuration = Duration.ofMillis(leaseMs);
+
+        this.signals = new Semaphore[this.workers];
+        for (int i = 0; i < this.workers; i++) {
+            signals[i] = new Semaphore(0);
+        }
+
+        this.relayLagTimer = Timer.builder("saga_outbox_relay_lag_seconds")
+                .description("Time between outbox write and SQS send")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        this.batchFillSummary = DistributionSummary.builder("saga_outbox_batch_fill_ratio")
+                .description("Entries per SQS batch send divided by the SQS batch limit")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        this.sendFailureCounter = Counter.builder("saga_outbox_send_failures_total")
+                .description("Total number of failed outbox batch sends")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        this.deadLetterCounter = Counter.builder("saga_outbox_dead_letters_total")
+                .description("Outbox messages moved to dead letter because they could not be deserialized")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+    }
+
+    static int partitionOf(String partitionKey) {
+        return Math.floorMod(partitionKey.hashCode(), PARTITIONS);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        initializeLeases();
+        running = true;
+        for (int worker = 0; worker < workers; worker++) {
+            int owner = worker;
+            workerThreads.add(Thread.ofPlatform()
+                    .name("outbox-relay-" + worker)
+                    .daemon()
+                    .start(() -> runWorker(owner)));
+        }
+        log.info("Outbox relay iniciado com {} workers", workers);
+    }
+
+    private void initializeLeases() {
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            if (leaseRepository.existsById(partition)) {
+                continue;
+            }
+            try {
+                leaseRepository.save(OutboxPartitionLease.builder()
+                        .partitionId(partition)
+                        .leaseUntil(LocalDateTime.now())
+                        .build());
+            } catch (DataIntegrityViolationException e) {
+                // Outra instância criou o lease ao mesmo tempo
+                log.debug("Lease da partição {} do outbox já existe", partition);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workerThreads.forEach(Thread::interrupt);
+    }
+
+    public void wakeUp(int partitionId) {
+        Semaphore signal = signals[partitionId % workers];
+        if (signal.availablePermits() == 0) {
+            signal.release();
+        }
+    }
+
+    private void runWorker(int worker) {
+        List<Integer> partitions = new ArrayList<>();
+        for (int partition = worker; partition < PARTITIONS; partition += workers) {
+            partitions.add(partition);
+        }
+
+        while (running) {
+            try {
+                int sent = drain(ownedPartitions(partitions));
+                if (sent < fetchSize) {
+                    signals[worker].tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    signals[worker].drainPermits();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Erro no outbox relay (worker {})", worker, e);
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Renova cada lease na metade do prazo; só partições com lease próprio são drenadas
+    private List<Integer> ownedPartitions(List<Integer> partitions) {
+        List<Integer> owned = new ArrayList<>(partitions.size());
+        long nowMillis = System.currentTimeMillis();
+        for (Integer partition : partitions) {
+            if (nowMillis < leasedUntilMillis[partition] - leaseDuration.toMillis() / 2) {
+                owned.add(partition);
+                continue;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            if (leaseRepository.tryAcquire(partition, instanceId, now.plus(leaseDuration), now) > 0) {
+                leasedUntilMillis[partition] = nowMillis + leaseDuration.toMillis();
+                owned.add(partition);
+            } else {
+                leasedUntilMillis[partition] = 0;
+            }
+        }
+        return owned;
+    }
+
+    private int drain(List<Integer> partitions) {
+        if (partitions.isEmpty()) {
+            return 0;
+        }
+        List<OutboxMessage> pending = outboxRepository.findByPartitionIdInAndDeadLetteredAtIsNullOrderByIdAsc(
+                partitions, PageRequest.of(0, fetchSize));
+
+        // Agrupa por fila mantendo a ordem de gravação dentro de cada fila
+        Map<String, List<OutboxMessage>> byQueue = new LinkedHashMap<>();
+        for (OutboxMessage message : pending) {
+            byQueue.computeIfAbsent(message.getQueueName(), q -> new ArrayList<>()).add(message);
+        }
+
+        int sent = 0;
+        for (Map.Entry<String, List<OutboxMessage>> entry : byQueue.entrySet()) {
+            List<OutboxMessage> messages = entry.getValue();
+            for (int from = 0; from < messages.size(); from += SQS_MAX_BATCH_SIZE) {
+                List<OutboxMessage> batch = messages.subList(from, Math.min(from + SQS_MAX_BATCH_SIZE, messages.size()));
+                if (!sendBatch(entry.getKey(), batch)) {
+                    // Não pula mensagens da fila para não inverter a ordem; tenta de novo no próximo ciclo
+                    break;
+                }
+                sent += batch.size();
+            }
+        }
+        return sent;
+    }
+
+    private boolean sendBatch(String queueName, List<OutboxMessage> batch) {
+        // Cada mensagem enviada é ligada à linha do outbox pelo id da Message
+        Map<UUID, OutboxMessage> byMessageId = new LinkedHashMap<>();
+        List<Message<Object>> messages = new ArrayList<>(batch.size());
+        for (OutboxMessage outboxMessage : batch) {
+            Object payload;
+            try {
+                payload = deserialize(outboxMessage);
+            } catch (Exception e) {
+                // Mensagem envenenada: nunca poderá ser enviada, então não segura a fila
+                deadLetter(outboxMessage, e);
+                continue;
+            }
+            MessageBuilder<Object> builder = MessageBuilder.withPayload(payload);
+            if (outboxMessage.getDelaySeconds() != null) {
+                builder.setHeader(SqsHeaders.SQS_DELAY_HEADER, outboxMessage.getDelaySeconds());
+            }
+            Message<Object> message = builder.build();
+            byMessageId.put(message.getHeaders().getId(), outboxMessage);
+            messages.add(message);
+        }
+        if (messages.isEmpty()) {
+            return true;
+        }
+
+        SendResult.Batch<Object> result;
+        try {
+            result = sqsTemplate.sendMany(queueName, messages);
+        } catch (SendBatchOperationFailedException e) {
+            // Falha parcial: só as entradas aceitas pelo SQS saem do outbox
+            sendFailureCounter.increment();
+            log.error("Erro ao enviar lote do outbox para fila {} ({} mensagens)", queueName, messages.size(), e);
+            delete(sent(e.getSendBatchResult(Object.class), byMessageId));
+            return false;
+        } catch (Exception e) {
+            sendFailureCounter.increment();
+            log.error("Erro ao enviar lote do outbox para fila {} ({} mensagens)", queueName, messages.size(), e);
+            return false;
+        }
+
+        List<OutboxMessage> sent = sent(result, byMessageId);
+        delete(sent);
+        batchFillSummary.record((double) messages.size() / SQS_MAX_BATCH_SIZE);
+        if (!result.failed().isEmpty()) {
+            sendFailureCounter.increment();
+            log.error("Lote do outbox enviado em parte para fila {}: {} de {} mensagens",
+                    queueName, sent.size(), messages.size());
+            return false;
+        }
+
+        log.debug("Lote do outbox enviado: fila={} mensagens={}", queueName, sent.size());
+        return true;
+    }
+
+    private static List<OutboxMessage> sent(SendResult.Batch<Object> result, Map<UUID, OutboxMessage> byMessageId) {
+        List<OutboxMessage> sent = new ArrayList<>(result.successful().size());
+        for (SendResult<Object> success : result.successful()) {
+            OutboxMessage outboxMessage = byMessageId.get(success.message().getHeaders().getId());
+            if (outboxMessage != null) {
+                sent.add(outboxMessage);
+            }
+        }
+        return sent;
+    }
+
+    private void delete(List<OutboxMessage> sent) {
+        if (sent.isEmpty()) {
+            return;
+        }
+        outboxRepository.deleteAllByIdInBatch(sent.stream().map(OutboxMessage::getId).toList());
+
+        LocalDateTime now = LocalDateTime.now();
+        sent.forEach(message -> relayLagTimer.record(Duration.between(message.getCreatedAt(), now)));
+    }
+
+    private void deadLetter(OutboxMessage message, Exception cause) {
+        String reason = String.valueOf(cause.getMessage());
+        outboxRepository.markDeadLettered(message.getId(), LocalDateTime.now(),
+                reason.length() > 500 ? reason.substring(0, 500) : reason);
+        deadLetterCounter.increment();
+        log.error("Mensagem {} do outbox movida para dead letter (fila {})", message.getId(), message.getQueueName(), cause);
+    }
+
+    private Object deserialize(OutboxMessage message) {
+        try {
+            Class<?> type = payloadTypes.computeIfAbsent(message.getPayloadType(), this::loadType);
+            return objectMapper.readValue(message.getPayload(), type);
+        } catch (Exception e) {
+            throw new RuntimeException("Falha ao desserializar mensagem do outbox: " + message.getId(), e);
+        }
+    }
+
+    private Class<?> loadType(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Tipo de mensagem desconhecido: " + className, e);
+        }
+    }
+}
@@ -19,4 +19,6 @@ public class CompensationRequest {
     private Map<String, Object> compensationData;
     private LocalDateTime requestedAt;
     private String reason;
+    // 0 na compensação da saga, 1 quando uma etapa em dúvida conclui depois dela
+    private int attempt;
 }
\ No newline at end of file
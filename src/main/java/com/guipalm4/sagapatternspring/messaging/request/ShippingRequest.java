@@ -1,5 +1,6 @@
 package com.guipalm4.sagapatternspring.messaging.request;
 
+import com.guipalm4.sagapatternspring.messaging.SagaContext;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -11,11 +12,14 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class ShippingRequest {
+public class ShippingRequest implements StepRequest {
     private String sagaId;
     private Long orderId;
     private String customerId;
     private String shippingAddress;
     private String shippingMethod;
     private LocalDateTime requestedAt;
+    private SagaContext sagaContext;
+    // 0 no primeiro envio, n no n-ésimo reenvio por prazo vencido
+    private int attempt;
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.guipalm4.sagapatternspring.messaging.request;
+
+// Campos comuns às solicitações de etapa: a tentativa é definida pelo orquestrador no envio
+public interface StepRequest {
+
+    String getSagaId();
+
+    int getAttempt();
+
+    void setAttempt(int attempt);
+}
@@ -1,5 +1,6 @@
 package com.guipalm4.sagapatternspring.messaging.response;
 
+import com.guipalm4.sagapatternspring.messaging.SagaContext;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -12,7 +13,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class PaymentResponse {
+public class PaymentResponse implements StepResponse {
     private String sagaId;
     private Long orderId;
     private String transactionId;
@@ -21,4 +22,7 @@ public class PaymentResponse {
     private String errorCode;
     private BigDecimal processedAmount;
     private LocalDateTime processedAt;
+    private SagaContext sagaContext;
+    // Tentativa da solicitação que originou a resposta
+    private int attempt;
 }
\ No newline at end of file
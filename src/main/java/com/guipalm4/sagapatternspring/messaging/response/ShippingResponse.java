@@ -1,5 +1,6 @@
 package com.guipalm4.sagapatternspring.messaging.response;
 
+import com.guipalm4.sagapatternspring.messaging.SagaContext;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -11,7 +12,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class ShippingResponse {
+public class ShippingResponse implements StepResponse {
     private String sagaId;
     private Long orderId;
     private String trackingNumber;
@@ -20,4 +21,7 @@ public class ShippingResponse {
     private String shippingProvider;
     private LocalDateTime scheduledDelivery;
     private LocalDateTime processedAt;
+    private SagaContext sagaContext;
+    // Tentativa da solicitação que originou a resposta
+    private int attempt;
 }
\ No newline at end of file
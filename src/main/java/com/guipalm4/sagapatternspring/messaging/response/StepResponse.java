@@ -0,0 +1,19 @@
+package com.guipalm4.sagapatternspring.messaging.response;
+
+import com.guipalm4.sagapatternspring.messaging.SagaContext;
+
+// Campos comuns às respostas dos participantes, tratadas de forma genérica pelo orquestrador
+public interface StepResponse {
+
+    String getSagaId();
+
+    Long getOrderId();
+
+    boolean isSuccessful();
+
+    String getErrorMessage();
+
+    SagaContext getSagaContext();
+
+    int getAttempt();
+}
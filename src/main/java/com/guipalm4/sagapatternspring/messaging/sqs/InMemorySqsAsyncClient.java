@@ -0,0 +1,405 @@
+package com.guipalm4.sagapatternspring.messaging.sqs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.sqs.SqsAsyncClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityResponse;
+import software.amazon.awssdk.services.sqs.model.CreateQueueRequest;
+import software.amazon.awssdk.services.sqs.model.CreateQueueResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteQueueRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteQueueResponse;
+import software.amazon.awssdk.services.sqs.model.EmptyBatchRequestException;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesResponse;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlResponse;
+import software.amazon.awssdk.services.sqs.model.InvalidAttributeValueException;
+import software.amazon.awssdk.services.sqs.model.ListQueuesRequest;
+import software.amazon.awssdk.services.sqs.model.ListQueuesResponse;
+import software.amazon.awssdk.services.sqs.model.PurgeQueueRequest;
+import software.amazon.awssdk.services.sqs.model.PurgeQueueResponse;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+import software.amazon.awssdk.services.sqs.model.QueueDoesNotExistException;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageResponse;
+import software.amazon.awssdk.services.sqs.model.SetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.SetQueueAttributesResponse;
+import software.amazon.awssdk.services.sqs.model.TooManyEntriesInBatchRequestException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * SqsAsyncClient em memória para rodar o fluxo completo da saga numa única JVM, sem
+ * LocalStack. Cobre o que o SqsTemplate e os listeners usam: criação e resolução de filas,
+ * envio simples e em lote (com DelaySeconds), recebimento em lote com long polling,
+ * timeout de visibilidade, exclusão e mudança de visibilidade, e redrive para DLQ via
+ * atributo RedrivePolicy. Filas FIFO, permissões e tags não são suportadas.
+ * O long polling bloqueia uma virtual thread por recebimento pendente.
+ */
+@Slf4j
+public class InMemorySqsAsyncClient implements SqsAsyncClient {
+
+    static final String ACCOUNT_ID = "000000000000";
+    private static final String QUEUE_URL_PREFIX = "http://sqs.in-memory/" + ACCOUNT_ID + "/";
+    private static final String QUEUE_ARN_PREFIX = "arn:aws:sqs:us-east-1:" + ACCOUNT_ID + ":";
+
+    private static final int MAX_BATCH_ENTRIES = 10;
+    private static final int MAX_DELAY_SECONDS = 900;
+    private static final int MAX_WAIT_TIME_SECONDS = 20;
+    private static final int MAX_VISIBILITY_TIMEOUT_SECONDS = 43200;
+
+    private final Map<String, InMemorySqsQueue> queues = new ConcurrentHashMap<>();
+    private final ExecutorService receivers = Executors.newVirtualThreadPerTaskExecutor();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int defaultVisibilityTimeoutSeconds;
+
+    public InMemorySqsAsyncClient(int defaultVisibilityTimeoutSeconds) {
+        this.defaultVisibilityTimeoutSeconds = defaultVisibilityTimeoutSeconds;
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+        receivers.shutdownNow();
+    }
+
+    // ===== Filas =====
+
+    @Override
+    public CompletableFuture<CreateQueueResponse> createQueue(CreateQueueRequest request) {
+        return call(() -> {
+            // Idempotente: recriar uma fila existente só reaplica os atributos informados
+            InMemorySqsQueue queue = queues.computeIfAbsent(request.queueName(), name ->
+                    new InMemorySqsQueue(name, QUEUE_URL_PREFIX + name, QUEUE_ARN_PREFIX + name, defaultVisibilityTimeoutSeconds));
+            applyAttributes(queue, request.attributes());
+            log.debug("Fila em memória criada: {}", queue.name());
+            return CreateQueueResponse.builder().queueUrl(queue.url()).build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<GetQueueUrlResponse> getQueueUrl(GetQueueUrlRequest request) {
+        return call(() -> GetQueueUrlResponse.builder()
+                .queueUrl(queueByName(request.queueName()).url())
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<ListQueuesResponse> listQueues(ListQueuesRequest request) {
+        return call(() -> ListQueuesResponse.builder()
+                .queueUrls(queues.values().stream()
+                        .filter(queue -> request.queueNamePrefix() == null || queue.name().startsWith(request.queueNamePrefix()))
+                        .map(InMemorySqsQueue::url)
+                        .sorted()
+                        .toList())
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<DeleteQueueResponse> deleteQueue(DeleteQueueRequest request) {
+        return call(() -> {
+            queues.remove(queueByUrl(request.queueUrl()).name());
+            return DeleteQueueResponse.builder().build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<PurgeQueueResponse> purgeQueue(PurgeQueueRequest request) {
+        return call(() -> {
+            queueByUrl(request.queueUrl()).purge();
+            return PurgeQueueResponse.builder().build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<GetQueueAttributesResponse> getQueueAttributes(GetQueueAttributesRequest request) {
+        return call(() -> {
+            InMemorySqsQueue queue = queueByUrl(request.queueUrl());
+            long[] counts = queue.approximateCounts();
+
+            Map<QueueAttributeName, String> all = new EnumMap<>(QueueAttributeName.class);
+            all.put(QueueAttributeName.QUEUE_ARN, queue.arn());
+            all.put(QueueAttributeName.VISIBILITY_TIMEOUT, String.valueOf(queue.visibilityTimeoutSeconds()));
+            all.put(QueueAttributeName.DELAY_SECONDS, String.valueOf(queue.delaySeconds()));
+            all.put(QueueAttributeName.RECEIVE_MESSAGE_WAIT_TIME_SECONDS, String.valueOf(queue.receiveWaitTimeSeconds()));
+            all.put(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES, String.valueOf(counts[0]));
+            all.put(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE, String.valueOf(counts[1]));
+            all.put(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_DELAYED, String.valueOf(counts[2]));
+            if (queue.redrive() != null) {
+                all.put(QueueAttributeName.REDRIVE_POLICY, queue.redrive().policy());
+            }
+
+            List<QueueAttributeName> requested = request.attributeNames();
+            Map<QueueAttributeName, String> attributes = new EnumMap<>(QueueAttributeName.class);
+            all.forEach((attributeName, value) -> {
+                if (requested.contains(QueueAttributeName.ALL) || requested.contains(attributeName)) {
+                    attributes.put(attributeName, value);
+                }
+            });
+            return GetQueueAttributesResponse.builder().attributes(attributes).build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<SetQueueAttributesResponse> setQueueAttributes(SetQueueAttributesRequest request) {
+        return call(() -> {
+            applyAttributes(queueByUrl(request.queueUrl()), request.attributes());
+            return SetQueueAttributesResponse.builder().build();
+        });
+    }
+
+    // ===== Envio =====
+
+    @Override
+    public CompletableFuture<SendMessageResponse> sendMessage(SendMessageRequest request) {
+        return call(() -> {
+            InMemorySqsQueue queue = queueByUrl(request.queueUrl());
+            String messageId = queue.send(request.messageBody(), request.messageAttributes(), delayOf(request.delaySeconds()));
+            return SendMessageResponse.builder().messageId(messageId).build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<SendMessageBatchResponse> sendMessageBatch(SendMessageBatchRequest request) {
+        return call(() -> {
+            InMemorySqsQueue queue = queueByUrl(request.queueUrl());
+            checkBatchSize(request.entries());
+
+            List<SendMessageBatchResultEntry> successful = new ArrayList<>(request.entries().size());
+            List<BatchResultErrorEntry> failed = new ArrayList<>();
+            for (SendMessageBatchRequestEntry entry : request.entries()) {
+                try {
+                    String messageId = queue.send(entry.messageBody(), entry.messageAttributes(), delayOf(entry.delaySeconds()));
+                    successful.add(SendMessageBatchResultEntry.builder().id(entry.id()).messageId(messageId).build());
+                } catch (InvalidAttributeValueException e) {
+                    failed.add(errorEntry(entry.id(), "InvalidParameterValue", e.getMessage()));
+                }
+            }
+            return SendMessageBatchResponse.builder().successful(successful).failed(failed).build();
+        });
+    }
+
+    // ===== Recebimento =====
+
+    @Override
+    public CompletableFuture<ReceiveMessageResponse> receiveMessage(ReceiveMessageRequest request) {
+        InMemorySqsQueue queue;
+        try {
+            queue = queueByUrl(request.queueUrl());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        int maxMessages = request.maxNumberOfMessages() != null
+                ? Math.clamp(request.maxNumberOfMessages(), 1, MAX_BATCH_ENTRIES)
+                : 1;
+        int waitSeconds = request.waitTimeSeconds() != null
+                ? Math.clamp(request.waitTimeSeconds(), 0, MAX_WAIT_TIME_SECONDS)
+                : queue.receiveWaitTimeSeconds();
+        Predicate<String> attributeFilter = attributeFilter(request.messageAttributeNames());
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return ReceiveMessageResponse.builder()
+                        .messages(queue.receive(maxMessages, TimeUnit.SECONDS.toNanos(waitSeconds),
+                                request.visibilityTimeout(), attributeFilter))
+                        .build();
+            } catch (InterruptedException e) {
+                // Cliente fechado durante o long polling
+                Thread.currentThread().interrupt();
+                return ReceiveMessageResponse.builder().build();
+            }
+        }, receivers);
+    }
+
+    @Override
+    public CompletableFuture<DeleteMessageResponse> deleteMessage(DeleteMessageRequest request) {
+        return call(() -> {
+            queueByUrl(request.queueUrl()).delete(request.receiptHandle());
+            return DeleteMessageResponse.builder().build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<DeleteMessageBatchResponse> deleteMessageBatch(DeleteMessageBatchRequest request) {
+        return call(() -> {
+            InMemorySqsQueue queue = queueByUrl(request.queueUrl());
+            checkBatchSize(request.entries());
+            request.entries().forEach(entry -> queue.delete(entry.receiptHandle()));
+            return DeleteMessageBatchResponse.builder()
+                    .successful(request.entries().stream()
+                            .map(entry -> DeleteMessageBatchResultEntry.builder().id(entry.id()).build())
+                            .toList())
+                    .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<ChangeMessageVisibilityResponse> changeMessageVisibility(ChangeMessageVisibilityRequest request) {
+        return call(() -> {
+            InMemorySqsQueue queue = queueByUrl(request.queueUrl());
+            if (!queue.changeVisibility(request.receiptHandle(), visibilityOf(request.visibilityTimeout()))) {
+                throw InvalidAttributeValueException.builder()
+                        .message("Mensagem não está em processamento: " + request.receiptHandle())
+                        .build();
+            }
+            return ChangeMessageVisibilityResponse.builder().build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<ChangeMessageVisibilityBatchResponse> changeMessageVisibilityBatch(
+            ChangeMessageVisibilityBatchRequest request) {
+        return call(() -> {
+            InMemorySqsQueue queue = queueByUrl(request.queueUrl());
+            checkBatchSize(request.entries());
+
+            List<ChangeMessageVisibilityBatchResultEntry> successful = new ArrayList<>();
+            List<BatchResultErrorEntry> failed = new ArrayList<>();
+            request.entries().forEach(entry -> {
+                if (queue.changeVisibility(entry.receiptHandle(), visibilityOf(entry.visibilityTimeout()))) {
+                    successful.add(ChangeMessageVisibilityBatchResultEntry.builder().id(entry.id()).build());
+                } else {
+                    failed.add(errorEntry(entry.id(), "MessageNotInflight", "Mensagem não está em processamento"));
+                }
+            });
+            return ChangeMessageVisibilityBatchResponse.builder().successful(successful).failed(failed).build();
+        });
+    }
+
+    // ===== Auxiliares =====
+
+    // Erros do SDK chegam ao chamador como future falho, igual ao cliente real
+    private static <T> CompletableFuture<T> call(Supplier<T> operation) {
+        try {
+            return CompletableFuture.completedFuture(operation.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private InMemorySqsQueue queueByName(String queueName) {
+        InMemorySqsQueue queue = queues.get(queueName);
+        if (queue == null) {
+            throw QueueDoesNotExistException.builder()
+                    .message("Fila não encontrada: " + queueName)
+                    .build();
+        }
+        return queue;
+    }
+
+    private InMemorySqsQueue queueByUrl(String queueUrl) {
+        return queueByName(queueUrl.substring(queueUrl.lastIndexOf('/') + 1));
+    }
+
+    private void applyAttributes(InMemorySqsQueue queue, Map<QueueAttributeName, String> attributes) {
+        attributes.forEach((attributeName, value) -> {
+            switch (attributeName) {
+                case VISIBILITY_TIMEOUT -> queue.visibilityTimeoutSeconds(visibilityOf(Integer.valueOf(value)));
+                case DELAY_SECONDS -> queue.delaySeconds(delayOf(Integer.valueOf(value)));
+                case RECEIVE_MESSAGE_WAIT_TIME_SECONDS ->
+                        queue.receiveWaitTimeSeconds(Math.clamp(Integer.parseInt(value), 0, MAX_WAIT_TIME_SECONDS));
+                case REDRIVE_POLICY -> queue.redrive(redriveOf(value));
+                default -> log.debug("Atributo de fila ignorado pelo SQS em memória: {}", attributeName);
+            }
+        });
+    }
+
+    private InMemorySqsQueue.Redrive redriveOf(String policy) {
+        if (policy == null || policy.isBlank()) {
+            return null;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(policy);
+            String targetArn = node.path("deadLetterTargetArn").asText();
+            InMemorySqsQueue deadLetterQueue = queueByName(targetArn.substring(targetArn.lastIndexOf(':') + 1));
+            return new InMemorySqsQueue.Redrive(deadLetterQueue, node.path("maxReceiveCount").asInt(), policy);
+        } catch (QueueDoesNotExistException e) {
+            throw e;
+        } catch (Exception e) {
+            throw InvalidAttributeValueException.builder()
+                    .message("RedrivePolicy inválida: " + policy)
+                    .build();
+        }
+    }
+
+    private static Integer delayOf(Integer delaySeconds) {
+        if (delaySeconds != null && (delaySeconds < 0 || delaySeconds > MAX_DELAY_SECONDS)) {
+            throw InvalidAttributeValueException.builder()
+                    .message("DelaySeconds fora do intervalo 0-" + MAX_DELAY_SECONDS + ": " + delaySeconds)
+                    .build();
+        }
+        return delaySeconds;
+    }
+
+    private static int visibilityOf(Integer visibilityTimeoutSeconds) {
+        if (visibilityTimeoutSeconds == null || visibilityTimeoutSeconds < 0
+                || visibilityTimeoutSeconds > MAX_VISIBILITY_TIMEOUT_SECONDS) {
+            throw InvalidAttributeValueException.builder()
+                    .message("VisibilityTimeout fora do intervalo 0-" + MAX_VISIBILITY_TIMEOUT_SECONDS + ": " + visibilityTimeoutSeconds)
+                    .build();
+        }
+        return visibilityTimeoutSeconds;
+    }
+
+    private static void checkBatchSize(Collection<?> entries) {
+        if (entries.isEmpty()) {
+            throw EmptyBatchRequestException.builder().message("Lote sem entradas").build();
+        }
+        if (entries.size() > MAX_BATCH_ENTRIES) {
+            throw TooManyEntriesInBatchRequestException.builder()
+                    .message("Lote com " + entries.size() + " entradas; máximo " + MAX_BATCH_ENTRIES)
+                    .build();
+        }
+    }
+
+    // "All" ou ".*" devolvem todos os atributos; "prefixo.*" filtra por prefixo
+    private static Predicate<String> attributeFilter(List<String> names) {
+        if (names.contains("All") || names.contains(".*")) {
+            return attributeName -> true;
+        }
+        return attributeName -> names.stream().anyMatch(name -> name.endsWith(".*")
+                ? attributeName.startsWith(name.substring(0, name.length() - 1))
+                : name.equals(attributeName));
+    }
+
+    private static BatchResultErrorEntry errorEntry(String id, String code, String message) {
+        return BatchResultErrorEntry.builder()
+                .id(id)
+                .code(code)
+                .message(message)
+                .senderFault(true)
+                .build();
+    }
+}
@@ -0,0 +1,290 @@
+package com.guipalm4.sagapatternspring.messaging.sqs;
+
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.MessageSystemAttributeName;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Estado de uma fila do {@link InMemorySqsAsyncClient}. Todas as mensagens não apagadas
+ * ficam num único conjunto ordenado pelo instante em que voltam a ser visíveis: atraso
+ * (DelaySeconds) e timeout de visibilidade são o mesmo mecanismo, e a próxima mensagem
+ * entregável é sempre a primeira do conjunto.
+ */
+class InMemorySqsQueue {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final String name;
+    private final String url;
+    private final String arn;
+
+    private volatile int visibilityTimeoutSeconds;
+    private volatile int delaySeconds;
+    private volatile int receiveWaitTimeSeconds;
+    private volatile Redrive redrive;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final NavigableSet<StoredMessage> messages = new TreeSet<>(
+            Comparator.comparingLong(StoredMessage::visibleAtNanos).thenComparingLong(StoredMessage::sequence));
+    private final Map<String, StoredMessage> inFlightByReceiptHandle = new HashMap<>();
+
+    InMemorySqsQueue(String name, String url, String arn, int visibilityTimeoutSeconds) {
+        this.name = name;
+        this.url = url;
+        this.arn = arn;
+        this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+    }
+
+    String name() {
+        return name;
+    }
+
+    String url() {
+        return url;
+    }
+
+    String arn() {
+        return arn;
+    }
+
+    int visibilityTimeoutSeconds() {
+        return visibilityTimeoutSeconds;
+    }
+
+    void visibilityTimeoutSeconds(int seconds) {
+        this.visibilityTimeoutSeconds = seconds;
+    }
+
+    int delaySeconds() {
+        return delaySeconds;
+    }
+
+    void delaySeconds(int seconds) {
+        this.delaySeconds = seconds;
+    }
+
+    int receiveWaitTimeSeconds() {
+        return receiveWaitTimeSeconds;
+    }
+
+    void receiveWaitTimeSeconds(int seconds) {
+        this.receiveWaitTimeSeconds = seconds;
+    }
+
+    Redrive redrive() {
+        return redrive;
+    }
+
+    void redrive(Redrive redrive) {
+        this.redrive = redrive;
+    }
+
+    String send(String body, Map<String, MessageAttributeValue> attributes, Integer delaySeconds) {
+        int delay = delaySeconds != null ? delaySeconds : this.delaySeconds;
+        StoredMessage message = new StoredMessage(UUID.randomUUID().toString(), body, attributes, System.currentTimeMillis());
+        message.visibleAtNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(delay);
+        add(message);
+        return message.messageId;
+    }
+
+    /**
+     * Entrega até maxMessages mensagens visíveis, esperando até waitNanos (long polling) se
+     * não houver nenhuma. Mensagens que já atingiram maxReceiveCount vão para a DLQ em vez
+     * de serem entregues, como no SQS.
+     */
+    List<Message> receive(int maxMessages, long waitNanos, Integer visibilityTimeoutOverride,
+                          Predicate<String> attributeFilter) throws InterruptedException {
+        long deadline = System.nanoTime() + waitNanos;
+        long visibilityNanos = TimeUnit.SECONDS.toNanos(
+                visibilityTimeoutOverride != null ? visibilityTimeoutOverride : visibilityTimeoutSeconds);
+        Redrive currentRedrive = redrive;
+
+        List<Message> received = new ArrayList<>(maxMessages);
+        List<StoredMessage> deadLettered = new ArrayList<>();
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                while (received.size() < maxMessages && !messages.isEmpty() && messages.first().visibleAtNanos <= now) {
+                    StoredMessage message = messages.pollFirst();
+                    if (message.receiptHandle != null) {
+                        inFlightByReceiptHandle.remove(message.receiptHandle);
+                    }
+                    if (currentRedrive != null && message.receiveCount >= currentRedrive.maxReceiveCount()) {
+                        deadLettered.add(message);
+                        continue;
+                    }
+                    received.add(deliver(message, now, visibilityNanos, attributeFilter));
+                }
+                if (!received.isEmpty() || now >= deadline) {
+                    return received;
+                }
+                // Acorda no fim do long polling ou quando a próxima mensagem ficar visível
+                long waitFor = deadline - now;
+                if (!messages.isEmpty()) {
+                    waitFor = Math.min(waitFor, messages.first().visibleAtNanos - now);
+                }
+                changed.awaitNanos(Math.max(waitFor, 1));
+            }
+        } finally {
+            lock.unlock();
+            // Fora do lock: a DLQ pode ter a sua própria DLQ apontando de volta para esta fila
+            deadLettered.forEach(message -> currentRedrive.deadLetterQueue().moveIn(message));
+        }
+    }
+
+    private Message deliver(StoredMessage message, long now, long visibilityNanos, Predicate<String> attributeFilter) {
+        message.receiveCount++;
+        if (message.firstReceiveTimestamp == 0) {
+            message.firstReceiveTimestamp = System.currentTimeMillis();
+        }
+        message.receiptHandle = message.messageId + "#" + UUID.randomUUID();
+        message.visibleAtNanos = now + visibilityNanos;
+        messages.add(message);
+        inFlightByReceiptHandle.put(message.receiptHandle, message);
+
+        Map<String, MessageAttributeValue> attributes = new HashMap<>();
+        message.attributes.forEach((attributeName, value) -> {
+            if (attributeFilter.test(attributeName)) {
+                attributes.put(attributeName, value);
+            }
+        });
+        return Message.builder()
+                .messageId(message.messageId)
+                .receiptHandle(message.receiptHandle)
+                .body(message.body)
+                .messageAttributes(attributes)
+                .attributes(Map.of(
+                        MessageSystemAttributeName.SENT_TIMESTAMP, String.valueOf(message.sentTimestamp),
+                        MessageSystemAttributeName.APPROXIMATE_RECEIVE_COUNT, String.valueOf(message.receiveCount),
+                        MessageSystemAttributeName.APPROXIMATE_FIRST_RECEIVE_TIMESTAMP, String.valueOf(message.firstReceiveTimestamp),
+                        MessageSystemAttributeName.SENDER_ID, InMemorySqsAsyncClient.ACCOUNT_ID))
+                .build();
+    }
+
+    // Handles antigos (mensagem já recebida de novo) são ignorados, como no SQS
+    void delete(String receiptHandle) {
+        lock.lock();
+        try {
+            StoredMessage message = inFlightByReceiptHandle.remove(receiptHandle);
+            if (message != null) {
+                messages.remove(message);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // false quando a mensagem não está mais em processamento com este handle
+    boolean changeVisibility(String receiptHandle, int visibilityTimeoutSeconds) {
+        lock.lock();
+        try {
+            StoredMessage message = inFlightByReceiptHandle.get(receiptHandle);
+            long now = System.nanoTime();
+            if (message == null || message.visibleAtNanos <= now) {
+                return false;
+            }
+            messages.remove(message);
+            message.visibleAtNanos = now + TimeUnit.SECONDS.toNanos(visibilityTimeoutSeconds);
+            messages.add(message);
+            changed.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void purge() {
+        lock.lock();
+        try {
+            messages.clear();
+            inFlightByReceiptHandle.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // [visíveis, em processamento, atrasadas]
+    long[] approximateCounts() {
+        long now = System.nanoTime();
+        long[] counts = new long[3];
+        lock.lock();
+        try {
+            for (StoredMessage message : messages) {
+                if (message.visibleAtNanos <= now) {
+                    counts[0]++;
+                } else if (message.receiptHandle != null) {
+                    counts[1]++;
+                } else {
+                    counts[2]++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return counts;
+    }
+
+    private void moveIn(StoredMessage message) {
+        message.receiptHandle = null;
+        message.receiveCount = 0;
+        message.visibleAtNanos = System.nanoTime();
+        add(message);
+    }
+
+    private void add(StoredMessage message) {
+        message.sequence = SEQUENCE.incrementAndGet();
+        lock.lock();
+        try {
+            messages.add(message);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    record Redrive(InMemorySqsQueue deadLetterQueue, int maxReceiveCount, String policy) {
+    }
+
+    private static final class StoredMessage {
+        final String messageId;
+        final String body;
+        final Map<String, MessageAttributeValue> attributes;
+        final long sentTimestamp;
+        long sequence;
+        long visibleAtNanos;
+        int receiveCount;
+        long firstReceiveTimestamp;
+        String receiptHandle;
+
+        StoredMessage(String messageId, String body, Map<String, MessageAttributeValue> attributes, long sentTimestamp) {
+            this.messageId = messageId;
+            this.body = body;
+            this.attributes = attributes;
+            this.sentTimestamp = sentTimestamp;
+        }
+
+        long visibleAtNanos() {
+            return visibleAtNanos;
+        }
+
+        long sequence() {
+            return sequence;
+        }
+    }
+}
@@ -3,8 +3,12 @@ package com.guipalm4.sagapatternspring.repository;
 import com.guipalm4.sagapatternspring.domain.Order;
 import com.guipalm4.sagapatternspring.domain.enums.OrderStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -12,4 +16,13 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByCustomerId(String customerId);
     List<Order> findByStatus(OrderStatus status);
     List<Order> findByCustomerIdAndStatus(String customerId, OrderStatus status);
+
+    // Troca de status sem carregar o pedido; 0 linhas se a versão informada estiver desatualizada
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :status, o.updatedAt = :updatedAt, o.version = o.version + 1 " +
+            "WHERE o.id = :id AND o.version = :version")
+    int updateStatusIfVersion(@Param("id") Long id,
+                              @Param("status") OrderStatus status,
+                              @Param("updatedAt") LocalDateTime updatedAt,
+                              @Param("version") Long version);
 }
@@ -0,0 +1,26 @@
+package com.guipalm4.sagapatternspring.repository;
+
+import com.guipalm4.sagapatternspring.domain.OutboxMessage;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+
+    // Mensagens em dead letter ficam fora do envio
+    List<OutboxMessage> findByPartitionIdInAndDeadLetteredAtIsNullOrderByIdAsc(Collection<Integer> partitionIds, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxMessage m SET m.deadLetteredAt = :at, m.deadLetterReason = :reason WHERE m.id = :id")
+    int markDeadLettered(@Param("id") Long id, @Param("at") LocalDateTime at, @Param("reason") String reason);
+}
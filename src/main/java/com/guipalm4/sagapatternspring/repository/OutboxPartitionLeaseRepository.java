@@ -0,0 +1,25 @@
+package com.guipalm4.sagapatternspring.repository;
+
+import com.guipalm4.sagapatternspring.domain.OutboxPartitionLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface OutboxPartitionLeaseRepository extends JpaRepository<OutboxPartitionLease, Integer> {
+
+    // UPDATE condicional: renova o próprio lease ou toma um vencido; retorna 0 se outra instância é dona
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxPartitionLease l SET l.owner = :owner, l.leaseUntil = :until " +
+            "WHERE l.partitionId = :partitionId AND (l.owner = :owner OR l.leaseUntil < :now)")
+    int tryAcquire(@Param("partitionId") Integer partitionId,
+                   @Param("owner") String owner,
+                   @Param("until") LocalDateTime until,
+                   @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,26 @@
+package com.guipalm4.sagapatternspring.repository;
+
+import com.guipalm4.sagapatternspring.domain.ProcessedMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface ProcessedMessageRepository extends JpaRepository<ProcessedMessage, String> {
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ProcessedMessage m WHERE m.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+
+    // O deleteById herdado não remove nada: ProcessedMessage sempre se declara nova (isNew)
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ProcessedMessage m WHERE m.messageKey = :messageKey")
+    int deleteByMessageKey(@Param("messageKey") String messageKey);
+}
@@ -0,0 +1,21 @@
+package com.guipalm4.sagapatternspring.repository;
+
+import com.guipalm4.sagapatternspring.domain.SagaTransaction;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface SagaTransactionBatchRepository {
+
+    // UPDATE condicional pela versão lida, num único lote JDBC; por posição, false significa
+    // que outra escrita venceu. Dispensa o SELECT do merge e nunca sobrescreve uma transição mais nova
+    boolean[] updateAllIfVersion(List<SagaTransaction> sagas);
+
+    // Mesmo UPDATE condicional para uma saga, na transação de quem chama: 1 se a versão lida
+    // ainda era a do banco, 0 se outra escrita venceu. A linha fica bloqueada até o commit
+    int updateIfVersion(SagaTransaction saga);
+
+    // Linha atual lida direto pelo JDBC, sem passar pelo contexto de persistência: dentro de
+    // uma transação enxerga as próprias escritas JDBC, que o findById poderia esconder
+    Optional<SagaTransaction> findCurrent(String sagaId);
+}
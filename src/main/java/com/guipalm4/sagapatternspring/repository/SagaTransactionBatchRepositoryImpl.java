@@ -0,0 +1,128 @@
+package com.guipalm4.sagapatternspring.repository;
+
+import com.guipalm4.sagapatternspring.domain.SagaTransaction;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStatus;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+class SagaTransactionBatchRepositoryImpl implements SagaTransactionBatchRepository {
+
+    private static final String UPDATE_IF_VERSION = "UPDATE saga_transactions SET status = ?, current_step = ?, " +
+            "compensation_step = ?, completed_steps = ?, error_message = ?, retry_count = ?, order_version = ?, " +
+            "updated_at = ?, completed_at = ?, version = version + 1 WHERE saga_id = ? AND version = ?";
+
+    private static final String SELECT_CURRENT = "SELECT saga_id, order_id, shard, order_version, status, " +
+            "current_step, completed_steps, compensation_step, error_message, retry_count, version, created_at, " +
+            "updated_at, completed_at, intake_owner, intake_claimed_until FROM saga_transactions WHERE saga_id = ?";
+
+    private static final String SELECT_VERSION = "SELECT version, updated_at FROM saga_transactions WHERE saga_id = ?";
+
+    private static final RowMapper<SagaTransaction> SAGA_MAPPER = (rs, rowNum) -> SagaTransaction.builder()
+            .sagaId(rs.getString("saga_id"))
+            .orderId(rs.getLong("order_id"))
+            .shard(rs.getInt("shard"))
+            .orderVersion(rs.getObject("order_version", Long.class))
+            .status(SagaStatus.valueOf(rs.getString("status")))
+            .currentStep(SagaStep.valueOf(rs.getString("current_step")))
+            .completedSteps(rs.getString("completed_steps"))
+            .compensationStep(step(rs.getString("compensation_step")))
+            .errorMessage(rs.getString("error_message"))
+            .retryCount(rs.getInt("retry_count"))
+            .version(rs.getLong("version"))
+            .createdAt(rs.getObject("created_at", LocalDateTime.class))
+            .updatedAt(rs.getObject("updated_at", LocalDateTime.class))
+            .completedAt(rs.getObject("completed_at", LocalDateTime.class))
+            .intakeOwner(rs.getString("intake_owner"))
+            .intakeClaimedUntil(rs.getObject("intake_claimed_until", LocalDateTime.class))
+            .newEntity(false)
+            .build();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    SagaTransactionBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public boolean[] updateAllIfVersion(List<SagaTransaction> sagas) {
+        boolean[] won = new boolean[sagas.size()];
+        if (sagas.isEmpty()) {
+            return won;
+        }
+
+        // Mesma conexão da transação JPA em curso (JpaTransactionManager expõe o DataSource)
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_IF_VERSION, sagas, sagas.size(),
+                SagaTransactionBatchRepositoryImpl::bind);
+
+        int[] rows = counts.length > 0 ? counts[0] : new int[0];
+        for (int i = 0; i < won.length; i++) {
+            if (i < rows.length && rows[i] == Statement.SUCCESS_NO_INFO) {
+                // O driver não informa linhas por comando: o resultado é desconhecido e a linha
+                // é relida na mesma transação
+                won[i] = written(sagas.get(i));
+            } else {
+                won[i] = i < rows.length && rows[i] == 1;
+            }
+        }
+        return won;
+    }
+
+    @Override
+    public int updateIfVersion(SagaTransaction saga) {
+        return jdbcTemplate.update(UPDATE_IF_VERSION, ps -> bind(ps, saga));
+    }
+
+    @Override
+    public Optional<SagaTransaction> findCurrent(String sagaId) {
+        return jdbcTemplate.query(SELECT_CURRENT, SAGA_MAPPER, sagaId).stream().findFirst();
+    }
+
+    // A escrita é nossa se a versão avançou exatamente uma vez e a linha tem o updated_at que
+    // gravamos; outra escrita no mesmo intervalo teria o seu próprio
+    private boolean written(SagaTransaction saga) {
+        return jdbcTemplate.query(SELECT_VERSION, (rs, rowNum) ->
+                        rs.getLong("version") == saga.getVersion() + 1
+                                && Objects.equals(micros(rs.getObject("updated_at", LocalDateTime.class)),
+                                micros(saga.getUpdatedAt())),
+                saga.getSagaId()).stream().findFirst().orElse(false);
+    }
+
+    private static void bind(PreparedStatement ps, SagaTransaction saga) throws SQLException {
+        ps.setString(1, saga.getStatus().name());
+        ps.setString(2, saga.getCurrentStep().name());
+        ps.setString(3, saga.getCompensationStep() != null ? saga.getCompensationStep().name() : null);
+        ps.setString(4, saga.getCompletedSteps());
+        ps.setString(5, saga.getErrorMessage());
+        ps.setInt(6, saga.getRetryCount());
+        ps.setObject(7, saga.getOrderVersion(), Types.BIGINT);
+        ps.setTimestamp(8, timestamp(saga.getUpdatedAt()));
+        ps.setTimestamp(9, timestamp(saga.getCompletedAt()));
+        ps.setString(10, saga.getSagaId());
+        ps.setLong(11, saga.getVersion());
+    }
+
+    private static SagaStep step(String name) {
+        return name != null ? SagaStep.valueOf(name) : null;
+    }
+
+    // As colunas timestamp(6) guardam microssegundos
+    private static LocalDateTime micros(LocalDateTime value) {
+        return value != null ? value.truncatedTo(ChronoUnit.MICROS) : null;
+    }
+
+    private static Timestamp timestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+}
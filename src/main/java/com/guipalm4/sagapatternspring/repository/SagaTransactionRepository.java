@@ -2,28 +2,87 @@ package com.guipalm4.sagapatternspring.repository;
 
 import com.guipalm4.sagapatternspring.domain.enums.SagaStatus;
 import com.guipalm4.sagapatternspring.domain.SagaTransaction;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface SagaTransactionRepository extends JpaRepository<SagaTransaction, String> {
+public interface SagaTransactionRepository extends JpaRepository<SagaTransaction, String>, SagaTransactionBatchRepository {
 
     List<SagaTransaction> findByStatus(SagaStatus status);
 
     List<SagaTransaction> findByOrderId(Long orderId);
 
-    @Query("SELECT s FROM SagaTransaction s WHERE s.status = :status AND s.createdAt < :before")
-    List<SagaTransaction> findStuckSagas(@Param("status") SagaStatus status,
-                                         @Param("before") LocalDateTime before);
+    // Paginação por keyset (sagaId > último visto): custo constante por página, sem OFFSET
+    @Query("SELECT s FROM SagaTransaction s WHERE s.shard = :shard AND s.status = :status " +
+            "AND s.updatedAt < :before AND s.sagaId > :afterSagaId ORDER BY s.sagaId")
+    List<SagaTransaction> findStuckSagas(@Param("shard") Integer shard,
+                                         @Param("status") SagaStatus status,
+                                         @Param("before") LocalDateTime before,
+                                         @Param("afterSagaId") String afterSagaId,
+                                         Limit limit);
 
     @Query("SELECT s FROM SagaTransaction s WHERE s.status IN :statuses ORDER BY s.createdAt DESC")
     List<SagaTransaction> findByStatusIn(@Param("statuses") List<SagaStatus> statuses);
 
+    // Paginação por keyset em (createdAt, sagaId), do mais recente para o mais antigo
+    @Query("SELECT s FROM SagaTransaction s WHERE s.status IN :statuses ORDER BY s.createdAt DESC, s.sagaId DESC")
+    List<SagaTransaction> findPageByStatusIn(@Param("statuses") List<SagaStatus> statuses, Limit limit);
+
+    @Query("SELECT s FROM SagaTransaction s WHERE s.status IN :statuses " +
+            "AND (s.createdAt < :createdAt OR (s.createdAt = :createdAt AND s.sagaId < :sagaId)) " +
+            "ORDER BY s.createdAt DESC, s.sagaId DESC")
+    List<SagaTransaction> findPageByStatusInAfter(@Param("statuses") List<SagaStatus> statuses,
+                                                  @Param("createdAt") LocalDateTime createdAt,
+                                                  @Param("sagaId") String sagaId,
+                                                  Limit limit);
+
+    // Cursor do banco lido aos poucos: exige transação aberta enquanto o Stream é consumido
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT s FROM SagaTransaction s WHERE s.status IN :statuses ORDER BY s.createdAt DESC, s.sagaId DESC")
+    Stream<SagaTransaction> streamByStatusIn(@Param("statuses") List<SagaStatus> statuses);
+
     Optional<SagaTransaction> findByOrderIdAndStatus(Long orderId, SagaStatus status);
-}
\ No newline at end of file
+
+    // Sagas aceitas ainda não despachadas cuja posse está livre ou vencida
+    @Query("SELECT s FROM SagaTransaction s WHERE s.status = :status AND s.currentStep = :step " +
+            "AND (s.intakeClaimedUntil IS NULL OR s.intakeClaimedUntil < :now)")
+    List<SagaTransaction> findUnclaimedIntake(@Param("status") SagaStatus status,
+                                              @Param("step") SagaStep step,
+                                              @Param("now") LocalDateTime now);
+
+    // UPDATE condicional: toma a posse das sagas livres ou vencidas e renova as próprias
+    @Modifying
+    @Transactional
+    @Query("UPDATE SagaTransaction s SET s.intakeOwner = :owner, s.intakeClaimedUntil = :until " +
+            "WHERE s.sagaId IN :sagaIds AND s.status = :status AND s.currentStep = :step " +
+            "AND (s.intakeOwner = :owner OR s.intakeClaimedUntil IS NULL OR s.intakeClaimedUntil < :now)")
+    int claimIntake(@Param("sagaIds") List<String> sagaIds,
+                    @Param("status") SagaStatus status,
+                    @Param("step") SagaStep step,
+                    @Param("owner") String owner,
+                    @Param("until") LocalDateTime until,
+                    @Param("now") LocalDateTime now);
+
+    @Query("SELECT s.sagaId FROM SagaTransaction s WHERE s.sagaId IN :sagaIds " +
+            "AND s.intakeOwner = :owner AND s.intakeClaimedUntil >= :now")
+    List<String> findClaimedIntake(@Param("sagaIds") List<String> sagaIds,
+                                   @Param("owner") String owner,
+                                   @Param("now") LocalDateTime now);
+}
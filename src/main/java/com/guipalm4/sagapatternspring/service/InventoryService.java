@@ -1,5 +1,6 @@
 package com.guipalm4.sagapatternspring.service;
 
+import com.guipalm4.sagapatternspring.config.SqsListenerExecution;
 import com.guipalm4.sagapatternspring.messaging.events.InventoryEvent;
 import com.guipalm4.sagapatternspring.messaging.request.CompensationRequest;
 import com.guipalm4.sagapatternspring.messaging.request.InventoryRequest;
@@ -12,6 +13,7 @@ import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Service
@@ -19,27 +21,39 @@ import java.util.concurrent.ConcurrentHashMap;
 public class InventoryService {
 
     private final SqsTemplate sqsTemplate;
+    private final ProcessedMessageRegistry processedMessages;
+    private final SqsListenerExecution listenerExecution;
 
     // Simulação de estoque em memória
-    private final Map<String, Integer> inventory = new ConcurrentHashMap<>();
+    private final InventoryStock inventory = new InventoryStock();
+    // reservationId por sagaId: um reenvio da solicitação devolve a reserva existente
     private final Map<String, String> reservations = new ConcurrentHashMap<>();
 
-    public InventoryService(SqsTemplate sqsTemplate) {
+    public InventoryService(SqsTemplate sqsTemplate, ProcessedMessageRegistry processedMessages,
+                            SqsListenerExecution listenerExecution) {
         this.sqsTemplate = sqsTemplate;
+        this.processedMessages = processedMessages;
+        this.listenerExecution = listenerExecution;
         initializeInventory();
     }
 
     private void initializeInventory() {
         // Inicializar com alguns produtos
-        inventory.put("product-456", 100);
-        inventory.put("product-789", 50);
-        inventory.put("product-123", 25);
+        inventory.set("product-456", 100);
+        inventory.set("product-789", 50);
+        inventory.set("product-123", 25);
 
-        log.info("Estoque inicializado: {}", inventory);
+        log.info("Estoque inicializado: {}", inventory.snapshot());
     }
 
-    @SqsListener("inventory-queue")
-    public void processInventoryRequest(InventoryRequest request) {
+    @SqsListener(value = "inventory-queue",
+            maxConcurrentMessages = "${saga.execution.queues.inventory-queue.max-concurrent-messages:${saga.execution.max-concurrent-messages:10}}")
+    public CompletableFuture<Void> processInventoryRequest(InventoryRequest request) {
+        return listenerExecution.run(() -> processedMessages.processOnce("inventory-queue:" + request.getOperation(),
+                request.getSagaId(), request.getAttempt(), () -> handleInventoryRequest(request)));
+    }
+
+    private void handleInventoryRequest(InventoryRequest request) {
         log.info("Processando solicitação de estoque: {}", request);
 
         try {
@@ -53,6 +67,8 @@ public class InventoryService {
                 response = InventoryResponse.builder()
                         .sagaId(request.getSagaId())
                         .orderId(request.getOrderId())
+                        .sagaContext(request.getSagaContext())
+                        .attempt(request.getAttempt())
                         .productId(request.getProductId())
                         .successful(false)
                         .errorMessage("Operação inválida: " + request.getOperation())
@@ -69,6 +85,8 @@ public class InventoryService {
             InventoryResponse errorResponse = InventoryResponse.builder()
                     .sagaId(request.getSagaId())
                     .orderId(request.getOrderId())
+                    .sagaContext(request.getSagaContext())
+                    .attempt(request.getAttempt())
                     .productId(request.getProductId())
                     .successful(false)
                     .errorMessage("Erro interno: " + e.getMessage())
@@ -83,73 +101,100 @@ public class InventoryService {
         String productId = request.getProductId();
         Integer requestedQuantity = request.getQuantity();
 
-        synchronized (inventory) {
-            Integer availableQuantity = inventory.getOrDefault(productId, 0);
-
-            if (availableQuantity >= requestedQuantity) {
-                // Reservar estoque
-                inventory.put(productId, availableQuantity - requestedQuantity);
-                String reservationId = UUID.randomUUID().toString();
-                reservations.put(reservationId, request.getSagaId());
+        // Reserva por compare-and-set no contador do próprio produto, sem lock global. O
+        // computeIfAbsent torna a reserva atômica por saga: tentativas concorrentes (ex.: a
+        // original e o reenvio por prazo vencido) reservam uma única vez e devolvem a mesma
+        boolean[] reservedNow = {false};
+        String reservationId = reservations.computeIfAbsent(request.getSagaId(), sagaId -> {
+            if (inventory.tryReserve(productId, requestedQuantity) < 0) {
+                return null;
+            }
+            reservedNow[0] = true;
+            return UUID.randomUUID().toString();
+        });
 
+        if (reservationId != null) {
+            if (reservedNow[0]) {
                 log.info("Estoque reservado: {} unidades do produto {} para saga {}",
                         requestedQuantity, productId, request.getSagaId());
-
-                return InventoryResponse.builder()
-                        .sagaId(request.getSagaId())
-                        .orderId(request.getOrderId())
-                        .productId(productId)
-                        .requestedQuantity(requestedQuantity)
-                        .reservedQuantity(requestedQuantity)
-                        .successful(true)
-                        .reservationId(reservationId)
-                        .processedAt(LocalDateTime.now())
-                        .build();
             } else {
-                log.warn("Estoque insuficiente: {} disponível, {} solicitado para produto {}",
-                        availableQuantity, requestedQuantity, productId);
-
-                return InventoryResponse.builder()
-                        .sagaId(request.getSagaId())
-                        .orderId(request.getOrderId())
-                        .productId(productId)
-                        .requestedQuantity(requestedQuantity)
-                        .reservedQuantity(0)
-                        .successful(false)
-                        .errorMessage("Estoque insuficiente")
-                        .processedAt(LocalDateTime.now())
-                        .build();
+                log.info("Estoque já reservado para saga {}, reenviando resultado", request.getSagaId());
             }
+            return reserved(request, reservationId);
+        } else {
+            log.warn("Estoque insuficiente: {} disponível, {} solicitado para produto {}",
+                    inventory.available(productId), requestedQuantity, productId);
+
+            return InventoryResponse.builder()
+                    .sagaId(request.getSagaId())
+                    .orderId(request.getOrderId())
+                    .sagaContext(request.getSagaContext())
+                    .attempt(request.getAttempt())
+                    .productId(productId)
+                    .requestedQuantity(requestedQuantity)
+                    .reservedQuantity(0)
+                    .successful(false)
+                    .errorMessage("Estoque insuficiente")
+                    .processedAt(LocalDateTime.now())
+                    .build();
         }
     }
 
+    private InventoryResponse reserved(InventoryRequest request, String reservationId) {
+        return InventoryResponse.builder()
+                .sagaId(request.getSagaId())
+                .orderId(request.getOrderId())
+                .sagaContext(request.getSagaContext())
+                .attempt(request.getAttempt())
+                .productId(request.getProductId())
+                .requestedQuantity(request.getQuantity())
+                .reservedQuantity(request.getQuantity())
+                .successful(true)
+                .reservationId(reservationId)
+                .processedAt(LocalDateTime.now())
+                .build();
+    }
+
     private InventoryResponse releaseInventory(InventoryRequest request) {
         String productId = request.getProductId();
         Integer quantity = request.getQuantity();
 
-        synchronized (inventory) {
-            Integer currentQuantity = inventory.getOrDefault(productId, 0);
-            inventory.put(productId, currentQuantity + quantity);
+        inventory.release(productId, quantity);
 
-            log.info("Estoque liberado: {} unidades do produto {} para saga {}",
-                    quantity, productId, request.getSagaId());
+        log.info("Estoque liberado: {} unidades do produto {} para saga {}",
+                quantity, productId, request.getSagaId());
 
-            return InventoryResponse.builder()
-                    .sagaId(request.getSagaId())
-                    .orderId(request.getOrderId())
-                    .productId(productId)
-                    .requestedQuantity(quantity)
-                    .reservedQuantity(quantity)
-                    .successful(true)
-                    .processedAt(LocalDateTime.now())
-                    .build();
-        }
+        return InventoryResponse.builder()
+                .sagaId(request.getSagaId())
+                .orderId(request.getOrderId())
+                .sagaContext(request.getSagaContext())
+                .attempt(request.getAttempt())
+                .productId(productId)
+                .requestedQuantity(quantity)
+                .reservedQuantity(quantity)
+                .successful(true)
+                .processedAt(LocalDateTime.now())
+                .build();
     }
 
-    @SqsListener("inventory-compensation-queue")
-    public void compensateInventory(CompensationRequest request) {
+    @SqsListener(value = "inventory-compensation-queue",
+            maxConcurrentMessages = "${saga.execution.queues.inventory-compensation-queue.max-concurrent-messages:${saga.execution.max-concurrent-messages:10}}")
+    public CompletableFuture<Void> compensateInventory(CompensationRequest request) {
+        return listenerExecution.run(() -> processedMessages.processOnce(
+                "inventory-compensation-queue", request.getSagaId(), request.getAttempt(), () -> releaseReservation(request)));
+    }
+
+    // Uma falha devolve a reserva ao mapa e é propagada: a mensagem volta e a liberação é refeita
+    private void releaseReservation(CompensationRequest request) {
         log.info("Executando compensação de estoque: {}", request.getSagaId());
 
+        // Sem reserva desta saga não há o que liberar
+        String reservationId = reservations.remove(request.getSagaId());
+        if (reservationId == null) {
+            log.warn("Nenhuma reserva encontrada para compensação: {}", request.getSagaId());
+            return;
+        }
+
         try {
             // Buscar dados da compensação
             Map<String, Object> data = request.getCompensationData();
@@ -170,8 +215,10 @@ public class InventoryService {
                 log.info("Compensação de estoque concluída para saga: {}", request.getSagaId());
             }
 
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
             log.error("Erro na compensação de estoque para saga: {}", request.getSagaId(), e);
+            reservations.putIfAbsent(request.getSagaId(), reservationId);
+            throw e;
         }
     }
 
@@ -198,6 +245,6 @@ public class InventoryService {
     }
 
     public Map<String, Integer> getCurrentInventory() {
-        return new ConcurrentHashMap<>(inventory);
+        return inventory.snapshot();
     }
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.guipalm4.sagapatternspring.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Saldo por produto com contadores atômicos: reservas de SKUs diferentes nunca disputam o mesmo monitor
+public class InventoryStock {
+
+    private final Map<String, AtomicInteger> stock = new ConcurrentHashMap<>();
+
+    public void set(String productId, int quantity) {
+        stock.computeIfAbsent(productId, id -> new AtomicInteger()).set(quantity);
+    }
+
+    public int available(String productId) {
+        AtomicInteger quantity = stock.get(productId);
+        return quantity != null ? quantity.get() : 0;
+    }
+
+    // Retorna o saldo anterior à reserva, ou -1 se não houver estoque suficiente
+    public int tryReserve(String productId, int quantity) {
+        AtomicInteger available = stock.get(productId);
+        if (available == null) {
+            return -1;
+        }
+
+        int current;
+        do {
+            current = available.get();
+            if (current < quantity) {
+                return -1;
+            }
+        } while (!available.compareAndSet(current, current - quantity));
+
+        return current;
+    }
+
+    public int release(String productId, int quantity) {
+        return stock.computeIfAbsent(productId, id -> new AtomicInteger()).addAndGet(quantity);
+    }
+
+    public Map<String, Integer> snapshot() {
+        Map<String, Integer> snapshot = new ConcurrentHashMap<>();
+        stock.forEach((productId, quantity) -> snapshot.put(productId, quantity.get()));
+        return snapshot;
+    }
+}
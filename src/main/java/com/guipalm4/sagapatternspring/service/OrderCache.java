@@ -0,0 +1,149 @@
+package com.guipalm4.sagapatternspring.service;
+
+import com.guipalm4.sagapatternspring.domain.Order;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Cache de leitura de {@link Order} por id. O pedido é lido várias vezes por saga
+ * (despacho, reenvio, SagaContext desatualizado, conclusão) e só muda de status poucas
+ * vezes, então as leituras vêm da memória e cada escrita invalida a entrada depois do
+ * commit. Os pedidos guardados são instâncias desanexadas compartilhadas: quem lê não deve
+ * alterá-las. Uma carga concorrente com a escrita pode guardar o estado anterior; o TTL
+ * limita esse intervalo e a troca de status condicionada à versão detecta a divergência.
+ * Tamanho máximo 0 desativa o cache.
+ */
+@Component
+public class OrderCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    // Posições na ordem de inserção; uma chave invalidada e guardada de novo fica com duas
+    private final Queue<Long> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter invalidationCounter;
+
+    private record Entry(Order order, long expiresAtNanos) {
+    }
+
+    public OrderCache(
+            MeterRegistry meterRegistry,
+            @Value("${saga.order-cache.max-size:0}") int maxSize,
+            @Value("${saga.order-cache.ttl-seconds:60}") long ttlSeconds
+    ) {
+        this.maxSize = maxSize;
+        this.ttlNanos = Duration.ofSeconds(ttlSeconds).toNanos();
+
+        this.hitCounter = Counter.builder("order_cache_hits_total")
+                .description("Order lookups served from the cache")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        this.missCounter = Counter.builder("order_cache_misses_total")
+                .description("Order lookups that had to load the order")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        this.invalidationCounter = Counter.builder("order_cache_invalidations_total")
+                .description("Order cache entries dropped after a write")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        Gauge.builder("order_cache_size", entries, Map::size)
+                .description("Entries currently in the order cache")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+    }
+
+    // Leitura com carga sob demanda: só pedidos inexistentes não são guardados
+    public Optional<Order> get(Long orderId, Function<Long, Optional<Order>> loader) {
+        Entry entry = entries.get(orderId);
+        if (entry != null && System.nanoTime() - entry.expiresAtNanos() < 0) {
+            hitCounter.increment();
+            return Optional.of(entry.order());
+        }
+
+        missCounter.increment();
+        Optional<Order> loaded = loader.apply(orderId);
+        loaded.ifPresent(this::put);
+        return loaded;
+    }
+
+    // Pedido recém-criado: guardado só se a transação confirmar
+    public void putAfterCommit(Order order) {
+        afterCommit(() -> put(order));
+    }
+
+    // Chamado por toda escrita do pedido; sem transação ativa a entrada sai na hora
+    public void invalidateAfterCommit(Long orderId) {
+        afterCommit(() -> invalidate(orderId));
+    }
+
+    public void invalidate(Long orderId) {
+        if (entries.remove(orderId) != null) {
+            invalidationCounter.increment();
+        }
+    }
+
+    private void put(Order order) {
+        if (maxSize <= 0) {
+            return;
+        }
+        Entry previous = entries.put(order.getId(), new Entry(order, System.nanoTime() + ttlNanos));
+        if (previous == null) {
+            insertionOrder.add(order.getId());
+            queued.incrementAndGet();
+            evictIfNeeded();
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // A fila também é limitada: sem isso, as posições das chaves invalidadas se acumulariam
+    // enquanto o mapa continua pequeno. Posição antiga de uma chave guardada de novo a
+    // descarta antes da hora, o que só custa uma carga a mais
+    private void evictIfNeeded() {
+        while (entries.size() > maxSize || queued.get() > 2 * maxSize) {
+            Long eldest = insertionOrder.poll();
+            if (eldest == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            entries.remove(eldest);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
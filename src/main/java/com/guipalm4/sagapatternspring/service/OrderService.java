@@ -2,10 +2,10 @@ package com.guipalm4.sagapatternspring.service;
 
 
 import com.guipalm4.sagapatternspring.messaging.events.OrderEvent;
+import com.guipalm4.sagapatternspring.messaging.outbox.OutboxPublisher;
 import com.guipalm4.sagapatternspring.domain.Order;
 import com.guipalm4.sagapatternspring.domain.enums.OrderStatus;
 import com.guipalm4.sagapatternspring.repository.OrderRepository;
-import io.awspring.cloud.sqs.operations.SqsTemplate;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -19,11 +19,20 @@ import java.util.UUID;
 public class OrderService {
 
     private final OrderRepository orderRepository;
-    private final SqsTemplate sqsTemplate;
-
-    public OrderService(OrderRepository orderRepository, SqsTemplate sqsTemplate) {
+    private final OutboxPublisher outboxPublisher;
+    private final SagaStateStore sagaStateStore;
+    private final OrderCache orderCache;
+
+    public OrderService(
+            OrderRepository orderRepository,
+            OutboxPublisher outboxPublisher,
+            SagaStateStore sagaStateStore,
+            OrderCache orderCache
+    ) {
         this.orderRepository = orderRepository;
-        this.sqsTemplate = sqsTemplate;
+        this.outboxPublisher = outboxPublisher;
+        this.sagaStateStore = sagaStateStore;
+        this.orderCache = orderCache;
     }
 
     @Transactional
@@ -33,6 +42,7 @@ public class OrderService {
         order.setUpdatedAt(LocalDateTime.now());
 
         Order savedOrder = orderRepository.save(order);
+        orderCache.putAfterCommit(savedOrder);
 
         // Publicar evento de criação de pedido
         publishOrderEvent(savedOrder, "ORDER_CREATED");
@@ -41,13 +51,29 @@ public class OrderService {
         return savedOrder;
     }
 
+    // Insere o lote com JDBC batching (ids de sequence em pool) e grava os eventos no outbox
     @Transactional
-    public Order confirmOrder(Long orderId) {
-        Order order = findById(orderId);
-        order.setStatus(OrderStatus.CONFIRMED);
-        order.setUpdatedAt(LocalDateTime.now());
+    public List<Order> createOrders(List<Order> orders) {
+        LocalDateTime now = LocalDateTime.now();
+        for (Order order : orders) {
+            order.setStatus(OrderStatus.PENDING);
+            order.setCreatedAt(now);
+            order.setUpdatedAt(now);
+        }
+
+        List<Order> savedOrders = orderRepository.saveAll(orders);
+        savedOrders.forEach(order -> {
+            orderCache.putAfterCommit(order);
+            publishOrderEvent(order, "ORDER_CREATED");
+        });
+
+        log.info("Lote de pedidos criado: {} pedidos", savedOrders.size());
+        return savedOrders;
+    }
 
-        Order updatedOrder = orderRepository.save(order);
+    @Transactional
+    public Order confirmOrder(Long orderId) {
+        Order updatedOrder = changeStatus(orderId, OrderStatus.CONFIRMED);
         publishOrderEvent(updatedOrder, "ORDER_CONFIRMED");
 
         log.info("Pedido confirmado: {}", orderId);
@@ -56,11 +82,7 @@ public class OrderService {
 
     @Transactional
     public Order cancelOrder(Long orderId) {
-        Order order = findById(orderId);
-        order.setStatus(OrderStatus.CANCELLED);
-        order.setUpdatedAt(LocalDateTime.now());
-
-        Order updatedOrder = orderRepository.save(order);
+        Order updatedOrder = changeStatus(orderId, OrderStatus.CANCELLED);
         publishOrderEvent(updatedOrder, "ORDER_CANCELLED");
 
         log.info("Pedido cancelado: {}", orderId);
@@ -69,24 +91,23 @@ public class OrderService {
 
     @Transactional
     public Order shipOrder(Long orderId) {
-        Order order = findById(orderId);
-        order.setStatus(OrderStatus.SHIPPED);
-        order.setUpdatedAt(LocalDateTime.now());
-
-        Order updatedOrder = orderRepository.save(order);
+        Order updatedOrder = changeStatus(orderId, OrderStatus.SHIPPED);
         publishOrderEvent(updatedOrder, "ORDER_SHIPPED");
 
         log.info("Pedido enviado: {}", orderId);
         return updatedOrder;
     }
 
+    // Servido pelo OrderCache: o pedido devolvido é compartilhado e não deve ser alterado
     public Order findById(Long orderId) {
-        return orderRepository.findById(orderId)
+        return orderCache.get(orderId, orderRepository::findById)
                 .orElseThrow(() -> new RuntimeException("Pedido não encontrado: " + orderId));
     }
 
     public Order save(Order order) {
-        return orderRepository.save(order);
+        Order savedOrder = orderRepository.save(order);
+        orderCache.invalidateAfterCommit(savedOrder.getId());
+        return savedOrder;
     }
 
     public List<Order> findByCustomerId(String customerId) {
@@ -97,6 +118,43 @@ public class OrderService {
         return orderRepository.findByStatus(status);
     }
 
+    // Um UPDATE condicionado à versão do pedido em cache, sem o SELECT do merge; se outra
+    // escrita chegou antes, carrega o pedido do banco, valida a transição de novo e grava com
+    // o @Version carregado, então um cancelamento concorrente não é sobrescrito por um envio
+    private Order changeStatus(Long orderId, OrderStatus status) {
+        Order current = findById(orderId);
+        requireTransition(current, status);
+        LocalDateTime now = LocalDateTime.now();
+
+        Order updatedOrder;
+        if (orderRepository.updateStatusIfVersion(orderId, status, now, current.getVersion()) == 1) {
+            updatedOrder = current.toBuilder()
+                    .status(status)
+                    .updatedAt(now)
+                    .version(current.getVersion() + 1)
+                    .build();
+        } else {
+            log.debug("Pedido {} em cache desatualizado, recarregando", orderId);
+            Order order = orderRepository.findById(orderId)
+                    .orElseThrow(() -> new RuntimeException("Pedido não encontrado: " + orderId));
+            requireTransition(order, status);
+            order.setStatus(status);
+            order.setUpdatedAt(now);
+            updatedOrder = orderRepository.saveAndFlush(order);
+        }
+
+        orderCache.invalidateAfterCommit(orderId);
+        sagaStateStore.recordOrderVersion(orderId, updatedOrder.getVersion());
+        return updatedOrder;
+    }
+
+    private static void requireTransition(Order order, OrderStatus status) {
+        if (!order.getStatus().canTransitionTo(status)) {
+            throw new IllegalStateException("Pedido " + order.getId() + " está " + order.getStatus()
+                    + " e não pode passar para " + status);
+        }
+    }
+
     private void publishOrderEvent(Order order, String eventType) {
         OrderEvent event = OrderEvent.builder()
                 .eventId(UUID.randomUUID().toString())
@@ -111,11 +169,8 @@ public class OrderService {
                 .source("OrderService")
                 .build();
 
-        try {
-            sqsTemplate.send("order-events-queue", event);
-            log.debug("Evento de pedido publicado: {} para pedido: {}", eventType, order.getId());
-        } catch (Exception e) {
-            log.error("Erro ao publicar evento de pedido: {}", eventType, e);
-        }
+        // Gravado na mesma transação do pedido; o envio acontece após o commit
+        outboxPublisher.publish("order-events-queue", String.valueOf(order.getId()), event);
+        log.debug("Evento de pedido publicado: {} para pedido: {}", eventType, order.getId());
     }
 }
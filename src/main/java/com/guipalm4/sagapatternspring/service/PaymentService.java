@@ -1,5 +1,6 @@
 package com.guipalm4.sagapatternspring.service;
 
+import com.guipalm4.sagapatternspring.config.SqsListenerExecution;
 import com.guipalm4.sagapatternspring.messaging.request.CompensationRequest;
 import com.guipalm4.sagapatternspring.messaging.request.PaymentRequest;
 import com.guipalm4.sagapatternspring.messaging.response.PaymentResponse;
@@ -9,7 +10,10 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
@@ -17,29 +21,58 @@ import java.util.UUID;
 public class PaymentService {
 
     private final SqsTemplate sqsTemplate;
+    private final ProcessedMessageRegistry processedMessages;
+    private final SqsListenerExecution listenerExecution;
+    // Resultado da cobrança por sagaId: um reenvio da solicitação devolve o mesmo resultado
+    // em vez de cobrar de novo
+    private final Map<String, PaymentResult> payments = new ConcurrentHashMap<>();
 
-    @SqsListener("payment-queue")
-    public void processPayment(PaymentRequest request) {
+    private record PaymentResult(boolean successful, String transactionId, boolean refunded) {
+
+        PaymentResult refund() {
+            return new PaymentResult(successful, transactionId, true);
+        }
+    }
+
+    @SqsListener(value = "payment-queue",
+            maxConcurrentMessages = "${saga.execution.queues.payment-queue.max-concurrent-messages:${saga.execution.max-concurrent-messages:10}}")
+    public CompletableFuture<Void> processPayment(PaymentRequest request) {
+        return listenerExecution.run(() -> processedMessages.processOnce(
+                "payment-queue", request.getSagaId(), request.getAttempt(), () -> charge(request)));
+    }
+
+    private void charge(PaymentRequest request) {
         log.info("Processando pagamento: {}", request);
 
         try {
+            // Reenvio por prazo vencido de um pagamento já processado: devolve o mesmo resultado
+            PaymentResult existing = payments.get(request.getSagaId());
+            if (existing != null) {
+                log.info("Pagamento já processado para saga {} - Sucesso: {}, reenviando resultado",
+                        request.getSagaId(), existing.successful());
+                sqsTemplate.send("payment-response-queue", response(request, existing));
+                return;
+            }
+
             // Simular processamento de pagamento
             Thread.sleep(1000);
 
             // Simular falha em 20% dos casos
             boolean success = Math.random() > 0.2;
+            PaymentResult result = new PaymentResult(success, success ? UUID.randomUUID().toString() : null, false);
 
-            PaymentResponse response = PaymentResponse.builder()
-                    .sagaId(request.getSagaId())
-                    .orderId(request.getOrderId())
-                    .successful(success)
-                    .transactionId(success ? UUID.randomUUID().toString() : null)
-                    .build();
+            // Outra tentativa da mesma saga pode ter cobrado enquanto esta processava: a primeira
+            // vence e esta cobrança é descartada (estornada no gateway)
+            PaymentResult winner = payments.putIfAbsent(request.getSagaId(), result);
+            if (winner != null) {
+                log.info("Cobrança {} descartada, saga {} já processada", result.transactionId(), request.getSagaId());
+                result = winner;
+            }
 
-            sqsTemplate.send("payment-response-queue", response);
+            sqsTemplate.send("payment-response-queue", response(request, result));
 
             log.info("Pagamento processado: {} - Sucesso: {}",
-                    request.getSagaId(), success);
+                    request.getSagaId(), result.successful());
 
         } catch (Exception e) {
             log.error("Erro ao processar pagamento: {}", request.getSagaId(), e);
@@ -47,6 +80,8 @@ public class PaymentService {
             PaymentResponse response = PaymentResponse.builder()
                     .sagaId(request.getSagaId())
                     .orderId(request.getOrderId())
+                    .sagaContext(request.getSagaContext())
+                    .attempt(request.getAttempt())
                     .successful(false)
                     .build();
 
@@ -54,10 +89,40 @@ public class PaymentService {
         }
     }
 
-    @SqsListener("payment-compensation-queue")
-    public void compensatePayment(CompensationRequest request) {
+    private PaymentResponse response(PaymentRequest request, PaymentResult result) {
+        return PaymentResponse.builder()
+                .sagaId(request.getSagaId())
+                .orderId(request.getOrderId())
+                .sagaContext(request.getSagaContext())
+                .attempt(request.getAttempt())
+                .successful(result.successful())
+                .transactionId(result.transactionId())
+                .build();
+    }
+
+    @SqsListener(value = "payment-compensation-queue",
+            maxConcurrentMessages = "${saga.execution.queues.payment-compensation-queue.max-concurrent-messages:${saga.execution.max-concurrent-messages:10}}")
+    public CompletableFuture<Void> compensatePayment(CompensationRequest request) {
+        return listenerExecution.run(() -> processedMessages.processOnce(
+                "payment-compensation-queue", request.getSagaId(), request.getAttempt(), () -> refund(request)));
+    }
+
+    private void refund(CompensationRequest request) {
         log.info("Executando compensação de pagamento: {}", request.getSagaId());
 
+        // O resultado continua no mapa, marcado como estornado: um reenvio tardio da
+        // solicitação não cobra de novo
+        PaymentResult result = payments.get(request.getSagaId());
+        if (result == null || !result.successful()) {
+            log.warn("Nenhuma cobrança encontrada para compensação: {}", request.getSagaId());
+            return;
+        }
+        if (result.refunded() || !payments.replace(request.getSagaId(), result, result.refund())) {
+            log.info("Pagamento já estornado para saga: {}", request.getSagaId());
+            return;
+        }
+        log.info("Pagamento estornado: {} para saga: {}", result.transactionId(), request.getSagaId());
+
         // Implementar lógica de estorno
         // Salvar no DynamoDB para auditoria
     }
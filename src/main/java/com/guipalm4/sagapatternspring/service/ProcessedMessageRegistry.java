@@ -0,0 +1,166 @@
+package com.guipalm4.sagapatternspring.service;
+
+import com.guipalm4.sagapatternspring.domain.ProcessedMessage;
+import com.guipalm4.sagapatternspring.repository.ProcessedMessageRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Deduplicação das mensagens recebidas pelos handlers da saga. O SQS entrega pelo menos uma
+ * vez, então cada handler roda por {@link #processOnce} ou {@link #processOnceInTransaction},
+ * identificado por (escopo, sagaId, tentativa). O escopo é a fila, que identifica a etapa e o
+ * sentido (solicitação, resposta ou compensação), mais a operação quando a fila aceita mais de
+ * uma. Uma falha do handler nunca deixa a chave gravada, então a reentrega é tratada de novo;
+ * os handlers, por isso, são idempotentes por saga.
+ * Chaves confirmadas ficam num cache limitado (FIFO) e a tabela processed_messages decide nos
+ * demais casos: um INSERT por mensagem nova, e a violação de chave primária identifica a
+ * reentrega. Um reenvio do orquestrador por prazo vencido é uma nova tentativa e passa pelo filtro.
+ */
+@Component
+@Slf4j
+public class ProcessedMessageRegistry {
+
+    private final ProcessedMessageRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int cacheSize;
+    private final Duration retention;
+
+    private final Set<String> recentKeys = ConcurrentHashMap.newKeySet();
+    // Uma posição por chave presente no cache, na ordem de inserção
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    public ProcessedMessageRegistry(
+            ProcessedMessageRepository repository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${saga.dedupe.cache-size:100000}") int cacheSize,
+            @Value("${saga.dedupe.retention-hours:24}") long retentionHours
+    ) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.cacheSize = cacheSize;
+        this.retention = Duration.ofHours(retentionHours);
+
+        Gauge.builder("saga_dedupe_cache_size", recentKeys, Set::size)
+                .description("Message keys currently in the dedupe cache")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+    }
+
+    // Participantes: a chave é gravada antes, numa transação curta, e apagada se o handler
+    // lançar exceção, que é propagada para o SQS reentregar. O handler não segura conexão do
+    // banco enquanto chama serviços externos; se a JVM cair no meio, os efeitos em memória
+    // também se perdem e a reserva/cobrança já registrada por saga é reaproveitada
+    public boolean processOnce(String scope, String sagaId, int attempt, Runnable handler) {
+        String key = scope + "|" + sagaId + "|" + attempt;
+        if (recentKeys.contains(key)) {
+            return duplicate(scope, key);
+        }
+
+        try {
+            repository.save(ProcessedMessage.builder()
+                    .messageKey(key)
+                    .processedAt(LocalDateTime.now())
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            // Tratada antes do restart, por outra instância ou por uma entrega concorrente
+            remember(key);
+            return duplicate(scope, key);
+        }
+
+        try {
+            handler.run();
+        } catch (RuntimeException e) {
+            forget(key);
+            throw e;
+        }
+        remember(key);
+        return true;
+    }
+
+    // Orquestrador: a chave é gravada na mesma transação dos efeitos do handler (outbox), então
+    // uma falha ou queda antes do commit desfaz os dois juntos. A exceção é propagada
+    public boolean processOnceInTransaction(String scope, String sagaId, int attempt, Runnable handler) {
+        String key = scope + "|" + sagaId + "|" + attempt;
+        if (recentKeys.contains(key)) {
+            return duplicate(scope, key);
+        }
+
+        Boolean processed = transactionTemplate.execute(status -> {
+            try {
+                repository.saveAndFlush(ProcessedMessage.builder()
+                        .messageKey(key)
+                        .processedAt(LocalDateTime.now())
+                        .build());
+            } catch (DataIntegrityViolationException e) {
+                // Tratada antes do restart, por outra instância ou por uma entrega concorrente
+                status.setRollbackOnly();
+                return false;
+            }
+            handler.run();
+            return true;
+        });
+
+        remember(key);
+        return Boolean.TRUE.equals(processed) || duplicate(scope, key);
+    }
+
+    // Uma entrega concorrente pode ter posto a chave no cache enquanto o handler rodava
+    private void forget(String key) {
+        recentKeys.remove(key);
+        try {
+            repository.deleteByMessageKey(key);
+        } catch (Exception e) {
+            log.error("Erro ao remover registro da mensagem {}; a reentrega será ignorada", key, e);
+        }
+    }
+
+    private boolean duplicate(String scope, String key) {
+        meterRegistry.counter("saga_duplicate_messages_total", "service", "saga-orchestrator", "scope", scope)
+                .increment();
+        log.info("Mensagem duplicada ignorada: {}", key);
+        return false;
+    }
+
+    private void remember(String key) {
+        if (recentKeys.add(key)) {
+            insertionOrder.add(key);
+            while (recentKeys.size() > cacheSize) {
+                String eldest = insertionOrder.poll();
+                if (eldest == null) {
+                    return;
+                }
+                recentKeys.remove(eldest);
+            }
+        }
+    }
+
+    // Reentregas chegam em segundos ou minutos; registros além da retenção só ocupam espaço
+    @Scheduled(fixedDelayString = "${saga.dedupe.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        try {
+            int purged = repository.deleteProcessedBefore(LocalDateTime.now().minus(retention));
+            if (purged > 0) {
+                log.info("Mensagens processadas expurgadas: {}", purged);
+            }
+        } catch (Exception e) {
+            log.error("Erro ao expurgar mensagens processadas", e);
+        }
+    }
+}
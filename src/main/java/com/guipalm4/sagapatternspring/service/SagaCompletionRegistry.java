@@ -0,0 +1,63 @@
+package com.guipalm4.sagapatternspring.service;
+
+import com.guipalm4.sagapatternspring.api.response.SagaStatusResponse;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Inscrições em memória nas transições de cada saga, usadas pelo long-poll e pelo SSE de
+ * status. O {@link SagaStateStore} publica cada transição; inscrições sem saga ativa não
+ * custam nada além da entrada no mapa e são removidas ao cancelar.
+ */
+@Component
+@Slf4j
+public class SagaCompletionRegistry {
+
+    private final Map<String, Set<Consumer<SagaStatusResponse>>> listeners = new ConcurrentHashMap<>();
+
+    public static boolean isTerminal(SagaStatusResponse response) {
+        return SagaStateStore.isTerminal(SagaStatus.valueOf(response.getStatus()));
+    }
+
+    // Retorna a ação que cancela a inscrição
+    public Runnable subscribe(String sagaId, Consumer<SagaStatusResponse> listener) {
+        listeners.computeIfAbsent(sagaId, id -> ConcurrentHashMap.newKeySet()).add(listener);
+        return () -> listeners.computeIfPresent(sagaId, (id, set) -> {
+            set.remove(listener);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    // Completa no primeiro estado terminal; cancelar o future (ex.: timeout) remove a inscrição
+    public CompletableFuture<SagaStatusResponse> awaitTerminal(String sagaId) {
+        CompletableFuture<SagaStatusResponse> future = new CompletableFuture<>();
+        Runnable unsubscribe = subscribe(sagaId, response -> {
+            if (isTerminal(response)) {
+                future.complete(response);
+            }
+        });
+        future.whenComplete((response, error) -> unsubscribe.run());
+        return future;
+    }
+
+    public void publish(SagaStatusResponse response) {
+        Set<Consumer<SagaStatusResponse>> subscribers = listeners.get(response.getSagaId());
+        if (subscribers == null) {
+            return;
+        }
+        for (Consumer<SagaStatusResponse> subscriber : subscribers) {
+            try {
+                subscriber.accept(response);
+            } catch (Exception e) {
+                log.warn("Erro ao notificar transição da saga: {}", response.getSagaId(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.guipalm4.sagapatternspring.service;
+
+import com.guipalm4.sagapatternspring.domain.SagaTransaction;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStatus;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
+import com.guipalm4.sagapatternspring.repository.SagaTransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Estágio em memória do modo accept-and-queue: a requisição grava pedido e saga, reserva
+ * uma vaga aqui e responde 202; os workers despacham o pagamento das sagas aceitas em lotes.
+ * A capacidade é reservada antes de gravar o pedido, então pipeline cheio vira 429 sem
+ * deixar pedido órfão. Antes de despachar, o worker toma a posse das sagas do lote com um
+ * UPDATE condicional, então com várias instâncias cada saga aceita é despachada por uma só.
+ * Lote que falha volta à fila até max-attempts; depois disso a posse vence e uma varredura
+ * periódica (e a subida de qualquer instância) reenfileira a saga, junto com as aceitas que
+ * não chegaram a ser despachadas (ex.: restart).
+ */
+@Component
+@Slf4j
+public class SagaIntakePipeline {
+
+    private final SagaOrchestrator sagaOrchestrator;
+    private final SagaTransactionRepository sagaRepository;
+    private final int capacity;
+    private final int workers;
+    private final int batchSize;
+    private final Duration claimDuration;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final BlockingQueue<Accepted> queue = new LinkedBlockingQueue<>();
+    // Sagas na fila ou no lote em despacho, para a varredura não enfileirar de novo
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private volatile boolean running;
+
+    private final Counter rejectedCounter;
+    private final Timer dispatchLagTimer;
+
+    public SagaIntakePipeline(
+            SagaOrchestrator sagaOrchestrator,
+            SagaTransactionRepository sagaRepository,
+            MeterRegistry meterRegistry,
+            @Value("${saga.intake.queue-capacity:1000}") int capacity,
+            @Value("${saga.intake.workers:2}") int workers,
+            @Value("${saga.intake.batch-size:100}") int batchSize,
+            @Value("${saga.intake.claim-ms:60000}") long claimMs,
+            @Value("${saga.intake.max-attempts:3}") int maxAttempts,
+            @Value("${saga.intake.retry-backoff-ms:1000}") long retryBackoffMs
+    ) {
+        this.sagaOrchestrator = sagaOrchestrator;
+        this.sagaRepository = sagaRepository;
+        this.capacity = capacity;
+        this.workers = Math.max(1, workers);
+        this.batchSize = Math.max(1, batchSize);
+        this.claimDuration = Duration.ofMillis(claimMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMs = retryBackoffMs;
+
+        Gauge.builder("saga_intake_queue_depth", reserved, AtomicInteger::get)
+                .description("Accepted sagas waiting for their first step to be dispatched")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        this.rejectedCounter = Counter.builder("saga_intake_rejected_total")
+                .description("Total number of orders rejected with 429 because the intake pipeline was full")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        this.dispatchLagTimer = Timer.builder("saga_intake_dispatch_lag_seconds")
+                .description("Time between accepting an order and dispatching its first saga step")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // Aceitas antes de um restart e ainda não despachadas
+        try {
+            requeue(LocalDateTime.now());
+        } catch (Exception e) {
+            log.error("Erro ao reenfileirar sagas aceitas pendentes", e);
+        }
+
+        running = true;
+        for (int worker = 0; worker < workers; worker++) {
+            workerThreads.add(Thread.ofPlatform()
+                    .name("saga-intake-" + worker)
+                    .daemon()
+                    .start(this::runWorker));
+        }
+        log.info("Pipeline de entrada iniciado com {} workers ({} sagas reenfileiradas)", workers, queue.size());
+    }
+
+    // Sagas que esgotaram max-attempts, aqui ou numa instância que parou, voltam à fila quando
+    // a posse vence. Só entram as aceitas há mais de claim-ms, para não disputar com a
+    // instância que acabou de aceitá-las
+    @Scheduled(initialDelayString = "${saga.intake.rescan-interval-ms:60000}",
+            fixedDelayString = "${saga.intake.rescan-interval-ms:60000}")
+    public void rescan() {
+        if (!running) {
+            return;
+        }
+        try {
+            int requeued = requeue(LocalDateTime.now().minus(claimDuration));
+            if (requeued > 0) {
+                log.warn("Pipeline de entrada: {} sagas aceitas sem despacho voltaram à fila", requeued);
+            }
+        } catch (Exception e) {
+            log.error("Erro na varredura de sagas aceitas pendentes", e);
+        }
+    }
+
+    // Enfileira as aceitas criadas antes de acceptedBefore cuja posse está livre ou vencida; as
+    // que outra instância tem a posse ficam de fora, e a disputa pelas livres é resolvida no
+    // claim do lote
+    private int requeue(LocalDateTime acceptedBefore) {
+        List<SagaTransaction> pending = sagaRepository.findUnclaimedIntake(
+                SagaStatus.STARTED, SagaStep.ORDER_CREATED, LocalDateTime.now());
+        int requeued = 0;
+        for (SagaTransaction saga : pending) {
+            if (saga.getCreatedAt().isAfter(acceptedBefore) || !queued.add(saga.getSagaId())) {
+                continue;
+            }
+            reserved.incrementAndGet();
+            queue.add(new Accepted(saga.getSagaId(), saga.getOrderId(), System.nanoTime(), 0));
+            requeued++;
+        }
+        return requeued;
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workerThreads.forEach(Thread::interrupt);
+    }
+
+    // Reserva uma vaga antes de gravar o pedido; false significa responder 429
+    public boolean tryReserve() {
+        while (true) {
+            int current = reserved.get();
+            if (current >= capacity) {
+                rejectedCounter.increment();
+                return false;
+            }
+            if (reserved.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Devolve a vaga de uma requisição que falhou antes de enfileirar
+    public void release() {
+        reserved.decrementAndGet();
+    }
+
+    // Usa a vaga reservada em tryReserve()
+    public void enqueue(String sagaId, Long orderId) {
+        queued.add(sagaId);
+        queue.add(new Accepted(sagaId, orderId, System.nanoTime(), 0));
+    }
+
+    public int depth() {
+        return reserved.get();
+    }
+
+    private void runWorker() {
+        List<Accepted> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Accepted first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                dispatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void dispatch(List<Accepted> batch) throws InterruptedException {
+        List<Accepted> retry = new ArrayList<>();
+        int dispatched = 0;
+        try {
+            Map<String, Long> orderIdsBySagaId = claim(batch);
+            sagaOrchestrator.dispatchAcceptedSagas(orderIdsBySagaId);
+            dispatched = orderIdsBySagaId.size();
+
+            long now = System.nanoTime();
+            batch.stream()
+                    .filter(accepted -> orderIdsBySagaId.containsKey(accepted.sagaId()))
+                    .forEach(accepted -> dispatchLagTimer.record(now - accepted.acceptedAtNanos(), TimeUnit.NANOSECONDS));
+        } catch (Exception e) {
+            log.error("Erro ao despachar lote de {} sagas aceitas", batch.size(), e);
+            for (Accepted accepted : batch) {
+                if (accepted.attempt() + 1 < maxAttempts) {
+                    retry.add(accepted.retried());
+                }
+            }
+            // As demais ficam em STARTED/ORDER_CREATED e voltam à fila pela varredura quando a
+            // posse vencer; o sweep de timeout não as vê
+            log.warn("Pipeline de entrada: {} sagas voltam à fila, {} ficam para a varredura",
+                    retry.size(), batch.size() - retry.size());
+        } finally {
+            reserved.addAndGet(-(batch.size() - retry.size()));
+            Set<String> retried = new HashSet<>();
+            retry.forEach(accepted -> retried.add(accepted.sagaId()));
+            batch.stream()
+                    .map(Accepted::sagaId)
+                    .filter(sagaId -> !retried.contains(sagaId))
+                    .forEach(queued::remove);
+        }
+
+        if (!retry.isEmpty()) {
+            TimeUnit.MILLISECONDS.sleep(retryBackoffMs);
+            queue.addAll(retry);
+        }
+        log.debug("Pipeline de entrada: {} sagas despachadas", dispatched);
+    }
+
+    // Toma a posse do lote; sagas com posse de outra instância ou já fora de ORDER_CREATED ficam de fora
+    private Map<String, Long> claim(List<Accepted> batch) {
+        List<String> sagaIds = batch.stream().map(Accepted::sagaId).toList();
+        LocalDateTime now = LocalDateTime.now();
+        sagaRepository.claimIntake(sagaIds, SagaStatus.STARTED, SagaStep.ORDER_CREATED,
+                instanceId, now.plus(claimDuration), now);
+        Set<String> claimed = new HashSet<>(sagaRepository.findClaimedIntake(sagaIds, instanceId, now));
+
+        Map<String, Long> orderIdsBySagaId = new LinkedHashMap<>();
+        for (Accepted accepted : batch) {
+            if (claimed.contains(accepted.sagaId())) {
+                orderIdsBySagaId.put(accepted.sagaId(), accepted.orderId());
+            }
+        }
+        if (orderIdsBySagaId.size() < batch.size()) {
+            log.debug("Pipeline de entrada: {} sagas com posse de outra instância ou já despachadas",
+                    batch.size() - orderIdsBySagaId.size());
+        }
+        return orderIdsBySagaId;
+    }
+
+    private record Accepted(String sagaId, Long orderId, long acceptedAtNanos, int attempt) {
+
+        private Accepted retried() {
+            return new Accepted(sagaId, orderId, acceptedAtNanos, attempt + 1);
+        }
+    }
+}
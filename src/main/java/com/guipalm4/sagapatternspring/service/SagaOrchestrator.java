@@ -1,55 +1,142 @@
 package com.guipalm4.sagapatternspring.service;
 
+import com.guipalm4.sagapatternspring.api.response.SagaStatusResponse;
+import com.guipalm4.sagapatternspring.config.SagaAdmissionLimiter;
+import com.guipalm4.sagapatternspring.config.SagaDeadlineTracker;
+import com.guipalm4.sagapatternspring.config.SagaDefinition;
 import com.guipalm4.sagapatternspring.config.SagaMetricsCollector;
+import com.guipalm4.sagapatternspring.config.SagaStepDefinition;
+import com.guipalm4.sagapatternspring.config.SagaStepPolicies;
+import com.guipalm4.sagapatternspring.config.SqsListenerExecution;
 import com.guipalm4.sagapatternspring.domain.SagaMetrics;
+import com.guipalm4.sagapatternspring.messaging.SagaContext;
+import com.guipalm4.sagapatternspring.messaging.outbox.OutboxPublisher;
 import com.guipalm4.sagapatternspring.messaging.request.CompensationRequest;
-import com.guipalm4.sagapatternspring.messaging.request.InventoryRequest;
+import com.guipalm4.sagapatternspring.messaging.request.StepRequest;
 import com.guipalm4.sagapatternspring.messaging.response.InventoryResponse;
 import com.guipalm4.sagapatternspring.domain.Order;
-import com.guipalm4.sagapatternspring.messaging.request.PaymentRequest;
 import com.guipalm4.sagapatternspring.messaging.response.PaymentResponse;
 import com.guipalm4.sagapatternspring.domain.enums.SagaStatus;
 import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
 import com.guipalm4.sagapatternspring.domain.SagaTransaction;
-import com.guipalm4.sagapatternspring.messaging.request.ShippingRequest;
 import com.guipalm4.sagapatternspring.messaging.response.ShippingResponse;
-import com.guipalm4.sagapatternspring.repository.SagaTransactionRepository;
+import com.guipalm4.sagapatternspring.messaging.response.StepResponse;
 import io.awspring.cloud.sqs.annotation.SqsListener;
-import io.awspring.cloud.sqs.operations.SqsTemplate;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Executor genérico de uma {@link SagaDefinition}: envia juntas as mensagens de cada estágio,
+ * avança para o próximo quando todas as etapas do estágio responderam com sucesso (junção) e,
+ * em falha, publica as compensações das etapas já concluídas, na ordem reversa. Uma etapa que
+ * conclui depois de a saga entrar em compensação é compensada assim que a resposta chega.
+ * O estado de cada saga, incluindo as etapas concluídas, vive em SagaTransaction.
+ */
 @Service
 @Slf4j
 public class SagaOrchestrator {
 
-    private final SqsTemplate sqsTemplate;
-    private final SagaTransactionRepository sagaRepository;
+    private final SagaDefinition definition;
+    private final OutboxPublisher outboxPublisher;
+    private final SagaStateStore sagaStateStore;
     private final OrderService orderService;
     private final PaymentService paymentService;
     private final InventoryService inventoryService;
     private final SagaMetricsCollector sagaMetricsCollector;
+    private final SagaDeadlineTracker deadlineTracker;
+    private final SagaStepPolicies stepPolicies;
+    private final SagaCompletionRegistry completionRegistry;
+    private final SagaAdmissionLimiter admissionLimiter;
+    private final ProcessedMessageRegistry processedMessages;
+    private final SqsListenerExecution listenerExecution;
+
+    // Sagas iniciadas e ainda não terminais, com a etapa atual e o início (nanoTime):
+    // base da admissão, dos gauges por etapa e da duração monotônica da saga
+    private final Map<String, InFlight> inFlightSagas = new ConcurrentHashMap<>();
+    // Instante (nanoTime) do envio de cada etapa aguardando resposta, para a latência da etapa
+    private final Map<StepKey, Long> stepDispatches = new ConcurrentHashMap<>();
 
     public SagaOrchestrator(
-            SqsTemplate sqsTemplate,
-            SagaTransactionRepository sagaRepository,
+            SagaDefinition definition,
+            OutboxPublisher outboxPublisher,
+            SagaStateStore sagaStateStore,
             OrderService orderService,
             PaymentService paymentService,
             InventoryService inventoryService,
-            SagaMetricsCollector sagaMetricsCollector
+            SagaMetricsCollector sagaMetricsCollector,
+            SagaDeadlineTracker deadlineTracker,
+            SagaStepPolicies stepPolicies,
+            SagaCompletionRegistry completionRegistry,
+            SagaAdmissionLimiter admissionLimiter,
+            ProcessedMessageRegistry processedMessages,
+            SqsListenerExecution listenerExecution
     ) {
-        this.sqsTemplate = sqsTemplate;
-        this.sagaRepository = sagaRepository;
+        this.definition = definition;
+        this.outboxPublisher = outboxPublisher;
+        this.sagaStateStore = sagaStateStore;
         this.orderService = orderService;
         this.paymentService = paymentService;
         this.inventoryService = inventoryService;
         this.sagaMetricsCollector = sagaMetricsCollector;
+        this.deadlineTracker = deadlineTracker;
+        this.stepPolicies = stepPolicies;
+        this.completionRegistry = completionRegistry;
+        this.admissionLimiter = admissionLimiter;
+        this.processedMessages = processedMessages;
+        this.listenerExecution = listenerExecution;
+        sagaMetricsCollector.registerInFlightGauge(inFlightSagas::size);
+        log.info("Saga {} carregada com os estágios {}", definition.getName(),
+                definition.getStages().stream()
+                        .map(stage -> stage.stream().map(SagaStepDefinition::getStep).toList())
+                        .toList());
+    }
+
+    // Sagas em andamento antes de um restart continuam ocupando o limite até terminarem
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverInFlight() {
+        long now = System.nanoTime();
+        for (SagaTransaction saga : sagaStateStore.findInFlightSagas()) {
+            // nanoTime não sobrevive ao restart: o tempo já decorrido vem do relógio de parede
+            long elapsed = Math.max(0, Duration.between(saga.getCreatedAt(), LocalDateTime.now()).toNanos());
+            if (inFlightSagas.putIfAbsent(saga.getSagaId(), new InFlight(saga.getCurrentStep(), now - elapsed)) == null) {
+                sagaMetricsCollector.recordStepTransition(null, saga.getCurrentStep());
+                admissionLimiter.onStarted();
+            }
+        }
+        log.info("Sagas em andamento recuperadas para admissão: {}", inFlightSagas.size());
+    }
+
+    // Controle de admissão: false significa responder 503 sem criar os pedidos. As vagas ficam
+    // reservadas; quem chamou devolve com releaseAdmission as que não viraram saga iniciada
+    public boolean tryAdmit(int sagas) {
+        return admissionLimiter.tryAdmit(sagas);
+    }
+
+    public void releaseAdmission(int sagas) {
+        if (sagas > 0) {
+            admissionLimiter.cancel(sagas);
+        }
+    }
+
+    public int inFlightCount() {
+        return inFlightSagas.size();
     }
 
     @Transactional
@@ -58,171 +145,263 @@ public class SagaOrchestrator {
 
         try {
             // Criar transação saga
-            SagaTransaction saga = SagaTransaction.builder()
-                    .sagaId(sagaId)
-                    .orderId(order.getId())
-                    .status(SagaStatus.STARTED)
-                    .currentStep(SagaStep.ORDER_CREATED)
-                    .createdAt(LocalDateTime.now())
-                    .updatedAt(LocalDateTime.now())
-                    .build();
-
-            sagaRepository.save(saga);
+            sagaStateStore.register(newSaga(sagaId, order));
+            enterInFlight(sagaId);
 
             sagaMetricsCollector.recordSagaStarted();
 
-            processPayment(sagaId, order);
+            dispatchFirstStage(sagaId, order);
 
             log.info("Saga iniciada: {} para pedido: {}", sagaId, order.getId());
             return sagaId;
 
         } catch (Exception e) {
             log.error("Erro ao iniciar saga para pedido: {}", order.getId(), e);
+            abandonInFlight(sagaId);
             sagaMetricsCollector.recordSagaFailed();
             throw new RuntimeException("Falha ao iniciar saga", e);
         }
     }
 
-    private void processPayment(String sagaId, Order order) {
-        try {
-            PaymentRequest paymentRequest = PaymentRequest.builder()
-                    .sagaId(sagaId)
-                    .orderId(order.getId())
-                    .customerId(order.getCustomerId())
-                    .amount(order.getAmount())
-                    .paymentMethod("CREDIT_CARD") // Valor padrão
-                    .requestedAt(LocalDateTime.now())
-                    .build();
+    // Modo accept-and-queue: pedido e saga são gravados na mesma transação, já na requisição,
+    // e o envio da primeira etapa fica para o SagaIntakePipeline, fora do caminho da resposta
+    // HTTP. O pedido recebe id e status no INSERT
+    @Transactional
+    public String acceptOrderSaga(Order order) {
+        String sagaId = UUID.randomUUID().toString();
 
-            sqsTemplate.send("payment-queue", paymentRequest);
+        try {
+            orderService.createOrder(order);
+            sagaStateStore.registerDurably(newSaga(sagaId, order));
+            // Só entra em andamento se pedido e saga forem confirmados
+            afterCommit(() -> enterInFlight(sagaId));
+            sagaMetricsCollector.recordSagaStarted();
 
-            updateSagaStep(sagaId, SagaStep.PAYMENT_PROCESSED, SagaStatus.IN_PROGRESS);
-            log.info("Solicitação de pagamento enviada para saga: {}", sagaId);
+            log.info("Saga aceita: {} para pedido: {}", sagaId, order.getId());
+            return sagaId;
 
         } catch (Exception e) {
-            log.error("Erro ao processar pagamento para saga: {}", sagaId, e);
-            failSaga(sagaId, "Erro no processamento de pagamento: " + e.getMessage());
+            log.error("Erro ao aceitar saga para pedido: {}", order.getId(), e);
+            sagaMetricsCollector.recordSagaFailed();
+            throw new RuntimeException("Falha ao aceitar saga", e);
         }
     }
 
-    @SqsListener("payment-response-queue")
-    public void handlePaymentResponse(PaymentResponse response) {
-        log.info("Resposta de pagamento recebida: {}", response);
+    // Envia a primeira etapa das sagas aceitas numa única transação; sagas que já saíram de
+    // ORDER_CREATED (ex.: reenfileiradas após restart) são ignoradas
+    @Transactional
+    public void dispatchAcceptedSagas(Map<String, Long> orderIdsBySagaId) {
+        orderIdsBySagaId.forEach((sagaId, orderId) -> {
+            try {
+                SagaTransaction saga = sagaStateStore.get(sagaId);
+                if (saga.getStatus() != SagaStatus.STARTED || saga.getCurrentStep() != SagaStep.ORDER_CREATED) {
+                    log.debug("Saga {} já despachada, ignorando", sagaId);
+                    return;
+                }
+                dispatchFirstStage(sagaId, orderService.findById(orderId));
+            } catch (Exception e) {
+                log.error("Erro ao despachar saga aceita: {}", sagaId, e);
+                failSaga(sagaId, "Erro ao despachar saga: " + e.getMessage());
+            }
+        });
+    }
+
+    private SagaTransaction newSaga(String sagaId, Order order) {
+        return SagaTransaction.builder()
+                .sagaId(sagaId)
+                .orderId(order.getId())
+                .shard(SagaTransaction.shardOf(sagaId))
+                .status(SagaStatus.STARTED)
+                .currentStep(SagaStep.ORDER_CREATED)
+                .orderVersion(order.getVersion())
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
 
-        try {
-            if (response.isSuccessful()) {
-                reserveInventory(response.getSagaId(), response.getOrderId());
-            } else {
-                log.warn("Pagamento falhou para saga: {} - Motivo: {}",
-                        response.getSagaId(), response.getErrorMessage());
-                compensateSaga(response.getSagaId(), SagaStep.PAYMENT_PROCESSED);
+    // Inicia as sagas de um lote numa única transação: as mensagens da primeira etapa vão para o outbox
+    // e saem em lotes SQS; sagaId null indica falha ao iniciar a saga daquele pedido
+    @Transactional
+    public List<String> startOrderSagas(List<Order> orders) {
+        List<String> sagaIds = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            try {
+                sagaIds.add(startOrderSaga(order));
+            } catch (Exception e) {
+                sagaIds.add(null);
             }
-        } catch (Exception e) {
-            log.error("Erro ao processar resposta de pagamento para saga: {}",
-                    response.getSagaId(), e);
-            failSaga(response.getSagaId(), "Erro ao processar resposta de pagamento");
         }
+        return sagaIds;
     }
 
-    private void reserveInventory(String sagaId, Long orderId) {
+    private void dispatchFirstStage(String sagaId, Order order) {
+        List<SagaStepDefinition> first = definition.firstStage();
         try {
-            Order order = orderService.findById(orderId);
-
-            InventoryRequest inventoryRequest = InventoryRequest.builder()
-                    .sagaId(sagaId)
-                    .orderId(orderId)
-                    .productId(order.getProductId())
-                    .quantity(order.getQuantity())
-                    .operation("RESERVE")
-                    .requestedAt(LocalDateTime.now())
-                    .build();
+            dispatchStage(sagaId, order.getId(), SagaContext.from(order), SagaStep.ORDER_CREATED, first);
+        } catch (Exception e) {
+            log.error("Erro ao enviar o estágio {} da saga: {}", first.getFirst().getStep(), sagaId, e);
+            failSaga(sagaId, "Erro no envio da etapa " + first.getFirst().getStep() + ": " + e.getMessage());
+        }
+    }
 
-            sqsTemplate.send("inventory-queue", inventoryRequest);
-            updateSagaStep(sagaId, SagaStep.INVENTORY_RESERVED, SagaStatus.IN_PROGRESS);
-            log.info("Solicitação de reserva de estoque enviada para saga: {}", sagaId);
+    // Envia todas as etapas do estágio; a saga aguarda na etapa líder até a junção.
+    // from é a etapa em que a saga precisa estar: se outro handler a moveu, nada é enviado
+    private void dispatchStage(String sagaId, Long orderId, SagaContext context, SagaStep from,
+                               List<SagaStepDefinition> stage) {
+        if (!enterStage(sagaId, from, stage)) {
+            return;
+        }
+        for (SagaStepDefinition step : stage) {
+            outboxPublisher.publish(step.getRequestQueue(), sagaId, request(step, sagaId, orderId, context, 0));
+            log.info("Solicitação da etapa {} enviada para saga: {}", step.getStep(), sagaId);
+        }
+    }
 
-        } catch (Exception e) {
-            log.error("Erro ao reservar estoque para saga: {}", sagaId, e);
-            compensateSaga(sagaId, SagaStep.PAYMENT_PROCESSED);
+    // Mensagem da etapa com a tentativa, que o participante devolve na resposta e ambos usam na deduplicação
+    private Object request(SagaStepDefinition step, String sagaId, Long orderId, SagaContext context, int attempt) {
+        Object message = step.getRequest().create(sagaId, orderId, context);
+        if (message instanceof StepRequest stepRequest) {
+            stepRequest.setAttempt(attempt);
         }
+        return message;
     }
 
-    @SqsListener("inventory-response-queue")
-    public void handleInventoryResponse(InventoryResponse response) {
-        log.info("Resposta de estoque recebida: {}", response);
+    // Os listeners só fixam fila e tipo da resposta; a etapa vem da tabela da definição
 
-        try {
-            if (response.isSuccessful()) {
-                arrangeShipping(response.getSagaId(), response.getOrderId());
-            } else {
-                log.warn("Reserva de estoque falhou para saga: {} - Motivo: {}",
-                        response.getSagaId(), response.getErrorMessage());
-                compensateSaga(response.getSagaId(), SagaStep.INVENTORY_RESERVED);
+    @SqsListener(value = "payment-response-queue",
+            maxConcurrentMessages = "${saga.execution.queues.payment-response-queue.max-concurrent-messages:${saga.execution.max-concurrent-messages:10}}")
+    public CompletableFuture<Void> handlePaymentResponse(PaymentResponse response) {
+        return listenerExecution.run(() -> handleStepResponse(response));
+    }
+
+    @SqsListener(value = "inventory-response-queue",
+            maxConcurrentMessages = "${saga.execution.queues.inventory-response-queue.max-concurrent-messages:${saga.execution.max-concurrent-messages:10}}")
+    public CompletableFuture<Void> handleInventoryResponse(InventoryResponse response) {
+        return listenerExecution.run(() -> handleStepResponse(response));
+    }
+
+    @SqsListener(value = "shipping-response-queue",
+            maxConcurrentMessages = "${saga.execution.queues.shipping-response-queue.max-concurrent-messages:${saga.execution.max-concurrent-messages:10}}")
+    public CompletableFuture<Void> handleShippingResponse(ShippingResponse response) {
+        return listenerExecution.run(() -> handleStepResponse(response));
+    }
+
+    public void handleStepResponse(StepResponse response) {
+        SagaStepDefinition definitionStep = definition.stepFor(response);
+        SagaStep step = definitionStep.getStep();
+        String sagaId = response.getSagaId();
+        // Registro da resposta e mensagens da transição (outbox) numa única transação
+        processedMessages.processOnceInTransaction(definitionStep.getResponseQueue(), sagaId, response.getAttempt(), () -> {
+            log.info("Resposta da etapa {} recebida: {}", step, response);
+            onStepResponse(sagaId, step);
+
+            try {
+                if (response.isSuccessful()) {
+                    onStepSucceeded(sagaId, response.getOrderId(), response.getSagaContext(), step, response.getAttempt());
+                } else {
+                    log.warn("Etapa {} falhou para saga: {} - Motivo: {}", step, sagaId, response.getErrorMessage());
+                    compensateSaga(sagaId, step, response.getSagaContext(), step);
+                }
+            } catch (Exception e) {
+                log.error("Erro ao processar resposta da etapa {} para saga: {}", step, sagaId, e);
+                compensateSaga(sagaId, step, response.getSagaContext(), response.isSuccessful() ? null : step);
             }
-        } catch (Exception e) {
-            log.error("Erro ao processar resposta de estoque para saga: {}",
-                    response.getSagaId(), e);
-            compensateSaga(response.getSagaId(), SagaStep.INVENTORY_RESERVED);
-        }
+        });
     }
 
-    private void arrangeShipping(String sagaId, Long orderId) {
-        try {
-            Order order = orderService.findById(orderId);
+    // Marca a etapa como concluída na mesma seção crítica em que verifica a junção do estágio:
+    // só a resposta que completa o estágio avança a saga, duplicadas são ignoradas. Depois da
+    // compensação, toda resposta de sucesso é desfeita, mesmo a de uma etapa já marcada: cada
+    // tentativa reenviada pode ter aplicado o efeito de novo (reentregas da mesma tentativa
+    // já foram barradas na deduplicação)
+    private void onStepSucceeded(String sagaId, Long orderId, SagaContext sagaContext, SagaStep step, int attempt) {
+        List<SagaStepDefinition> stage = definition.stage(step);
+        SagaStep lead = stage.getFirst().getStep();
+        StepOutcome[] outcome = {StepOutcome.IGNORED};
+
+        sagaStateStore.update(sagaId, saga -> {
+            SagaStatus status = saga.getStatus();
+            if (status == SagaStatus.COMPENSATING || status == SagaStatus.COMPENSATED
+                    || status == SagaStatus.FAILED) {
+                saga.markStepCompleted(step);
+                outcome[0] = StepOutcome.LATE;
+            } else if (!saga.isStepCompleted(step)
+                    && status == SagaStatus.IN_PROGRESS && saga.getCurrentStep() == lead) {
+                saga.markStepCompleted(step);
+                outcome[0] = stage.stream().allMatch(s -> saga.isStepCompleted(s.getStep()))
+                        ? StepOutcome.JOINED
+                        : StepOutcome.WAITING;
+            }
+        });
 
-            ShippingRequest shippingRequest = ShippingRequest.builder()
-                    .sagaId(sagaId)
-                    .orderId(orderId)
-                    .customerId(order.getCustomerId())
-                    .shippingAddress("Endereço padrão") // Você pode pegar do pedido
-                    .shippingMethod("STANDARD")
-                    .requestedAt(LocalDateTime.now())
-                    .build();
+        switch (outcome[0]) {
+            case JOINED -> {
+                deadlineTracker.cancel(sagaId);
+                advance(sagaId, orderId, sagaContext, step);
+            }
+            case WAITING -> log.info("Etapa {} concluída para saga: {}, aguardando as demais do estágio", step, sagaId);
+            case LATE -> compensateLateStep(sagaId, orderId, sagaContext, step, attempt);
+            case IGNORED -> log.info("Resposta da etapa {} para saga: {} duplicada ou fora de ordem, ignorada", step, sagaId);
+        }
+    }
 
-            sqsTemplate.send("shipping-queue", shippingRequest);
-            updateSagaStep(sagaId, SagaStep.SHIPPING_ARRANGED, SagaStatus.IN_PROGRESS);
-            log.info("Solicitação de envio enviada para saga: {}", sagaId);
+    // Envia o próximo estágio da definição ou conclui a saga após o último
+    private void advance(String sagaId, Long orderId, SagaContext sagaContext, SagaStep completedStep) {
+        List<SagaStepDefinition> next = definition.nextStage(completedStep);
+        if (next == null) {
+            completeSaga(sagaId);
+            return;
+        }
 
+        try {
+            SagaContext context = resolveContext(sagaId, orderId, sagaContext);
+            dispatchStage(sagaId, orderId, context, definition.leadOf(completedStep), next);
         } catch (Exception e) {
-            log.error("Erro ao arranjar envio para saga: {}", sagaId, e);
-            compensateSaga(sagaId, SagaStep.INVENTORY_RESERVED);
+            log.error("Erro ao enviar o estágio {} da saga: {}", next.getFirst().getStep(), sagaId, e);
+            compensateSaga(sagaId, completedStep, sagaContext, null);
         }
     }
 
-    @SqsListener("shipping-response-queue")
-    public void handleShippingResponse(ShippingResponse response) {
-        log.info("Resposta de envio recebida: {}", response);
+    // Etapa paralela que concluiu depois de a saga entrar em compensação: desfaz só ela
+    private void compensateLateStep(String sagaId, Long orderId, SagaContext sagaContext, SagaStep step,
+                                    int attempt) {
+        SagaStepDefinition late = definition.step(step);
+        if (!late.hasCompensation()) {
+            return;
+        }
 
         try {
-            if (response.isSuccessful()) {
-                completeSaga(response.getSagaId());
-            } else {
-                log.warn("Arranjo de envio falhou para saga: {} - Motivo: {}",
-                        response.getSagaId(), response.getErrorMessage());
-                compensateSaga(response.getSagaId(), SagaStep.SHIPPING_ARRANGED);
+            SagaContext context = resolveContext(sagaId, orderId, sagaContext);
+            // A compensação da saga usa a tentativa 0 e pode ter chegado antes do pedido atrasado;
+            // cada tentativa do pedido que concluiu tarde ganha a sua, senão a deduplicação do
+            // participante descartaria a segunda
+            Object compensation = late.getCompensation().create(sagaId, orderId, context);
+            if (compensation instanceof CompensationRequest compensationRequest) {
+                compensationRequest.setAttempt(attempt + 1);
             }
+            outboxPublisher.publish(late.getCompensationQueue(), sagaId, compensation);
+            log.warn("Etapa {} concluída após a compensação da saga: {} - compensação enviada", step, sagaId);
         } catch (Exception e) {
-            log.error("Erro ao processar resposta de envio para saga: {}",
-                    response.getSagaId(), e);
-            compensateSaga(response.getSagaId(), SagaStep.SHIPPING_ARRANGED);
+            log.error("Erro ao compensar a etapa {} da saga: {}", step, sagaId, e);
         }
     }
 
     private void completeSaga(String sagaId) {
         try {
-            SagaTransaction saga = sagaRepository.findById(sagaId)
-                    .orElseThrow(() -> new RuntimeException("Saga não encontrada: " + sagaId));
-
-            saga.setStatus(SagaStatus.COMPLETED);
-            saga.setUpdatedAt(LocalDateTime.now());
-            sagaRepository.save(saga);
+            // Um prazo vencido pode ter levado a saga à compensação depois da junção
+            if (!sagaStateStore.transition(sagaId, s -> s.getStatus() == SagaStatus.IN_PROGRESS,
+                    SagaTransaction::markAsCompleted)) {
+                log.info("Saga {} não está mais em andamento, conclusão ignorada", sagaId);
+                return;
+            }
+            SagaTransaction saga = sagaStateStore.get(sagaId);
+            long duration = finished(saga);
 
-            // Marcar pedido como enviado
-            orderService.shipOrder(saga.getOrderId());
+            definition.completed(saga.getOrderId());
 
             // ✅ Registrar métricas de sucesso
             sagaMetricsCollector.recordSagaCompleted();
-            sagaMetricsCollector.recordSagaDuration(saga.getCreatedAt(), LocalDateTime.now());
+            sagaMetricsCollector.recordSagaDuration(duration);
 
             log.info("✅ Saga concluída com sucesso: {}", sagaId);
 
@@ -232,40 +411,64 @@ public class SagaOrchestrator {
         }
     }
 
-    private void compensateSaga(String sagaId, SagaStep failedStep) {
+    // rejectedStep: etapa cujo participante respondeu com falha (nada a desfazer nela); null
+    // quando a falha não veio de uma resposta
+    private void compensateSaga(String sagaId, SagaStep failedStep, SagaContext sagaContext, SagaStep rejectedStep) {
+        compensateSaga(sagaId, failedStep, sagaContext, rejectedStep,
+                s -> !s.isCompensating() && !s.isFailed() && s.getStatus() != SagaStatus.COMPENSATED && !s.isCompleted());
+    }
+
+    private void compensateSaga(String sagaId, SagaStep failedStep, SagaContext sagaContext, SagaStep rejectedStep,
+                                Predicate<SagaTransaction> expected) {
         log.info("🔄 Iniciando compensação para saga: {} na etapa: {}", sagaId, failedStep);
+        long compensationStart = System.nanoTime();
 
         try {
-            SagaTransaction saga = sagaRepository.findById(sagaId)
-                    .orElseThrow(() -> new RuntimeException("Saga não encontrada: " + sagaId));
-
-            saga.setStatus(SagaStatus.COMPENSATING);
-            saga.setUpdatedAt(LocalDateTime.now());
-            sagaRepository.save(saga);
-
-            // Executar compensações na ordem reversa
-            switch (failedStep) {
-                case SHIPPING_ARRANGED:
-                    cancelShipping(sagaId, saga.getOrderId());
-                    // fall through
-                case INVENTORY_RESERVED:
-                    releaseInventory(sagaId, saga.getOrderId());
-                    // fall through
-                case PAYMENT_PROCESSED:
-                    refundPayment(sagaId, saga.getOrderId());
-                    // fall through
-                case ORDER_CREATED:
-                    cancelOrder(sagaId);
-                    break;
+            // Transição e retrato das etapas a desfazer na mesma seção crítica. Entram as
+            // concluídas e as em dúvida: enviadas no estágio atual e sem resposta, que podem ter
+            // sido aplicadas pelo participante (os handlers de compensação são idempotentes).
+            // Uma etapa que concluir depois disso é compensada de novo por compensateLateStep
+            List<SagaStepDefinition> toCompensate = new ArrayList<>();
+            boolean started = sagaStateStore.transition(sagaId, expected, s -> {
+                SagaStep current = s.getCurrentStep();
+                List<SagaStepDefinition> inDoubt = definition.stage(current);
+                s.markAsCompensating(failedStep);
+                for (SagaStepDefinition step : definition.compensationsFor(inDoubt != null ? current : failedStep)) {
+                    if (s.isStepCompleted(step.getStep())
+                            || (inDoubt != null && inDoubt.contains(step) && step.getStep() != rejectedStep)) {
+                        toCompensate.add(step);
+                    }
+                }
+            });
+            if (!started) {
+                log.info("Saga {} já em compensação ou finalizada, falha da etapa {} ignorada", sagaId, failedStep);
+                return;
+            }
+            deadlineTracker.cancel(sagaId);
+            SagaTransaction saga = sagaStateStore.get(sagaId);
+
+            // Compensações na ordem reversa e por fim o pedido
+            SagaContext context = null;
+            for (SagaStepDefinition step : toCompensate) {
+                try {
+                    if (context == null) {
+                        context = resolveContext(sagaId, saga.getOrderId(), sagaContext);
+                    }
+                    outboxPublisher.publish(step.getCompensationQueue(), sagaId,
+                            step.getCompensation().create(sagaId, saga.getOrderId(), context));
+                    log.info("Solicitação de compensação da etapa {} enviada para saga: {}", step.getStep(), sagaId);
+                } catch (Exception e) {
+                    log.error("Erro ao compensar a etapa {} da saga: {}", step.getStep(), sagaId, e);
+                }
             }
+            abortOrder(saga);
 
-            saga.setStatus(SagaStatus.COMPENSATED);
-            saga.setUpdatedAt(LocalDateTime.now());
-            sagaRepository.save(saga);
+            long duration = finished(sagaStateStore.update(sagaId, SagaTransaction::markAsCompensated));
 
             // ✅ Registrar métricas de compensação
             sagaMetricsCollector.recordSagaCompensated();
-            sagaMetricsCollector.recordSagaDuration(saga.getCreatedAt(), LocalDateTime.now());
+            sagaMetricsCollector.recordCompensationDuration(failedStep, System.nanoTime() - compensationStart);
+            sagaMetricsCollector.recordSagaDuration(duration);
 
             log.info("🔄 Saga compensada com sucesso: {}", sagaId);
 
@@ -276,20 +479,23 @@ public class SagaOrchestrator {
     }
 
     private void failSaga(String sagaId, String reason) {
+        deadlineTracker.cancel(sagaId);
         try {
-            SagaTransaction saga = sagaRepository.findById(sagaId)
-                    .orElseThrow(() -> new RuntimeException("Saga não encontrada: " + sagaId));
-
-            saga.setStatus(SagaStatus.FAILED);
-            saga.setUpdatedAt(LocalDateTime.now());
-            sagaRepository.save(saga);
+            if (!sagaStateStore.transition(sagaId,
+                    s -> !s.isFailed() && s.getStatus() != SagaStatus.COMPENSATED,
+                    s -> s.markAsFailed(reason))) {
+                log.info("Saga {} já finalizada, falha ignorada: {}", sagaId, reason);
+                return;
+            }
+            SagaTransaction saga = sagaStateStore.get(sagaId);
+            long duration = finished(saga);
 
             // Cancelar pedido em caso de falha definitiva
-            orderService.cancelOrder(saga.getOrderId());
+            definition.aborted(saga.getOrderId());
 
             // ✅ Registrar métricas de falha
             sagaMetricsCollector.recordSagaFailed();
-            sagaMetricsCollector.recordSagaDuration(saga.getCreatedAt(), LocalDateTime.now());
+            sagaMetricsCollector.recordSagaDuration(duration);
 
             log.error("❌ Saga falhou definitivamente: {} - Motivo: {}", sagaId, reason);
 
@@ -298,41 +504,112 @@ public class SagaOrchestrator {
         }
     }
 
-    public void compensateSagaTimeout(String sagaId, SagaStep currentStep) {
-        log.warn("⏰ Timeout detectado para saga: {} na etapa: {}", sagaId, currentStep);
-
+    // Prazo do estágio vencido: reenvia as etapas ainda sem resposta com backoff até o limite
+    // da política da etapa líder, depois compensa. As mensagens da transição (reenvios ou
+    // compensações) vão para o outbox numa única transação
+    @Transactional
+    public void onStepDeadline(String sagaId, SagaStep step) {
         try {
-            SagaTransaction saga = sagaRepository.findById(sagaId)
-                    .orElseThrow(() -> new RuntimeException("Saga não encontrada: " + sagaId));
+            SagaTransaction current = sagaStateStore.get(sagaId);
+            if (!awaiting(current, step)) {
+                log.info("Saga {} não está mais aguardando a etapa {}, prazo ignorado", sagaId, step);
+                return;
+            }
 
-            // Marcar como timeout antes de compensar
-            saga.setStatus(SagaStatus.FAILED);
-            saga.setUpdatedAt(LocalDateTime.now());
-            sagaRepository.save(saga);
+            admissionLimiter.onDrop();
 
-            // ✅ Registrar métrica de falha por timeout
-            sagaMetricsCollector.recordSagaFailed();
-            sagaMetricsCollector.recordSagaDuration(saga.getCreatedAt(), LocalDateTime.now());
+            SagaStepPolicies.StepPolicy policy = stepPolicies.of(step);
+            if (!policy.canRetry(current.getRetryCount())) {
+                compensateSagaTimeout(sagaId, step);
+                return;
+            }
+
+            // A junção pode ter acontecido entre a leitura acima e aqui
+            if (!sagaStateStore.transition(sagaId, s -> awaiting(s, step), SagaTransaction::incrementRetryCount)) {
+                log.info("Saga {} não está mais aguardando a etapa {}, prazo ignorado", sagaId, step);
+                return;
+            }
+            SagaTransaction saga = sagaStateStore.get(sagaId);
+            Duration delay = policy.backoffFor(saga.getRetryCount());
+
+            resendPendingSteps(saga, delay);
+            // O novo prazo só começa a contar quando a mensagem fica visível na fila
+            afterCommit(() -> deadlineTracker.arm(sagaId, step, stepPolicies.stageTimeout(step).plus(delay)));
 
-            // Iniciar compensação
-            compensateSaga(sagaId, currentStep);
+            sagaMetricsCollector.recordStepRetry(step);
+            log.warn("🔁 Etapa {} reenviada para saga: {} (tentativa {}/{}, atraso: {}ms)",
+                    step, sagaId, saga.getRetryCount(), policy.getMaxAttempts(), delay.toMillis());
 
         } catch (Exception e) {
-            log.error("Erro ao processar timeout da saga: {}", sagaId, e);
+            log.error("Erro ao tratar prazo vencido da saga: {}", sagaId, e);
+            // O rollback desfaz o UPDATE da tentativa e os reenvios no outbox, e o SagaStateStore
+            // devolve a cópia em memória ao estado anterior; sem prazo armado, a varredura pega a saga de novo
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
         }
     }
 
-    private void updateSagaStep(String sagaId, SagaStep step, SagaStatus status) {
+    private void resendPendingSteps(SagaTransaction saga, Duration delay) {
+        String sagaId = saga.getSagaId();
+        Long orderId = saga.getOrderId();
+        List<SagaStepDefinition> stage = definition.stage(saga.getCurrentStep());
+        if (stage == null) {
+            throw new IllegalStateException("Etapa sem mensagem para reenviar: " + saga.getCurrentStep());
+        }
+
+        SagaContext context = SagaContext.from(orderService.findById(orderId));
+        for (SagaStepDefinition step : stage) {
+            if (!saga.isStepCompleted(step.getStep())) {
+                outboxPublisher.publish(step.getRequestQueue(), sagaId,
+                        request(step, sagaId, orderId, context, saga.getRetryCount()), delay);
+            }
+        }
+    }
+
+    @Transactional
+    public void compensateSagaTimeout(String sagaId, SagaStep currentStep) {
+        log.warn("⏰ Timeout detectado para saga: {} na etapa: {}", sagaId, currentStep);
+
+        // Transição condicional: a saga pode ter avançado desde que o prazo foi armado, e uma
+        // resposta atrasada que chegue agora perde para o timeout em vez de sobrescrevê-lo.
+        // A saga vai direto para a compensação, com um único estado terminal (COMPENSATED);
+        // sem resposta do participante, o contexto vem do banco
+        compensateSaga(sagaId, currentStep, null, null, s -> awaiting(s, currentStep));
+    }
+
+    private static boolean awaiting(SagaTransaction saga, SagaStep step) {
+        return saga.getStatus() == SagaStatus.IN_PROGRESS && saga.getCurrentStep() == step;
+    }
+
+    // False se a saga já saiu de from (ex.: compensada por timeout ou despachada por outra thread)
+    private boolean enterStage(String sagaId, SagaStep from, List<SagaStepDefinition> stage) {
+        SagaStep lead = stage.getFirst().getStep();
         try {
-            SagaTransaction saga = sagaRepository.findById(sagaId)
-                    .orElseThrow(() -> new RuntimeException("Saga não encontrada: " + sagaId));
+            boolean entered = sagaStateStore.transition(sagaId,
+                    saga -> saga.getCurrentStep() == from
+                            && (saga.getStatus() == SagaStatus.STARTED || saga.getStatus() == SagaStatus.IN_PROGRESS),
+                    saga -> {
+                        saga.setCurrentStep(lead);
+                        saga.setStatus(SagaStatus.IN_PROGRESS);
+                        saga.setRetryCount(0);
+                    });
+            if (!entered) {
+                log.info("Saga {} não está mais na etapa {}, estágio {} não enviado", sagaId, from, lead);
+                return false;
+            }
 
-            saga.setCurrentStep(step);
-            saga.setStatus(status);
-            saga.setUpdatedAt(LocalDateTime.now());
-            sagaRepository.save(saga);
+            // O estágio aguarda resposta de todos os participantes até o prazo do mais lento
+            inFlightSagas.computeIfPresent(sagaId, (id, previous) -> {
+                sagaMetricsCollector.recordStepTransition(previous.step(), lead);
+                return new InFlight(lead, previous.startedAtNanos());
+            });
+            long now = System.nanoTime();
+            for (SagaStepDefinition step : stage) {
+                stepDispatches.put(new StepKey(sagaId, step.getStep()), now);
+            }
+            afterCommit(() -> deadlineTracker.arm(sagaId, lead, stepPolicies.stageTimeout(lead)));
 
-            log.debug("Saga {} atualizada: step={}, status={}", sagaId, step, status);
+            log.debug("Saga {} atualizada: step={}, status={}", sagaId, lead, SagaStatus.IN_PROGRESS);
+            return true;
 
         } catch (Exception e) {
             log.error("Erro ao atualizar step da saga: {}", sagaId, e);
@@ -340,95 +617,124 @@ public class SagaOrchestrator {
         }
     }
 
-    // ✅ Métodos de compensação atualizados com mais informações
-    private void cancelShipping(String sagaId, Long orderId) {
-        try {
-            Map<String, Object> compensationData = new HashMap<>();
-            compensationData.put("orderId", orderId);
-            compensationData.put("action", "CANCEL_SHIPPING");
-
-            CompensationRequest request = CompensationRequest.builder()
-                    .sagaId(sagaId)
-                    .orderId(orderId)
-                    .compensationType("SHIPPING_CANCELLATION")
-                    .compensationData(compensationData)
-                    .requestedAt(LocalDateTime.now())
-                    .reason("Saga compensation required")
-                    .build();
-
-            sqsTemplate.send("shipping-compensation-queue", request);
-            log.info("Solicitação de cancelamento de envio enviada para saga: {}", sagaId);
+    // Efeitos em memória (prazos, admissão) só valem para transições confirmadas; sem transação, na hora
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 
-        } catch (Exception e) {
-            log.error("Erro ao cancelar envio para saga: {}", sagaId, e);
+    // Resposta do participante: registra a latência da etapa e alimenta o limite de admissão.
+    // O prazo do estágio só é cancelado na junção ou na compensação
+    private void onStepResponse(String sagaId, SagaStep step) {
+        Long dispatchedAtNanos = stepDispatches.remove(new StepKey(sagaId, step));
+        if (dispatchedAtNanos != null) {
+            long latencyNanos = System.nanoTime() - dispatchedAtNanos;
+            sagaMetricsCollector.recordStepDuration(step, latencyNanos);
+            admissionLimiter.onSample(latencyNanos, inFlightSagas.size());
         }
     }
 
-    private void releaseInventory(String sagaId, Long orderId) {
-        try {
-            Order order = orderService.findById(orderId);
-
-            Map<String, Object> compensationData = new HashMap<>();
-            compensationData.put("orderId", orderId);
-            compensationData.put("productId", order.getProductId());
-            compensationData.put("quantity", order.getQuantity());
-            compensationData.put("action", "RELEASE_INVENTORY");
-
-            CompensationRequest request = CompensationRequest.builder()
-                    .sagaId(sagaId)
-                    .orderId(orderId)
-                    .compensationType("INVENTORY_RELEASE")
-                    .compensationData(compensationData)
-                    .requestedAt(LocalDateTime.now())
-                    .reason("Saga compensation required")
-                    .build();
-
-            sqsTemplate.send("inventory-compensation-queue", request);
-            log.info("Solicitação de liberação de estoque enviada para saga: {}", sagaId);
+    private void enterInFlight(String sagaId) {
+        if (inFlightSagas.put(sagaId, new InFlight(SagaStep.ORDER_CREATED, System.nanoTime())) == null) {
+            sagaMetricsCollector.recordStepTransition(null, SagaStep.ORDER_CREATED);
+            admissionLimiter.onStarted();
+        }
+    }
 
-        } catch (Exception e) {
-            log.error("Erro ao liberar estoque para saga: {}", sagaId, e);
+    // Saga que falhou ao iniciar: a vaga volta para a reserva de quem chamou
+    private void abandonInFlight(String sagaId) {
+        InFlight inFlight = inFlightSagas.remove(sagaId);
+        if (inFlight != null) {
+            sagaMetricsCollector.recordStepTransition(inFlight.step(), null);
+            admissionLimiter.onAbandoned();
+        }
+    }
+
+    // Saga chegou a estado terminal; retorna a duração total medida com o relógio monotônico
+    private long finished(SagaTransaction saga) {
+        long elapsed = elapsedNanos(saga);
+        InFlight inFlight = inFlightSagas.remove(saga.getSagaId());
+        if (inFlight != null) {
+            sagaMetricsCollector.recordStepTransition(inFlight.step(), null);
+            admissionLimiter.onFinished();
+        }
+        for (SagaStepDefinition step : definition.getSteps()) {
+            stepDispatches.remove(new StepKey(saga.getSagaId(), step.getStep()));
+        }
+        return elapsed;
+    }
+
+    private long elapsedNanos(SagaTransaction saga) {
+        InFlight inFlight = inFlightSagas.get(saga.getSagaId());
+        if (inFlight != null) {
+            return System.nanoTime() - inFlight.startedAtNanos();
         }
+        // Saga não acompanhada nesta instância: só resta o relógio de parede
+        return Math.max(0, Duration.between(saga.getCreatedAt(), LocalDateTime.now()).toNanos());
+    }
+
+    private record InFlight(SagaStep step, long startedAtNanos) {
+    }
+
+    private record StepKey(String sagaId, SagaStep step) {
+    }
+
+    private enum StepOutcome {
+        // Última etapa do estágio concluída: avança
+        JOINED,
+        // Estágio ainda tem etapas sem resposta
+        WAITING,
+        // Saga já em compensação ou falha: a etapa concluída precisa ser desfeita
+        LATE,
+        // Resposta duplicada ou de um estágio que não é o atual
+        IGNORED
     }
 
-    private void refundPayment(String sagaId, Long orderId) {
+    private void abortOrder(SagaTransaction saga) {
         try {
-            Order order = orderService.findById(orderId);
-
-            Map<String, Object> compensationData = new HashMap<>();
-            compensationData.put("orderId", orderId);
-            compensationData.put("customerId", order.getCustomerId());
-            compensationData.put("amount", order.getAmount());
-            compensationData.put("action", "REFUND_PAYMENT");
-
-            CompensationRequest request = CompensationRequest.builder()
-                    .sagaId(sagaId)
-                    .orderId(orderId)
-                    .compensationType("PAYMENT_REFUND")
-                    .compensationData(compensationData)
-                    .requestedAt(LocalDateTime.now())
-                    .reason("Saga compensation required")
-                    .build();
-
-            sqsTemplate.send("payment-compensation-queue", request);
-            log.info("Solicitação de estorno de pagamento enviada para saga: {}", sagaId);
+            definition.aborted(saga.getOrderId());
+            log.info("Pedido cancelado para saga: {}", saga.getSagaId());
 
         } catch (Exception e) {
-            log.error("Erro ao estornar pagamento para saga: {}", sagaId, e);
+            log.error("Erro ao cancelar pedido para saga: {}", saga.getSagaId(), e);
         }
     }
 
-    private void cancelOrder(String sagaId) {
-        try {
-            SagaTransaction saga = sagaRepository.findById(sagaId)
-                    .orElseThrow(() -> new RuntimeException("Saga não encontrada: " + sagaId));
+    // Usa o snapshot do pedido recebido na mensagem; só consulta o banco se ausente ou com versão desatualizada
+    private SagaContext resolveContext(String sagaId, Long orderId, SagaContext sagaContext) {
+        Long knownVersion = sagaStateStore.get(sagaId).getOrderVersion();
 
-            orderService.cancelOrder(saga.getOrderId());
-            log.info("Pedido cancelado para saga: {}", sagaId);
+        if (sagaContext != null && Objects.equals(sagaContext.getOrderVersion(), knownVersion)) {
+            return sagaContext;
+        }
 
-        } catch (Exception e) {
-            log.error("Erro ao cancelar pedido para saga: {}", sagaId, e);
+        log.warn("Contexto ausente ou desatualizado para saga: {} (versão recebida: {}, conhecida: {}) - recarregando pedido",
+                sagaId, sagaContext != null ? sagaContext.getOrderVersion() : null, knownVersion);
+        return SagaContext.from(orderService.findById(orderId));
+    }
+
+    // Hook não bloqueante: completa quando a saga chega a COMPLETED, COMPENSATED ou FAILED.
+    // A inscrição vem antes da leitura do estado atual para não perder uma transição no meio
+    public CompletableFuture<SagaStatusResponse> awaitCompletion(String sagaId) {
+        CompletableFuture<SagaStatusResponse> terminal = completionRegistry.awaitTerminal(sagaId);
+        try {
+            SagaStatusResponse current = SagaStatusResponse.from(sagaStateStore.get(sagaId));
+            if (SagaCompletionRegistry.isTerminal(current)) {
+                terminal.complete(current);
+            }
+        } catch (RuntimeException e) {
+            terminal.cancel(false);
+            throw e;
         }
+        return terminal;
     }
 
     // ✅ Método utilitário para obter métricas atuais
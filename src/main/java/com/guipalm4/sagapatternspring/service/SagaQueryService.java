@@ -0,0 +1,111 @@
+package com.guipalm4.sagapatternspring.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.guipalm4.sagapatternspring.api.response.SagaPageResponse;
+import com.guipalm4.sagapatternspring.domain.SagaTransaction;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStatus;
+import com.guipalm4.sagapatternspring.repository.SagaTransactionRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Consultas de histórico de sagas: páginas por keyset em (createdAt, sagaId) e exportação
+ * NDJSON lida do banco em fluxo, com memória constante independente do volume.
+ */
+@Service
+@Slf4j
+public class SagaQueryService {
+
+    private static final int FLUSH_EVERY = 100;
+
+    private final SagaTransactionRepository sagaRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    public SagaQueryService(
+            SagaTransactionRepository sagaRepository,
+            EntityManager entityManager,
+            ObjectMapper objectMapper
+    ) {
+        this.sagaRepository = sagaRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional(readOnly = true)
+    public SagaPageResponse findPage(List<SagaStatus> statuses, String cursor, int limit) {
+        List<SagaTransaction> items;
+        if (cursor == null || cursor.isBlank()) {
+            items = sagaRepository.findPageByStatusIn(statuses, Limit.of(limit));
+        } else {
+            Cursor position = Cursor.decode(cursor);
+            items = sagaRepository.findPageByStatusInAfter(
+                    statuses, position.createdAt(), position.sagaId(), Limit.of(limit));
+        }
+
+        String nextCursor = null;
+        if (items.size() == limit) {
+            SagaTransaction last = items.get(items.size() - 1);
+            nextCursor = new Cursor(last.getCreatedAt(), last.getSagaId()).encode();
+        }
+
+        return SagaPageResponse.builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    // Uma saga por linha; cada entidade é desanexada após escrita para o contexto não crescer
+    @Transactional(readOnly = true)
+    public long streamNdjson(List<SagaStatus> statuses, OutputStream output) throws IOException {
+        long written = 0;
+
+        try (Stream<SagaTransaction> sagas = sagaRepository.streamByStatusIn(statuses)) {
+            Iterator<SagaTransaction> iterator = sagas.iterator();
+            while (iterator.hasNext()) {
+                SagaTransaction saga = iterator.next();
+                output.write(objectMapper.writeValueAsBytes(saga));
+                output.write('\n');
+                entityManager.detach(saga);
+
+                if (++written % FLUSH_EVERY == 0) {
+                    output.flush();
+                }
+            }
+        }
+
+        output.flush();
+        log.debug("Exportação NDJSON de sagas concluída: {} linhas", written);
+        return written;
+    }
+
+    private record Cursor(LocalDateTime createdAt, String sagaId) {
+
+        String encode() {
+            String raw = createdAt + "|" + sagaId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor inválido: " + cursor, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,587 @@
+package com.guipalm4.sagapatternspring.service;
+
+import com.guipalm4.sagapatternspring.api.response.SagaStatusResponse;
+import com.guipalm4.sagapatternspring.domain.SagaTransaction;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStatus;
+import com.guipalm4.sagapatternspring.repository.SagaTransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Estado das sagas em andamento mantido em memória. Dentro de uma transação, a transição de
+ * uma saga já gravada ({@link #transition}, {@link #update}) é um UPDATE condicional na versão
+ * da linha, na transação de quem chama: só vale se alterar uma linha, então as mensagens que
+ * ela põe no outbox são confirmadas junto com o novo estado ou com nada. Perdeu para outra
+ * escrita, a cópia em memória é trocada pela linha atual e a transição é refeita sobre ela.
+ * Sagas registradas numa transação são inseridas no commit dela, e o novo estado só é
+ * publicado (cache de status, long-poll) depois do commit. Alterações fora de transação
+ * continuam write-behind: uma thread própria as grava em lote, em transação própria.
+ */
+@Component
+@Slf4j
+public class SagaStateStore {
+
+    private static final Set<SagaStatus> TERMINAL_STATUSES =
+            EnumSet.of(SagaStatus.COMPLETED, SagaStatus.COMPENSATED, SagaStatus.FAILED);
+
+    private final SagaTransactionRepository sagaRepository;
+    private final SagaStatusCache statusCache;
+    private final SagaCompletionRegistry completionRegistry;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter conflictCounter;
+    private final int flushBatchSize;
+    private final long flushIntervalMs;
+
+    private final Map<String, SagaTransaction> sagas = new ConcurrentHashMap<>();
+    // Índice orderId -> sagaId das sagas em memória (uma saga por pedido)
+    private final Map<Long, String> sagaIdsByOrderId = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    // Registradas numa transação ainda aberta: o INSERT é dela, o flush não toca nessas sagas
+    private final Set<String> pendingInserts = ConcurrentHashMap.newKeySet();
+
+    // Serializa as escritas no banco para que um flush antigo não sobrescreva um estado mais novo
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Acorda a thread de flush antes do intervalo (ex.: saga terminal)
+    private final Semaphore flushSignal = new Semaphore(0);
+    private Thread flusher;
+    private volatile boolean running;
+
+    public SagaStateStore(
+            SagaTransactionRepository sagaRepository,
+            SagaStatusCache statusCache,
+            SagaCompletionRegistry completionRegistry,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${saga.state-store.flush-batch-size:500}") int flushBatchSize,
+            @Value("${saga.state-store.flush-interval-ms:200}") long flushIntervalMs
+    ) {
+        this.sagaRepository = sagaRepository;
+        this.statusCache = statusCache;
+        this.completionRegistry = completionRegistry;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.flushBatchSize = flushBatchSize;
+        this.flushIntervalMs = flushIntervalMs;
+
+        this.conflictCounter = Counter.builder("saga_state_conflicts_total")
+                .description("Saga flushes that lost to a newer write of the same row")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+    }
+
+    public static boolean isTerminal(SagaStatus status) {
+        return TERMINAL_STATUSES.contains(status);
+    }
+
+    // Numa transação, a saga é inserida no commit dela, junto das mensagens da primeira etapa
+    // no outbox; fora de transação vai pelo flush
+    public void register(SagaTransaction saga) {
+        track(saga);
+        TransactionChanges changes = transactionChanges();
+        if (changes != null) {
+            pendingInserts.add(saga.getSagaId());
+            changes.registered.put(saga.getSagaId(), saga);
+            return;
+        }
+        dirty.add(saga.getSagaId());
+        statusCache.put(SagaStatusResponse.from(saga));
+    }
+
+    // Grava a saga na transação de quem chama, para quem precisa do registro no banco junto
+    // de outras escritas (ex.: pedido e saga do modo accept-and-queue), e só a expõe em memória
+    // depois do commit
+    public void registerDurably(SagaTransaction saga) {
+        sagaRepository.save(saga.toBuilder().build());
+        saga.setNewEntity(false);
+
+        afterCommit(() -> {
+            track(saga);
+            statusCache.put(SagaStatusResponse.from(saga));
+        });
+    }
+
+    public Optional<SagaTransaction> find(String sagaId) {
+        SagaTransaction saga = sagas.get(sagaId);
+        if (saga != null) {
+            return Optional.of(saga);
+        }
+        return sagaRepository.findById(sagaId);
+    }
+
+    public SagaTransaction get(String sagaId) {
+        return find(sagaId)
+                .orElseThrow(() -> new RuntimeException("Saga não encontrada: " + sagaId));
+    }
+
+    public SagaTransaction update(String sagaId, Consumer<SagaTransaction> mutation) {
+        return apply(loaded(sagaId), s -> true, mutation);
+    }
+
+    // Aplica a mutação só se a saga ainda está no estado esperado; false é uma transição
+    // perdida para outro handler (ex.: resposta atrasada x prazo vencido) e não altera nada
+    public boolean transition(String sagaId, Predicate<SagaTransaction> expected, Consumer<SagaTransaction> mutation) {
+        return apply(loaded(sagaId), expected, mutation) != null;
+    }
+
+    // Lida pelo JDBC: numa transação que já gravou a saga, o findById poderia devolver a
+    // entidade anterior guardada no contexto de persistência
+    private SagaTransaction loaded(String sagaId) {
+        SagaTransaction saga = sagas.get(sagaId);
+        if (saga == null) {
+            SagaTransaction loaded = sagaRepository.findCurrent(sagaId)
+                    .orElseThrow(() -> new RuntimeException("Saga não encontrada: " + sagaId));
+            SagaTransaction previous = sagas.putIfAbsent(sagaId, loaded);
+            if (previous == null) {
+                sagaIdsByOrderId.put(loaded.getOrderId(), sagaId);
+            }
+            saga = previous != null ? previous : loaded;
+        }
+        return saga;
+    }
+
+    private void track(SagaTransaction saga) {
+        sagas.put(saga.getSagaId(), saga);
+        sagaIdsByOrderId.put(saga.getOrderId(), saga.getSagaId());
+    }
+
+    private void untrack(SagaTransaction saga) {
+        if (sagas.remove(saga.getSagaId(), saga)) {
+            sagaIdsByOrderId.remove(saga.getOrderId(), saga.getSagaId());
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    // Alterações da transação em curso, ou null fora de transação
+    private TransactionChanges transactionChanges() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+                || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        TransactionChanges changes = (TransactionChanges) TransactionSynchronizationManager.getResource(this);
+        if (changes == null) {
+            changes = new TransactionChanges();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(changes);
+        }
+        return changes;
+    }
+
+    // Retorna a instância alterada, ou null se a saga não estava no estado esperado
+    private SagaTransaction apply(SagaTransaction saga, Predicate<SagaTransaction> expected, Consumer<SagaTransaction> mutation) {
+        String sagaId = saga.getSagaId();
+        TransactionChanges changes = transactionChanges();
+        while (true) {
+            SagaTransaction next;
+            SagaStatusResponse status = null;
+            synchronized (saga) {
+                // Instâncias só saem ou são trocadas no mapa sob este lock: uma que saiu dele
+                // (terminal já persistida, descartada por conflito ou substituída por uma
+                // transição) nunca é alterada, e a transição é refeita sobre a atual
+                if (sagas.get(sagaId) != saga) {
+                    saga = loaded(sagaId);
+                    continue;
+                }
+                if (!expected.test(saga)) {
+                    return null;
+                }
+                if (changes != null && !saga.isNew()) {
+                    next = saga.toBuilder().build();
+                    mutate(next, mutation);
+                } else {
+                    // Ainda não inserida: nenhuma outra instância conhece a linha, a memória decide
+                    next = null;
+                    mutate(saga, mutation);
+                    if (changes == null || !changes.registered.containsKey(sagaId)) {
+                        // Suja na mesma seção crítica: o flush confere dirty sob o lock antes de remover
+                        dirty.add(sagaId);
+                        status = SagaStatusResponse.from(saga);
+                        statusCache.put(status);
+                    }
+                }
+            }
+
+            if (next == null) {
+                // Long-poll e SSE são notificados fora do lock da saga
+                if (status != null) {
+                    completionRegistry.publish(status);
+                    if (isTerminal(saga.getStatus())) {
+                        requestFlush();
+                    }
+                }
+                return saga;
+            }
+
+            // Fora do lock: uma transição concorrente da mesma saga espera pela linha no banco
+            // até o commit ou rollback desta, e então perde e recarrega
+            if (sagaRepository.updateIfVersion(next) == 1) {
+                next.setVersion(next.getVersion() + 1);
+                synchronized (saga) {
+                    track(next);
+                }
+                changes.previous.putIfAbsent(sagaId, saga);
+                changes.updated.put(sagaId, next);
+                return next;
+            }
+            saga = reloadStale(saga);
+        }
+    }
+
+    private static void mutate(SagaTransaction saga, Consumer<SagaTransaction> mutation) {
+        mutation.accept(saga);
+        saga.setUpdatedAt(LocalDateTime.now());
+    }
+
+    // A versão lida perdeu para uma escrita já confirmada: a cópia em memória dá lugar à linha
+    // atual, lida na transação de quem chama
+    private SagaTransaction reloadStale(SagaTransaction stale) {
+        String sagaId = stale.getSagaId();
+        conflictCounter.increment();
+        log.warn("Saga {} alterada por outra escrita (versão {}), transição refeita sobre o estado do banco",
+                sagaId, stale.getVersion());
+
+        SagaTransaction current = sagaRepository.findCurrent(sagaId)
+                .orElseThrow(() -> new RuntimeException("Saga não encontrada: " + sagaId));
+        synchronized (stale) {
+            if (sagas.get(sagaId) == stale) {
+                dirty.remove(sagaId);
+                track(current);
+            }
+        }
+        return loaded(sagaId);
+    }
+
+    // Estado confirmado pela transação: o da instância em memória ou, se ela já saiu do mapa,
+    // o que a transação instalou. Saga terminal sem alteração pendente sai da memória
+    private void publishCommitted(SagaTransaction installed) {
+        String sagaId = installed.getSagaId();
+        SagaTransaction saga = sagas.getOrDefault(sagaId, installed);
+        SagaStatusResponse status;
+        synchronized (saga) {
+            status = SagaStatusResponse.from(saga);
+            statusCache.put(status);
+            if (isTerminal(saga.getStatus()) && !dirty.contains(sagaId)) {
+                untrack(saga);
+            }
+        }
+        completionRegistry.publish(status);
+    }
+
+    // Pedido alterado fora do fluxo da saga: contextos com a versão anterior passam a ser
+    // considerados desatualizados. Só vale depois do commit da escrita do pedido, e uma versão
+    // mais antiga confirmada depois não sobrescreve a mais nova
+    public void recordOrderVersion(Long orderId, Long orderVersion) {
+        afterCommit(() -> {
+            String sagaId = sagaIdsByOrderId.get(orderId);
+            SagaTransaction saga = sagaId != null ? sagas.get(sagaId) : null;
+            if (saga == null) {
+                return;
+            }
+            synchronized (saga) {
+                if (sagas.get(sagaId) != saga
+                        || (saga.getOrderVersion() != null && saga.getOrderVersion() >= orderVersion)) {
+                    return;
+                }
+                saga.setOrderVersion(orderVersion);
+                dirty.add(sagaId);
+            }
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        flusher = Thread.ofPlatform()
+                .name("saga-state-flusher")
+                .daemon()
+                .start(this::runFlusher);
+    }
+
+    public void requestFlush() {
+        if (flushSignal.availablePermits() == 0) {
+            flushSignal.release();
+        }
+    }
+
+    private void runFlusher() {
+        while (running) {
+            try {
+                flush();
+                flushSignal.tryAcquire(flushIntervalMs, TimeUnit.MILLISECONDS);
+                flushSignal.drainPermits();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Erro no flush de estado de saga", e);
+            }
+        }
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            // Um lote com erro volta para dirty e espera o próximo ciclo, sem repetir em laço
+            while (!dirty.isEmpty()) {
+                if (!flushBatch()) {
+                    return;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private boolean flushBatch() {
+        List<SagaTransaction> live = new ArrayList<>();
+        List<SagaTransaction> snapshots = new ArrayList<>();
+        List<SagaTransaction> inserts = new ArrayList<>();
+        List<SagaTransaction> updates = new ArrayList<>();
+
+        List<String> deferred = new ArrayList<>();
+
+        Iterator<String> iterator = dirty.iterator();
+        while (iterator.hasNext() && snapshots.size() < flushBatchSize) {
+            String sagaId = iterator.next();
+            iterator.remove();
+
+            SagaTransaction saga = sagas.get(sagaId);
+            if (saga == null) {
+                continue;
+            }
+            // O INSERT é da transação que registrou a saga; a alteração vai num flush depois dela
+            if (pendingInserts.contains(sagaId)) {
+                deferred.add(sagaId);
+                continue;
+            }
+            synchronized (saga) {
+                live.add(saga);
+                SagaTransaction snapshot = saga.toBuilder().build();
+                snapshots.add(snapshot);
+                if (saga.isNew()) {
+                    inserts.add(snapshot);
+                } else {
+                    updates.add(snapshot);
+                }
+            }
+        }
+
+        dirty.addAll(deferred);
+        if (snapshots.isEmpty()) {
+            // Só restaram sagas de transações abertas: ficam para o próximo ciclo
+            return deferred.isEmpty();
+        }
+
+        // Sagas novas vão em INSERT em lote; as existentes, num lote JDBC de UPDATEs
+        // condicionais na versão, com o resultado conferido linha a linha
+        boolean[] updated;
+        try {
+            updated = transactionTemplate.execute(tx -> {
+                sagaRepository.saveAll(inserts);
+                return sagaRepository.updateAllIfVersion(updates);
+            });
+        } catch (Exception e) {
+            log.error("Erro ao persistir {} sagas, nova tentativa no próximo flush", snapshots.size(), e);
+            live.forEach(saga -> dirty.add(saga.getSagaId()));
+            return false;
+        }
+
+        // Posição de cada UPDATE no lote; o snapshot inserido já não é novo depois do INSERT
+        int update = 0;
+        for (int i = 0; i < live.size(); i++) {
+            SagaTransaction saga = live.get(i);
+            boolean inserted = update >= updates.size() || snapshots.get(i) != updates.get(update);
+            if (!inserted && !updated[update++]) {
+                discardStale(saga);
+                continue;
+            }
+            synchronized (saga) {
+                // O flush é serializado pelo flushLock: a versão em memória ainda é a do snapshot
+                if (!saga.isNew()) {
+                    saga.setVersion(snapshots.get(i).getVersion() + 1);
+                }
+                saga.setNewEntity(false);
+                // Sagas terminais já persistidas saem da memória; se mudaram de novo, continuam sujas
+                if (isTerminal(saga.getStatus()) && !dirty.contains(saga.getSagaId())) {
+                    untrack(saga);
+                }
+            }
+        }
+
+        log.debug("Flush de estado de saga: {} registros persistidos", snapshots.size());
+        return true;
+    }
+
+    // Outra instância gravou a saga depois da nossa leitura: a transição local perde e o
+    // próximo acesso recarrega o estado do banco
+    private void discardStale(SagaTransaction stale) {
+        String sagaId = stale.getSagaId();
+        conflictCounter.increment();
+        synchronized (stale) {
+            // Já trocada por uma transição que venceu esta escrita: a instância atual é a certa
+            if (sagas.get(sagaId) != stale) {
+                return;
+            }
+            untrack(stale);
+            dirty.remove(sagaId);
+        }
+        log.warn("Saga {} alterada por outra escrita (versão {}), estado em memória descartado", sagaId, stale.getVersion());
+
+        try {
+            sagaRepository.findById(sagaId).ifPresent(current -> {
+                SagaStatusResponse status = SagaStatusResponse.from(current);
+                statusCache.put(status);
+                completionRegistry.publish(status);
+            });
+        } catch (Exception e) {
+            log.error("Erro ao recarregar saga após conflito: {}", sagaId, e);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        List<SagaTransaction> inFlight = sagaRepository.findByStatusIn(
+                List.of(SagaStatus.STARTED, SagaStatus.IN_PROGRESS, SagaStatus.COMPENSATING));
+
+        inFlight.forEach(saga -> {
+            if (sagas.putIfAbsent(saga.getSagaId(), saga) == null) {
+                sagaIdsByOrderId.put(saga.getOrderId(), saga.getSagaId());
+            }
+        });
+        log.info("Estado de saga recuperado: {} sagas em andamento", inFlight.size());
+    }
+
+    // Lido do banco: não depende da ordem dos listeners de ApplicationReadyEvent
+    public List<SagaTransaction> findInFlightSagas() {
+        return sagaRepository.findByStatusIn(
+                List.of(SagaStatus.STARTED, SagaStatus.IN_PROGRESS, SagaStatus.COMPENSATING));
+    }
+
+    // Sem interrupt: a thread termina o flush em curso e o último flush roda aqui
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flushSignal.release();
+        if (flusher != null) {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        flush();
+    }
+
+    public int size() {
+        return sagas.size();
+    }
+
+    // Sagas registradas ou alteradas na transação em curso: as registradas são inseridas no
+    // beforeCommit, junto das mensagens do outbox, e o estado de todas só é publicado depois
+    // do commit. No rollback a memória volta ao que o banco tem. Ligada à transação como
+    // recurso, acompanha suspensão e retomada
+    private final class TransactionChanges implements TransactionSynchronization {
+
+        private final Map<String, SagaTransaction> registered = new LinkedHashMap<>();
+        // Instância anterior à primeira transição da saga na transação
+        private final Map<String, SagaTransaction> previous = new LinkedHashMap<>();
+        // Última instância instalada por sagaId
+        private final Map<String, SagaTransaction> updated = new LinkedHashMap<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(SagaStateStore.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(SagaStateStore.this, this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (registered.isEmpty()) {
+                return;
+            }
+            List<SagaTransaction> inserts = new ArrayList<>(registered.size());
+            for (SagaTransaction saga : registered.values()) {
+                synchronized (saga) {
+                    inserts.add(saga.toBuilder().build());
+                }
+            }
+            sagaRepository.saveAll(inserts);
+        }
+
+        @Override
+        public void afterCommit() {
+            for (SagaTransaction saga : registered.values()) {
+                synchronized (saga) {
+                    saga.setNewEntity(false);
+                }
+                pendingInserts.remove(saga.getSagaId());
+                publishCommitted(saga);
+            }
+            updated.values().forEach(SagaStateStore.this::publishCommitted);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(SagaStateStore.this);
+            if (status == STATUS_COMMITTED) {
+                return;
+            }
+            // A saga registrada nunca chegou ao banco
+            for (SagaTransaction saga : registered.values()) {
+                synchronized (saga) {
+                    untrack(saga);
+                    dirty.remove(saga.getSagaId());
+                }
+                pendingInserts.remove(saga.getSagaId());
+            }
+            // O banco desfez os UPDATEs: volta a instância anterior, a menos que outra escrita
+            // já tenha trocado a instalada por esta transação
+            updated.forEach((sagaId, installed) -> {
+                synchronized (installed) {
+                    if (sagas.get(sagaId) == installed) {
+                        track(previous.get(sagaId));
+                    }
+                }
+            });
+        }
+    }
+}
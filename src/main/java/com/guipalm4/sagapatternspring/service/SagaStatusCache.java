@@ -0,0 +1,133 @@
+package com.guipalm4.sagapatternspring.service;
+
+import com.guipalm4.sagapatternspring.api.response.SagaStatusResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * Cache limitado de {@link SagaStatusResponse} para o polling de status. O
+ * {@link SagaStateStore} atualiza a entrada a cada transição, então consultas de sagas
+ * recentes não chegam ao banco. Entradas expiram pelo TTL e, acima do tamanho máximo,
+ * as mais antigas são descartadas (FIFO).
+ */
+@Component
+@Slf4j
+public class SagaStatusCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Uma posição por chave presente no mapa, na ordem de inserção
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter sizeEvictionCounter;
+    private final Counter expiredEvictionCounter;
+
+    private record Entry(SagaStatusResponse response, long expiresAtNanos) {
+    }
+
+    public SagaStatusCache(
+            MeterRegistry meterRegistry,
+            @Value("${saga.status-cache.max-size:100000}") int maxSize,
+            @Value("${saga.status-cache.ttl-seconds:300}") long ttlSeconds
+    ) {
+        this.maxSize = maxSize;
+        this.ttlNanos = Duration.ofSeconds(ttlSeconds).toNanos();
+
+        this.hitCounter = Counter.builder("saga_status_cache_hits_total")
+                .description("Saga status lookups served from the cache")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        this.missCounter = Counter.builder("saga_status_cache_misses_total")
+                .description("Saga status lookups that had to load the saga")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+
+        this.sizeEvictionCounter = Counter.builder("saga_status_cache_evictions_total")
+                .description("Saga status cache entries evicted")
+                .tag("service", "saga-orchestrator")
+                .tag("cause", "size")
+                .register(meterRegistry);
+
+        this.expiredEvictionCounter = Counter.builder("saga_status_cache_evictions_total")
+                .description("Saga status cache entries evicted")
+                .tag("service", "saga-orchestrator")
+                .tag("cause", "expired")
+                .register(meterRegistry);
+
+        Gauge.builder("saga_status_cache_size", entries, Map::size)
+                .description("Entries currently in the saga status cache")
+                .tag("service", "saga-orchestrator")
+                .register(meterRegistry);
+    }
+
+    // Leitura com carga sob demanda: só sagas inexistentes não são guardadas
+    public Optional<SagaStatusResponse> get(String sagaId, Function<String, Optional<SagaStatusResponse>> loader) {
+        Entry entry = entries.get(sagaId);
+        if (entry != null) {
+            if (System.nanoTime() - entry.expiresAtNanos() < 0) {
+                hitCounter.increment();
+                return Optional.of(entry.response());
+            }
+            // Expirada: a chave continua no mapa e o put abaixo substitui o valor
+            expiredEvictionCounter.increment();
+        }
+
+        missCounter.increment();
+        Optional<SagaStatusResponse> loaded = loader.apply(sagaId);
+        loaded.ifPresent(this::putIfNewer);
+        return loaded;
+    }
+
+    // Chamado a cada transição; o chamador serializa as transições de uma mesma saga
+    public void put(SagaStatusResponse response) {
+        Entry previous = entries.put(response.getSagaId(), new Entry(response, System.nanoTime() + ttlNanos));
+        if (previous == null) {
+            insertionOrder.add(response.getSagaId());
+            evictIfNeeded();
+        }
+    }
+
+    // Carga pelo caminho de leitura: não sobrescreve um estado mais novo gravado por uma transição concorrente
+    private void putIfNewer(SagaStatusResponse response) {
+        Entry current = entries.get(response.getSagaId());
+        if (current != null && System.nanoTime() - current.expiresAtNanos() < 0
+                && current.response().getUpdatedAt() != null && response.getUpdatedAt() != null
+                && current.response().getUpdatedAt().isAfter(response.getUpdatedAt())) {
+            return;
+        }
+        put(response);
+    }
+
+    private void evictIfNeeded() {
+        while (entries.size() > maxSize) {
+            String eldest = insertionOrder.poll();
+            if (eldest == null) {
+                return;
+            }
+            if (entries.remove(eldest) != null) {
+                sizeEvictionCounter.increment();
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
@@ -1,5 +1,6 @@
 package com.guipalm4.sagapatternspring.service;
 
+import com.guipalm4.sagapatternspring.config.SqsListenerExecution;
 import com.guipalm4.sagapatternspring.messaging.request.CompensationRequest;
 import com.guipalm4.sagapatternspring.messaging.request.ShippingRequest;
 import com.guipalm4.sagapatternspring.messaging.response.ShippingResponse;
@@ -11,6 +12,7 @@ import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Service
@@ -18,17 +20,37 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ShippingService {
 
     private final SqsTemplate sqsTemplate;
+    private final ProcessedMessageRegistry processedMessages;
+    private final SqsListenerExecution listenerExecution;
     private final Map<String, String> shipments = new ConcurrentHashMap<>();
 
-    public ShippingService(SqsTemplate sqsTemplate) {
+    public ShippingService(SqsTemplate sqsTemplate, ProcessedMessageRegistry processedMessages,
+                           SqsListenerExecution listenerExecution) {
         this.sqsTemplate = sqsTemplate;
+        this.processedMessages = processedMessages;
+        this.listenerExecution = listenerExecution;
     }
 
-    @SqsListener("shipping-queue")
-    public void processShippingRequest(ShippingRequest request) {
+    @SqsListener(value = "shipping-queue",
+            maxConcurrentMessages = "${saga.execution.queues.shipping-queue.max-concurrent-messages:${saga.execution.max-concurrent-messages:10}}")
+    public CompletableFuture<Void> processShippingRequest(ShippingRequest request) {
+        return listenerExecution.run(() -> processedMessages.processOnce(
+                "shipping-queue", request.getSagaId(), request.getAttempt(), () -> arrangeShipping(request)));
+    }
+
+    private void arrangeShipping(ShippingRequest request) {
         log.info("Processando solicitação de envio: {}", request);
 
         try {
+            // Reenvio por prazo vencido de um envio já agendado: devolve o mesmo rastreio
+            String existing = shipments.get(request.getSagaId());
+            if (existing != null) {
+                log.info("Envio já agendado para saga {} - Tracking: {}, reenviando resultado",
+                        request.getSagaId(), existing);
+                sqsTemplate.send("shipping-response-queue", arranged(request, existing));
+                return;
+            }
+
             // Simular processamento de envio
             Thread.sleep(500);
 
@@ -39,17 +61,16 @@ public class ShippingService {
 
             if (success) {
                 String trackingNumber = "TRK" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-                shipments.put(request.getSagaId(), trackingNumber);
+                // Outra tentativa da mesma saga pode ter agendado enquanto esta processava: a
+                // primeira vence e este agendamento é descartado (cancelado na transportadora)
+                String winner = shipments.putIfAbsent(request.getSagaId(), trackingNumber);
+                if (winner != null) {
+                    log.info("Envio {} descartado, saga {} já agendada - Tracking: {}",
+                            trackingNumber, request.getSagaId(), winner);
+                    trackingNumber = winner;
+                }
 
-                response = ShippingResponse.builder()
-                        .sagaId(request.getSagaId())
-                        .orderId(request.getOrderId())
-                        .trackingNumber(trackingNumber)
-                        .successful(true)
-                        .shippingProvider("Express Delivery")
-                        .scheduledDelivery(LocalDateTime.now().plusDays(3))
-                        .processedAt(LocalDateTime.now())
-                        .build();
+                response = arranged(request, trackingNumber);
 
                 log.info("Envio processado com sucesso: {} - Tracking: {}",
                         request.getSagaId(), trackingNumber);
@@ -57,6 +78,8 @@ public class ShippingService {
                 response = ShippingResponse.builder()
                         .sagaId(request.getSagaId())
                         .orderId(request.getOrderId())
+                        .sagaContext(request.getSagaContext())
+                        .attempt(request.getAttempt())
                         .successful(false)
                         .errorMessage("Endereço de entrega inválido")
                         .processedAt(LocalDateTime.now())
@@ -73,6 +96,8 @@ public class ShippingService {
             ShippingResponse errorResponse = ShippingResponse.builder()
                     .sagaId(request.getSagaId())
                     .orderId(request.getOrderId())
+                    .sagaContext(request.getSagaContext())
+                    .attempt(request.getAttempt())
                     .successful(false)
                     .errorMessage("Erro interno: " + e.getMessage())
                     .processedAt(LocalDateTime.now())
@@ -82,26 +107,48 @@ public class ShippingService {
         }
     }
 
-    @SqsListener("shipping-compensation-queue")
-    public void compensateShipping(CompensationRequest request) {
-        log.info("Executando compensação de envio: {}", request.getSagaId());
+    private ShippingResponse arranged(ShippingRequest request, String trackingNumber) {
+        return ShippingResponse.builder()
+                .sagaId(request.getSagaId())
+                .orderId(request.getOrderId())
+                .sagaContext(request.getSagaContext())
+                .attempt(request.getAttempt())
+                .trackingNumber(trackingNumber)
+                .successful(true)
+                .shippingProvider("Express Delivery")
+                .scheduledDelivery(LocalDateTime.now().plusDays(3))
+                .processedAt(LocalDateTime.now())
+                .build();
+    }
 
-        try {
-            String trackingNumber = shipments.remove(request.getSagaId());
+    @SqsListener(value = "shipping-compensation-queue",
+            maxConcurrentMessages = "${saga.execution.queues.shipping-compensation-queue.max-concurrent-messages:${saga.execution.max-concurrent-messages:10}}")
+    public CompletableFuture<Void> compensateShipping(CompensationRequest request) {
+        return listenerExecution.run(() -> processedMessages.processOnce(
+                "shipping-compensation-queue", request.getSagaId(), request.getAttempt(), () -> cancelShipment(request)));
+    }
+
+    // Uma falha devolve o envio ao mapa e é propagada: a mensagem volta e o cancelamento é refeito
+    private void cancelShipment(CompensationRequest request) {
+        log.info("Executando compensação de envio: {}", request.getSagaId());
 
-            if (trackingNumber != null) {
-                // Simular cancelamento do envio
-                log.info("Envio cancelado: {} para saga: {}", trackingNumber, request.getSagaId());
+        String trackingNumber = shipments.remove(request.getSagaId());
+        if (trackingNumber == null) {
+            log.warn("Nenhum envio encontrado para compensação: {}", request.getSagaId());
+            return;
+        }
 
-                // Aqui você poderia integrar com APIs reais de transportadoras
-                // para cancelar o envio
+        try {
+            // Simular cancelamento do envio
+            log.info("Envio cancelado: {} para saga: {}", trackingNumber, request.getSagaId());
 
-            } else {
-                log.warn("Nenhum envio encontrado para compensação: {}", request.getSagaId());
-            }
+            // Aqui você poderia integrar com APIs reais de transportadoras
+            // para cancelar o envio
 
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
             log.error("Erro na compensação de envio para saga: {}", request.getSagaId(), e);
+            shipments.putIfAbsent(request.getSagaId(), trackingNumber);
+            throw e;
         }
     }
 
@@ -0,0 +1,59 @@
+package com.guipalm4.sagapatternspring;
+
+import com.guipalm4.sagapatternspring.config.InMemorySqsConfig;
+import com.guipalm4.sagapatternspring.config.SqsListenerExecution;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Sobe a aplicação inteira com saga.execution.mode=virtual no SQS em memória: os containers
+// @SqsListener precisam aceitar o executor de despacho e as sagas precisam terminar
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "saga.execution.mode=virtual")
+@ActiveProfiles(InMemorySqsConfig.PROFILE)
+class VirtualExecutionModeTests {
+
+    @Autowired
+    private SqsListenerExecution listenerExecution;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void listenerHandlersRunOnVirtualThreads() throws Exception {
+        AtomicBoolean virtual = new AtomicBoolean();
+
+        listenerExecution.run(() -> virtual.set(Thread.currentThread().isVirtual())).get(5, TimeUnit.SECONDS);
+
+        assertTrue(virtual.get());
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    void sagaReachesTerminalStatus() {
+        Map<String, Object> order = Map.of(
+                "customerId", "customer-123",
+                "productId", "product-456",
+                "quantity", 1,
+                "amount", 99.90);
+
+        ResponseEntity<Map> response = restTemplate.postForEntity("/api/orders?await=15s", order, Map.class);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        // O pagamento simulado recusa parte das cobranças: compensar também é um desfecho
+        assertTrue(List.of("COMPLETED", "COMPENSATED").contains(response.getBody().get("sagaStatus")),
+                "status: " + response.getBody());
+    }
+}
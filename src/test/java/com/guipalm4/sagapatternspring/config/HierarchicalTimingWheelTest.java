@@ -0,0 +1,94 @@
+package com.guipalm4.sagapatternspring.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTest {
+
+    private static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 8;
+
+    private final HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(TICK_MS, WHEEL_SIZE, 0);
+    private final List<String> fired = new ArrayList<>();
+
+    @Test
+    void expiresDeadlineWithinFirstLevel() {
+        schedule("a", 25);
+
+        run(wheel.advanceTo(19));
+        assertTrue(fired.isEmpty());
+
+        run(wheel.advanceTo(30));
+        assertEquals(List.of("a"), fired);
+    }
+
+    @Test
+    void pastDeadlineExpiresOnSchedule() {
+        wheel.advanceTo(100);
+        List<Runnable> expired = new ArrayList<>();
+
+        wheel.schedule(50, () -> fired.add("late"), expired);
+
+        run(expired);
+        assertEquals(List.of("late"), fired);
+    }
+
+    @Test
+    void overflowDeadlineCascadesDownAndExpiresOnTime() {
+        // Além do intervalo do nível 0 (80ms) e do nível 1 (640ms)
+        schedule("overflow", 500);
+        schedule("second-overflow", 1000);
+
+        run(wheel.advanceTo(489));
+        assertTrue(fired.isEmpty());
+
+        run(wheel.advanceTo(510));
+        assertEquals(List.of("overflow"), fired);
+
+        run(wheel.advanceTo(1010));
+        assertEquals(List.of("overflow", "second-overflow"), fired);
+    }
+
+    @Test
+    void cancelledDeadlinesAreUnlinkedFromTheirBucket() {
+        // Mesmo bucket: cancela o primeiro, o do meio e o último da lista
+        HierarchicalTimingWheel.Timeout head = schedule("head", 45);
+        schedule("kept-1", 45);
+        HierarchicalTimingWheel.Timeout middle = schedule("middle", 45);
+        schedule("kept-2", 45);
+        HierarchicalTimingWheel.Timeout tail = schedule("tail", 45);
+
+        head.cancel();
+        middle.cancel();
+        tail.cancel();
+
+        run(wheel.advanceTo(50));
+        assertEquals(List.of("kept-1", "kept-2"), fired);
+        assertTrue(head.isCancelled());
+    }
+
+    @Test
+    void cancelledOverflowDeadlineNeverExpires() {
+        HierarchicalTimingWheel.Timeout timeout = schedule("cancelled", 300);
+        timeout.cancel();
+
+        run(wheel.advanceTo(1000));
+        assertTrue(fired.isEmpty());
+    }
+
+    private HierarchicalTimingWheel.Timeout schedule(String name, long expirationMs) {
+        List<Runnable> expired = new ArrayList<>();
+        HierarchicalTimingWheel.Timeout timeout = wheel.schedule(expirationMs, () -> fired.add(name), expired);
+        run(expired);
+        return timeout;
+    }
+
+    private static void run(List<Runnable> tasks) {
+        tasks.forEach(Runnable::run);
+    }
+}
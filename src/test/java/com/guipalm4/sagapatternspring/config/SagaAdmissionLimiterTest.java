@@ -0,0 +1,162 @@
+package com.guipalm4.sagapatternspring.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SagaAdmissionLimiterTest {
+
+    private static final long TARGET_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void admitsWholeRequestOrNothing() {
+        SagaAdmissionLimiter limiter = limiter(4, 1, 10);
+
+        assertTrue(limiter.tryAdmit(3));
+        assertFalse(limiter.tryAdmit(2));
+        assertEquals(3, limiter.getInUse());
+        assertEquals(2.0, meterRegistry.get("saga_admission_rejected_total").counter().count());
+
+        assertTrue(limiter.tryAdmit(1));
+        assertEquals(4, limiter.getInUse());
+    }
+
+    @Test
+    void cancelReturnsUnusedReservations() {
+        SagaAdmissionLimiter limiter = limiter(2, 1, 10);
+
+        assertTrue(limiter.tryAdmit(2));
+        limiter.cancel(2);
+
+        assertEquals(0, limiter.getInUse());
+        assertTrue(limiter.tryAdmit(2));
+    }
+
+    @Test
+    void startedSagaConsumesReservationUntilFinished() {
+        SagaAdmissionLimiter limiter = limiter(2, 1, 10);
+
+        assertTrue(limiter.tryAdmit(1));
+        limiter.onStarted();
+        // A reserva virou saga em andamento e continua ocupando a vaga
+        assertEquals(1, limiter.getInUse());
+
+        limiter.onFinished();
+        assertEquals(0, limiter.getInUse());
+    }
+
+    @Test
+    void startWithoutReservationTakesSlotAboveLimit() {
+        SagaAdmissionLimiter limiter = limiter(1, 1, 10);
+
+        assertTrue(limiter.tryAdmit(1));
+        limiter.onStarted();
+        // Recuperação após restart: não passa pela admissão
+        limiter.onStarted();
+
+        assertEquals(2, limiter.getInUse());
+        assertFalse(limiter.tryAdmit(1));
+    }
+
+    @Test
+    void abandonedSagaGoesBackToCallerReservation() {
+        SagaAdmissionLimiter limiter = limiter(2, 1, 10);
+
+        assertTrue(limiter.tryAdmit(1));
+        limiter.onStarted();
+        limiter.onAbandoned();
+        limiter.cancel(1);
+
+        assertEquals(0, limiter.getInUse());
+        // Sem reserva pendente, o próximo início ocupa uma vaga nova
+        limiter.onStarted();
+        assertEquals(1, limiter.getInUse());
+    }
+
+    @Test
+    void concurrentAdmissionsNeverExceedLimit() throws Exception {
+        SagaAdmissionLimiter limiter = limiter(50, 1, 100);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int admitted = 0;
+                    for (int i = 0; i < 1000; i++) {
+                        if (limiter.tryAdmit(1)) {
+                            admitted++;
+                        }
+                    }
+                    return admitted;
+                }));
+            }
+            start.countDown();
+
+            int admitted = 0;
+            for (Future<Integer> result : results) {
+                admitted += result.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(50, admitted);
+            assertEquals(50, limiter.getInUse());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void limitDecreasesMultiplicativelyAboveTarget() {
+        SagaAdmissionLimiter limiter = limiter(40, 10, 100);
+
+        limiter.onSample(TARGET_NANOS + 1, 40);
+        assertEquals(20, limiter.getLimit());
+
+        limiter.onDrop();
+        assertEquals(10, limiter.getLimit());
+
+        limiter.onDrop();
+        assertEquals(10, limiter.getLimit());
+        assertEquals(2.0, meterRegistry.get("saga_admission_limit_decreases_total").counter().count());
+    }
+
+    @Test
+    void limitGrowsAdditivelyOnlyWhenInUse() {
+        SagaAdmissionLimiter limiter = limiter(10, 1, 12);
+
+        limiter.onSample(TARGET_NANOS, 2);
+        assertEquals(10, limiter.getLimit());
+
+        // 1/limit por amostra: uma janela, cerca de uma amostra por vaga, soma 1
+        for (int i = 0; i < 10; i++) {
+            limiter.onSample(TARGET_NANOS, 8);
+        }
+        assertEquals(10, limiter.getLimit());
+        limiter.onSample(TARGET_NANOS, 8);
+        assertEquals(11, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(TARGET_NANOS, 12);
+        }
+        assertEquals(12, limiter.getLimit());
+    }
+
+    private SagaAdmissionLimiter limiter(int initialLimit, int minLimit, int maxLimit) {
+        return new SagaAdmissionLimiter(meterRegistry, initialLimit, minLimit, maxLimit,
+                TimeUnit.NANOSECONDS.toMillis(TARGET_NANOS), 0.5, 1);
+    }
+}
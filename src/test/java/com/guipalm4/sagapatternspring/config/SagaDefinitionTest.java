@@ -0,0 +1,128 @@
+package com.guipalm4.sagapatternspring.config;
+
+import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
+import com.guipalm4.sagapatternspring.messaging.response.InventoryResponse;
+import com.guipalm4.sagapatternspring.messaging.response.PaymentResponse;
+import com.guipalm4.sagapatternspring.messaging.response.ShippingResponse;
+import com.guipalm4.sagapatternspring.messaging.response.StepResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+class SagaDefinitionTest {
+
+    private final List<Long> completed = new ArrayList<>();
+    private final List<Long> aborted = new ArrayList<>();
+
+    // Pagamento e estoque em paralelo, depois envio sem compensação
+    private final SagaDefinition definition = SagaDefinition.builder("order")
+            .parallel(
+                    step(SagaStep.PAYMENT_PROCESSED, PaymentResponse.class, true),
+                    step(SagaStep.INVENTORY_RESERVED, InventoryResponse.class, true))
+            .step(step(SagaStep.SHIPPING_ARRANGED, ShippingResponse.class, false))
+            .onCompleted(completed::add)
+            .onAborted(aborted::add)
+            .build();
+
+    @Test
+    void compensationChainIsReverseDeclarationOrderUpToFailedStage() {
+        assertEquals(List.of(SagaStep.INVENTORY_RESERVED, SagaStep.PAYMENT_PROCESSED),
+                steps(definition.compensationsFor(SagaStep.PAYMENT_PROCESSED)));
+        assertEquals(List.of(SagaStep.INVENTORY_RESERVED, SagaStep.PAYMENT_PROCESSED),
+                steps(definition.compensationsFor(SagaStep.INVENTORY_RESERVED)));
+        // Envio não tem compensação: a cadeia é a dos estágios anteriores
+        assertEquals(List.of(SagaStep.INVENTORY_RESERVED, SagaStep.PAYMENT_PROCESSED),
+                steps(definition.compensationsFor(SagaStep.SHIPPING_ARRANGED)));
+        assertEquals(List.of(), definition.compensationsFor(SagaStep.ORDER_CREATED));
+    }
+
+    @Test
+    void compensationChainOfEarlierStageExcludesLaterSteps() {
+        SagaDefinition sequential = SagaDefinition.builder("sequential")
+                .step(step(SagaStep.PAYMENT_PROCESSED, PaymentResponse.class, true))
+                .step(step(SagaStep.INVENTORY_RESERVED, InventoryResponse.class, true))
+                .step(step(SagaStep.SHIPPING_ARRANGED, ShippingResponse.class, true))
+                .onCompleted(completed::add)
+                .onAborted(aborted::add)
+                .build();
+
+        assertEquals(List.of(SagaStep.PAYMENT_PROCESSED),
+                steps(sequential.compensationsFor(SagaStep.PAYMENT_PROCESSED)));
+        assertEquals(List.of(SagaStep.INVENTORY_RESERVED, SagaStep.PAYMENT_PROCESSED),
+                steps(sequential.compensationsFor(SagaStep.INVENTORY_RESERVED)));
+        assertEquals(List.of(SagaStep.SHIPPING_ARRANGED, SagaStep.INVENTORY_RESERVED, SagaStep.PAYMENT_PROCESSED),
+                steps(sequential.compensationsFor(SagaStep.SHIPPING_ARRANGED)));
+    }
+
+    @Test
+    void stagesAreLedByTheirFirstStep() {
+        assertEquals(SagaStep.PAYMENT_PROCESSED, definition.leadOf(SagaStep.INVENTORY_RESERVED));
+        assertEquals(SagaStep.SHIPPING_ARRANGED, definition.leadOf(SagaStep.SHIPPING_ARRANGED));
+        assertEquals(List.of(SagaStep.SHIPPING_ARRANGED), steps(definition.nextStage(SagaStep.INVENTORY_RESERVED)));
+        assertNull(definition.nextStage(SagaStep.SHIPPING_ARRANGED));
+        assertNull(definition.step(SagaStep.ORDER_CREATED));
+    }
+
+    @Test
+    void responseTypeResolvesItsStep() {
+        assertEquals(SagaStep.INVENTORY_RESERVED, definition.stepFor(new InventoryResponse()).getStep());
+        assertThrows(IllegalArgumentException.class, () -> definition.stepFor(mock(StepResponse.class)));
+    }
+
+    @Test
+    void rejectsDuplicateStepsAndHalfDeclaredCompensation() {
+        assertThrows(IllegalArgumentException.class, () -> SagaDefinition.builder("duplicate")
+                .step(step(SagaStep.PAYMENT_PROCESSED, PaymentResponse.class, true))
+                .step(step(SagaStep.PAYMENT_PROCESSED, InventoryResponse.class, true))
+                .onCompleted(completed::add)
+                .onAborted(aborted::add)
+                .build());
+
+        SagaStepDefinition withoutQueue = SagaStepDefinition.builder()
+                .step(SagaStep.PAYMENT_PROCESSED)
+                .requestQueue("payment-queue")
+                .request((sagaId, orderId, context) -> sagaId)
+                .responseType(PaymentResponse.class)
+                .compensation((sagaId, orderId, context) -> sagaId)
+                .build();
+        assertThrows(IllegalArgumentException.class, () -> SagaDefinition.builder("half")
+                .step(withoutQueue)
+                .onCompleted(completed::add)
+                .onAborted(aborted::add)
+                .build());
+    }
+
+    @Test
+    void outcomesReceiveOrderId() {
+        definition.completed(1L);
+        definition.aborted(2L);
+
+        assertEquals(List.of(1L), completed);
+        assertEquals(List.of(2L), aborted);
+    }
+
+    private static SagaStepDefinition step(SagaStep step, Class<? extends StepResponse> responseType,
+                                           boolean compensated) {
+        SagaStepDefinition.SagaStepDefinitionBuilder builder = SagaStepDefinition.builder()
+                .step(step)
+                .requestQueue(step.name().toLowerCase() + "-queue")
+                .request((sagaId, orderId, context) -> sagaId)
+                .responseQueue(step.name().toLowerCase() + "-response-queue")
+                .responseType(responseType);
+        if (compensated) {
+            builder.compensationQueue(step.name().toLowerCase() + "-compensation-queue")
+                    .compensation((sagaId, orderId, context) -> sagaId);
+        }
+        return builder.build();
+    }
+
+    private static List<SagaStep> steps(List<SagaStepDefinition> definitions) {
+        return definitions.stream().map(SagaStepDefinition::getStep).toList();
+    }
+}
@@ -0,0 +1,59 @@
+package com.guipalm4.sagapatternspring.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlidingWindowHistogramTest {
+
+    @Test
+    void bucketUpperBoundStaysWithinRelativeError() {
+        for (long micros = 0; micros < 5_000_000; micros = micros < 64 ? micros + 1 : micros * 11 / 10) {
+            long upperBound = SlidingWindowHistogram.upperBoundOf(SlidingWindowHistogram.bucketOf(micros));
+            assertTrue(upperBound >= micros, "limite abaixo do valor: " + micros);
+            assertTrue(upperBound - micros <= Math.max(0, micros / 8), "erro acima de 12,5%: " + micros);
+        }
+    }
+
+    @Test
+    void bucketsAreMonotonic() {
+        int previous = SlidingWindowHistogram.bucketOf(0);
+        for (long micros = 1; micros < 1_000_000; micros++) {
+            int bucket = SlidingWindowHistogram.bucketOf(micros);
+            assertTrue(bucket >= previous, "bucket voltou em " + micros);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    void snapshotReportsPercentilesOfRecordedDurations() {
+        SlidingWindowHistogram histogram = new SlidingWindowHistogram(1, 60);
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        SlidingWindowHistogram.Snapshot snapshot = histogram.snapshot(60);
+
+        assertEquals(100, snapshot.getCount());
+        assertBetween(50, snapshot.percentileMillis(0.50));
+        assertBetween(99, snapshot.percentileMillis(0.99));
+        assertBetween(100, snapshot.percentileMillis(1.0));
+        assertTrue(snapshot.getThroughputPerSecond() > 0);
+    }
+
+    @Test
+    void emptySnapshotHasNoPercentiles() {
+        SlidingWindowHistogram.Snapshot snapshot = new SlidingWindowHistogram(1, 60).snapshot(60);
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0.0, snapshot.percentileMillis(0.99));
+    }
+
+    private static void assertBetween(double expectedMillis, double actualMillis) {
+        assertTrue(actualMillis >= expectedMillis && actualMillis <= expectedMillis * 1.125,
+                "esperado ~" + expectedMillis + "ms, obtido " + actualMillis + "ms");
+    }
+}
@@ -0,0 +1,121 @@
+package com.guipalm4.sagapatternspring.service;
+
+import com.guipalm4.sagapatternspring.domain.ProcessedMessage;
+import com.guipalm4.sagapatternspring.repository.ProcessedMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProcessedMessageRegistryTest {
+
+    @Mock
+    private ProcessedMessageRepository repository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger handled = new AtomicInteger();
+
+    private ProcessedMessageRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        registry = new ProcessedMessageRegistry(repository, transactionManager, meterRegistry, 100, 24);
+    }
+
+    @Test
+    void redeliveryIsSkippedFromCache() {
+        assertTrue(registry.processOnce("payment", "saga-1", 0, handled::incrementAndGet));
+        assertFalse(registry.processOnce("payment", "saga-1", 0, handled::incrementAndGet));
+
+        assertEquals(1, handled.get());
+        verify(repository, times(1)).save(any(ProcessedMessage.class));
+        assertEquals(1.0, duplicates("payment"));
+    }
+
+    @Test
+    void keyAlreadyStoredIsDuplicate() {
+        when(repository.save(any(ProcessedMessage.class))).thenThrow(new DataIntegrityViolationException("duplicada"));
+
+        assertFalse(registry.processOnce("payment", "saga-1", 0, handled::incrementAndGet));
+
+        assertEquals(0, handled.get());
+        // Vai para o cache: a próxima reentrega nem chega ao banco
+        assertFalse(registry.processOnce("payment", "saga-1", 0, handled::incrementAndGet));
+        verify(repository, times(1)).save(any(ProcessedMessage.class));
+    }
+
+    @Test
+    void newAttemptOrScopeIsProcessedAgain() {
+        registry.processOnce("payment", "saga-1", 0, handled::incrementAndGet);
+
+        assertTrue(registry.processOnce("payment", "saga-1", 1, handled::incrementAndGet));
+        assertTrue(registry.processOnce("payment-compensation", "saga-1", 0, handled::incrementAndGet));
+
+        assertEquals(3, handled.get());
+    }
+
+    @Test
+    void failedHandlerForgetsKeySoRedeliveryRunsAgain() {
+        RuntimeException failure = new IllegalStateException("falha no participante");
+
+        assertThrows(IllegalStateException.class,
+                () -> registry.processOnce("payment", "saga-1", 0, () -> { throw failure; }));
+        verify(repository).deleteByMessageKey("payment|saga-1|0");
+
+        assertTrue(registry.processOnce("payment", "saga-1", 0, handled::incrementAndGet));
+        assertEquals(1, handled.get());
+    }
+
+    @Test
+    void transactionalDuplicateRollsBackWithoutRunningHandler() {
+        when(repository.saveAndFlush(any(ProcessedMessage.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicada"));
+
+        assertFalse(registry.processOnceInTransaction("payment-response", "saga-1", 0, handled::incrementAndGet));
+
+        assertEquals(0, handled.get());
+        verify(transactionStatus).setRollbackOnly();
+        assertEquals(1.0, duplicates("payment-response"));
+    }
+
+    @Test
+    void transactionalHandlerRunsOnceAndCommits() {
+        assertTrue(registry.processOnceInTransaction("payment-response", "saga-1", 0, handled::incrementAndGet));
+        assertFalse(registry.processOnceInTransaction("payment-response", "saga-1", 0, handled::incrementAndGet));
+
+        assertEquals(1, handled.get());
+        verify(transactionManager, times(1)).commit(transactionStatus);
+        verify(transactionStatus, never()).setRollbackOnly();
+        verify(repository, never()).deleteByMessageKey(any());
+    }
+
+    private double duplicates(String scope) {
+        return meterRegistry.get("saga_duplicate_messages_total").tag("scope", scope).counter().count();
+    }
+}
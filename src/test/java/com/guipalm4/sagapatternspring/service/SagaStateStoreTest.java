@@ -0,0 +1,264 @@
+package com.guipalm4.sagapatternspring.service;
+
+import com.guipalm4.sagapatternspring.api.response.SagaStatusResponse;
+import com.guipalm4.sagapatternspring.domain.SagaTransaction;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStatus;
+import com.guipalm4.sagapatternspring.domain.enums.SagaStep;
+import com.guipalm4.sagapatternspring.repository.SagaTransactionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SagaStateStoreTest {
+
+    @Mock
+    private SagaTransactionRepository repository;
+
+    @Mock
+    private SagaStatusCache statusCache;
+
+    @Mock
+    private SagaCompletionRegistry completionRegistry;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SagaStateStore store;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        store = new SagaStateStore(repository, statusCache, completionRegistry, transactionManager,
+                meterRegistry, 500, 200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clear();
+        }
+        if (TransactionSynchronizationManager.hasResource(store)) {
+            TransactionSynchronizationManager.unbindResource(store);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flushInsertsNewSagasThenBatchesVersionedUpdates() {
+        store.register(saga("saga-1", 1L));
+        store.register(saga("saga-2", 2L));
+        when(repository.updateAllIfVersion(anyList())).thenAnswer(call -> new boolean[((List<?>) call.getArgument(0)).size()]);
+
+        store.flush();
+
+        ArgumentCaptor<List<SagaTransaction>> inserts = ArgumentCaptor.forClass(List.class);
+        verify(repository).saveAll(inserts.capture());
+        assertEquals(2, inserts.getValue().size());
+
+        // Sem transação as transições são write-behind: vão no próximo flush, num lote só
+        store.update("saga-1", SagaTransaction::incrementRetryCount);
+        store.update("saga-2", SagaTransaction::incrementRetryCount);
+        when(repository.updateAllIfVersion(anyList())).thenReturn(new boolean[]{true, true});
+
+        store.flush();
+
+        ArgumentCaptor<List<SagaTransaction>> updates = ArgumentCaptor.forClass(List.class);
+        verify(repository, times(2)).updateAllIfVersion(updates.capture());
+        assertEquals(2, updates.getValue().size());
+        assertEquals(1L, store.get("saga-1").getVersion());
+        assertEquals(1L, store.get("saga-2").getVersion());
+        verify(repository, never()).updateIfVersion(any());
+    }
+
+    @Test
+    void versionConflictDiscardsMemoryAndPublishesDatabaseState() {
+        SagaTransaction persisted = persisted("saga-1", 3L);
+        when(repository.findByStatusIn(anyList())).thenReturn(List.of(persisted));
+        store.recover();
+
+        store.update("saga-1", SagaTransaction::incrementRetryCount);
+        when(repository.updateAllIfVersion(anyList())).thenReturn(new boolean[]{false});
+        SagaTransaction current = persisted("saga-1", 4L);
+        current.setStatus(SagaStatus.COMPENSATING);
+        when(repository.findById("saga-1")).thenReturn(Optional.of(current));
+
+        store.flush();
+
+        assertEquals(0, store.size());
+        assertEquals(1.0, meterRegistry.get("saga_state_conflicts_total").counter().count());
+        ArgumentCaptor<SagaStatusResponse> published = ArgumentCaptor.forClass(SagaStatusResponse.class);
+        verify(completionRegistry, atLeastOnce()).publish(published.capture());
+        assertEquals(SagaStatus.COMPENSATING.name(), published.getValue().getStatus());
+    }
+
+    @Test
+    void transitionOnEvictedSagaIsRetriedOnReloadedState() {
+        store.register(saga("saga-1", 1L));
+        store.update("saga-1", SagaTransaction::markAsCompleted);
+        when(repository.updateAllIfVersion(anyList())).thenReturn(new boolean[0]);
+        SagaTransaction evicted = store.get("saga-1");
+
+        // Terminal persistida sai da memória
+        store.flush();
+        assertEquals(0, store.size());
+
+        SagaTransaction reloaded = persisted("saga-1", 1L);
+        reloaded.setStatus(SagaStatus.COMPLETED);
+        when(repository.findCurrent("saga-1")).thenReturn(Optional.of(reloaded));
+
+        assertFalse(store.transition("saga-1", s -> s.getStatus() == SagaStatus.IN_PROGRESS,
+                s -> s.markAsFailed("atrasada")));
+        assertTrue(store.transition("saga-1", s -> s.getStatus() == SagaStatus.COMPLETED,
+                s -> s.setErrorMessage("auditoria")));
+
+        assertNotSame(evicted, store.get("saga-1"));
+        assertEquals("auditoria", store.get("saga-1").getErrorMessage());
+    }
+
+    @Test
+    void transitionInTransactionWritesThroughAndRetriesAfterLosingTheRow() {
+        when(repository.findByStatusIn(anyList())).thenReturn(List.of(persisted("saga-1", 3L)));
+        store.recover();
+        SagaTransaction current = persisted("saga-1", 5L);
+        current.setRetryCount(2);
+        when(repository.findCurrent("saga-1")).thenReturn(Optional.of(current));
+        List<Long> writtenVersions = new ArrayList<>();
+        when(repository.updateIfVersion(any())).thenAnswer(call -> {
+            writtenVersions.add(call.<SagaTransaction>getArgument(0).getVersion());
+            return writtenVersions.size() == 1 ? 0 : 1;
+        });
+
+        beginTransaction();
+        assertTrue(store.transition("saga-1", s -> s.getStatus() == SagaStatus.IN_PROGRESS,
+                SagaTransaction::incrementRetryCount));
+
+        // A primeira tentativa perdeu para a versão 5 do banco; a segunda parte dela
+        assertEquals(List.of(3L, 5L), writtenVersions);
+        assertEquals(3, store.get("saga-1").getRetryCount());
+        assertEquals(6L, store.get("saga-1").getVersion());
+        // Só publica depois do commit
+        verify(statusCache, never()).put(any());
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        verify(statusCache).put(any());
+    }
+
+    @Test
+    void rollbackRestoresStateBeforeTheTransaction() {
+        when(repository.findByStatusIn(anyList())).thenReturn(List.of(persisted("saga-1", 3L)));
+        store.recover();
+        when(repository.updateIfVersion(any())).thenReturn(1);
+
+        beginTransaction();
+        store.update("saga-1", SagaTransaction::incrementRetryCount);
+        store.update("saga-1", SagaTransaction::incrementRetryCount);
+        store.register(saga("saga-2", 2L));
+        assertEquals(2, store.get("saga-1").getRetryCount());
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(0, store.get("saga-1").getRetryCount());
+        assertEquals(3L, store.get("saga-1").getVersion());
+        assertEquals(1, store.size());
+        verify(repository, never()).saveAll(anyList());
+        verify(statusCache, never()).put(any());
+    }
+
+    @Test
+    void sagaRegisteredInTransactionIsInsertedAtCommit() {
+        beginTransaction();
+        store.register(saga("saga-1", 1L));
+        store.transition("saga-1", s -> s.getStatus() == SagaStatus.STARTED, s -> s.setStatus(SagaStatus.IN_PROGRESS));
+
+        // O INSERT é da transação: o flush não toca na saga enquanto ela está aberta
+        store.update("saga-1", s -> s.setCurrentStep(SagaStep.PAYMENT_PROCESSED));
+        store.flush();
+        verify(repository, never()).saveAll(anyList());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.beforeCommit(false));
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(repository).saveAll(anyList());
+        assertFalse(store.get("saga-1").isNew());
+        verify(repository, never()).updateIfVersion(any());
+    }
+
+    @Test
+    void recoverLoadsInFlightSagasOnce() {
+        SagaTransaction inFlight = persisted("saga-1", 2L);
+        when(repository.findByStatusIn(anyList())).thenReturn(List.of(inFlight));
+
+        store.recover();
+        store.recover();
+
+        assertEquals(1, store.size());
+        assertEquals(inFlight, store.get("saga-1"));
+        verify(repository, never()).findById(any());
+    }
+
+    private void beginTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+
+    private void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(s -> s.afterCompletion(status));
+        TransactionSynchronizationManager.clear();
+    }
+
+    private static SagaTransaction saga(String sagaId, Long orderId) {
+        return SagaTransaction.builder()
+                .sagaId(sagaId)
+                .orderId(orderId)
+                .shard(SagaTransaction.shardOf(sagaId))
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    private static SagaTransaction persisted(String sagaId, Long version) {
+        return saga(sagaId, 10L).toBuilder()
+                .status(SagaStatus.IN_PROGRESS)
+                .currentStep(SagaStep.PAYMENT_PROCESSED)
+                .version(version)
+                .newEntity(false)
+                .build();
+    }
+}